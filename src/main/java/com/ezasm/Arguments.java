@@ -1,11 +1,18 @@
 package com.ezasm;
 
 import com.ezasm.gui.Window;
+import com.ezasm.parsing.Lexer;
+import com.ezasm.parsing.ParseException;
+import com.ezasm.parsing.ProgramCache;
+import com.ezasm.parsing.ProgramFile;
 import com.ezasm.simulation.Memory;
 import com.ezasm.simulation.Simulator;
 import org.apache.commons.cli.*;
 
 import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * Methods to handle the program arguments and begin the program correspondingly.
@@ -39,6 +46,31 @@ public class Arguments {
         options.addOption(wordSizeOption);
         wordSizeOption.setArgName("word size");
 
+        Option memoryFileOption = Option.builder().longOpt("memory-file").hasArg().argName("path")
+                .desc("File to map the memory from so its contents persist between runs (default: none)").build();
+        options.addOption(memoryFileOption);
+
+        Option checkpointOption = Option.builder().longOpt("checkpoint").hasArg().argName("path")
+                .desc("File to save the state of the simulation to once it ends, in windowless mode (default: none)")
+                .build();
+        options.addOption(checkpointOption);
+
+        Option resumeOption = Option.builder().longOpt("resume").hasArg().argName("path")
+                .desc("Checkpoint of the same program to restore before running it, in windowless mode "
+                        + "(default: none)")
+                .build();
+        options.addOption(resumeOption);
+
+        Option cacheOption = new Option("c", "cache-dir", true,
+                "Directory to persist parsed programs to so they are not lexed again (default: none)");
+        options.addOption(cacheOption);
+        cacheOption.setArgName("path");
+
+        Option assembleOption = new Option("a", "assemble", true,
+                "Assembles the code file into a precompiled " + ProgramFile.EXTENSION + " program and exits");
+        options.addOption(assembleOption);
+        assembleOption.setArgName("path");
+
         CommandLineParser parser = new DefaultParser();
         CommandLine commandLine = null;
 
@@ -48,15 +80,15 @@ public class Arguments {
             errorArgs(e.getMessage());
         }
 
-        int memorySize = 0;
+        long memorySize = 0;
         int wordSize = 0;
 
         if (commandLine.hasOption(memoryOption)) {
             String memoryString = commandLine.getOptionValue(memoryOption);
             try {
-                memorySize = Integer.parseInt(memoryString);
+                memorySize = Long.parseLong(memoryString);
             } catch (Exception e) {
-                errorArgs("Unable to parse given word size");
+                errorArgs("Unable to parse given memory size");
             }
         } else {
             memorySize = Memory.DEFAULT_MEMORY_WORDS;
@@ -71,8 +103,34 @@ public class Arguments {
         } else {
             wordSize = Memory.DEFAULT_WORD_SIZE;
         }
+        if (wordSize <= 0) {
+            errorArgs("Word size must be larger than 0");
+        }
+        if (memorySize <= 0 || memorySize > Memory.maxWords(wordSize)) {
+            errorArgs("Memory size must be between 1 and " + Memory.maxWords(wordSize) + " words");
+        }
 
-        Simulator sim = new Simulator(wordSize, memorySize, config.getSimSpeed());
+        if (commandLine.hasOption(cacheOption)) {
+            ProgramCache.setShared(new ProgramCache(ProgramCache.DEFAULT_MAX_LINES,
+                    Path.of(commandLine.getOptionValue(cacheOption))));
+        }
+
+        if (commandLine.hasOption(assembleOption)) {
+            if (!commandLine.hasOption(fileOption)) {
+                errorArgs("A code file must be given with -f to assemble");
+            }
+            assemble(Path.of(commandLine.getOptionValue(fileOption)),
+                    Path.of(commandLine.getOptionValue(assembleOption)));
+            return;
+        }
+
+        if ((commandLine.hasOption(checkpointOption) || commandLine.hasOption(resumeOption))
+                && !commandLine.hasOption(windowlessOption)) {
+            errorArgs("Checkpoints can only be saved and resumed in windowless mode");
+        }
+
+        Simulator sim = createSimulator(wordSize, memorySize, commandLine.getOptionValue(memoryFileOption),
+                config.getSimSpeed());
         String filepath = "";
         if (commandLine.hasOption(fileOption)) {
             filepath = commandLine.getOptionValue(fileOption);
@@ -85,6 +143,12 @@ public class Arguments {
             } else {
                 cli = new CommandLineInterface(sim, filepath);
             }
+            if (commandLine.hasOption(resumeOption)) {
+                cli.resume(Path.of(commandLine.getOptionValue(resumeOption)));
+            }
+            if (commandLine.hasOption(checkpointOption)) {
+                cli.setCheckpoint(Path.of(commandLine.getOptionValue(checkpointOption)));
+            }
             cli.startSimulation();
         } else {
             SwingUtilities.invokeLater(() -> {
@@ -93,6 +157,41 @@ public class Arguments {
         }
     }
 
+    /**
+     * Creates the simulator, with its memory mapped from a file if one is given.
+     *
+     * @param wordSize   the size of words in bytes.
+     * @param memorySize the size of the memory in words.
+     * @param memoryFile the path of the file to map the memory from, or null to not map it.
+     * @param delay      amount of time in milliseconds to wait between instructions.
+     * @return the simulator.
+     */
+    private static Simulator createSimulator(int wordSize, long memorySize, String memoryFile, long delay) {
+        if (memoryFile == null) {
+            return new Simulator(wordSize, memorySize, delay);
+        }
+        try {
+            return new Simulator(Memory.mapFile(Path.of(memoryFile), wordSize, memorySize), delay);
+        } catch (IOException | IllegalArgumentException e) {
+            errorArgs("Unable to map memory file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Lexes a code file and writes it as a precompiled program.
+     *
+     * @param source the path of the code file.
+     * @param target the path of the precompiled program to write.
+     */
+    private static void assemble(Path source, Path target) {
+        try {
+            ProgramFile.write(Lexer.parseProgram(Files.readString(source)), target);
+        } catch (ParseException | IOException e) {
+            errorArgs(e.getMessage());
+        }
+    }
+
     /**
      * Exit the program while displaying a message.
      *
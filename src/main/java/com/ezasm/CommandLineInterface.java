@@ -1,9 +1,13 @@
 package com.ezasm;
 
 import com.ezasm.parsing.ParseException;
+import com.ezasm.parsing.ProgramFile;
 import com.ezasm.simulation.SimulationThread;
 import com.ezasm.simulation.Simulator;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 /**
  * A representation of an instance in the command line interface. Stores the current simulation and
  * the simulation thread.
@@ -13,39 +17,76 @@ public class CommandLineInterface {
     private final Simulator simulator;
     private final SimulationThread simulationThread;
     private final boolean cli;
+    // The path to save a checkpoint to once the simulation ends, or null to not save one
+    private Path checkpoint;
 
     /**
      * Constructs a basic CLI based on the given Simulator. This CLI will read from the terminal until
-     * the program is closed or the EOF signal is sent.
+     * the program is closed or the EOF signal is sent. Lines can be undone with the
+     * {@link SimulationThread#STEP_BACK_COMMAND} command.
      *
      * @param simulator the given Simulator.
      */
     public CommandLineInterface(Simulator simulator) {
         this.simulator = simulator;
         this.cli = true;
+        // Lines typed by mistake can be undone with the step back command
+        this.simulator.setUndoEnabled(true);
         this.simulationThread = new SimulationThread(simulator, 250);
     }
 
     /**
-     * Constructs a CLI based on the given Simulator for operating on code from a file.
+     * Constructs a CLI based on the given Simulator for operating on code from a file. Precompiled
+     * programs are mapped into memory rather than lexed.
      *
      * @param simulator the given Simulator.
-     * @param file      the file to read code from.
+     * @param file      the path of the file to read code from.
      */
     public CommandLineInterface(Simulator simulator, String file) {
         this.simulator = simulator;
         this.cli = false;
         this.simulationThread = new SimulationThread(simulator, 250);
         try {
-            this.simulator.readMultiLineString(file);
-        } catch (ParseException e) {
+            Path path = Path.of(file);
+            if (ProgramFile.isProgramFile(path)) {
+                this.simulator.loadProgram(ProgramFile.map(path));
+            } else {
+                this.simulator.readFile(path);
+            }
+        } catch (ParseException | IOException e) {
             System.err.println(e.getMessage());
             System.exit(1);
         }
     }
 
     /**
-     * Begins the simulation. Starts reading CLI input or reads and executes from the given file.
+     * Restores the state of the simulation from a checkpoint of the same program before it begins.
+     * Exits if the checkpoint cannot be restored.
+     *
+     * @param path the path of the checkpoint.
+     */
+    public void resume(Path path) {
+        try {
+            simulator.restore(path);
+        } catch (IOException e) {
+            System.err.println("Unable to resume from checkpoint: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Sets the path to save a checkpoint of the simulation to once it ends, so it can be resumed.
+     *
+     * @param path the path of the checkpoint, or null to not save one.
+     */
+    public void setCheckpoint(Path path) {
+        this.checkpoint = path;
+    }
+
+    /**
+     * Begins the simulation. Starts reading CLI input or reads and executes from the given file, then
+     * waits for the simulation to end, saves the checkpoint if one is set and releases the simulator's
+     * memory.
      */
     public void startSimulation() {
         if (cli) {
@@ -53,6 +94,16 @@ public class CommandLineInterface {
         } else {
             runLinesFromBeginning();
         }
+        simulationThread.awaitTermination();
+        try {
+            if (checkpoint != null) {
+                simulator.checkpoint(checkpoint);
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to save checkpoint: " + e.getMessage());
+        } finally {
+            simulator.close();
+        }
     }
 
     /**
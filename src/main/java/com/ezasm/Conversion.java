@@ -1,6 +1,7 @@
 package com.ezasm;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Utility class which provides functions for converting to and from byte arrays.
@@ -48,23 +49,25 @@ public class Conversion {
     }
 
     /**
-     * Converts a String into its corresponding bytes.
+     * Converts a String into its corresponding bytes, one byte per character as in ISO-8859-1.
+     * Characters past that range become '?'.
      *
      * @param data the String to convert.
      * @return the byte data representation of the String.
      */
     public static byte[] stringToBytes(String data) {
-        return data.getBytes();
+        return data.getBytes(StandardCharsets.ISO_8859_1);
     }
 
     /**
-     * Converts an array of bytes into the corresponding double.
+     * Converts an array of bytes into the corresponding String, one character per byte as in
+     * ISO-8859-1.
      *
      * @param data the array of bytes to convert.
-     * @return the double representation of that data.
+     * @return the String representation of that data.
      */
     public static String bytesToString(byte[] data) {
-        return new String(data);
+        return new String(data, StandardCharsets.ISO_8859_1);
     }
 
 }
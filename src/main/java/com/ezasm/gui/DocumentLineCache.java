@@ -0,0 +1,97 @@
+package com.ezasm.gui;
+
+import com.ezasm.parsing.LexedChunk;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A cache of the lexed content of each line of a document. Every line of the document is lexed on
+ * its own into a {@link LexedChunk}; edits only invalidate the lines they touch, so assembling the
+ * program only lexes lines which have changed since the last time it was assembled.
+ */
+class DocumentLineCache implements DocumentListener {
+
+    private final Document document;
+
+    /**
+     * The lexed content of each line of the document, or null where the line must be lexed again.
+     */
+    private final List<LexedChunk> lines = new ArrayList<>();
+
+    /**
+     * Creates a cache for the given document and begins listening to its changes.
+     *
+     * @param document the document to cache the lines of.
+     */
+    DocumentLineCache(Document document) {
+        this.document = document;
+        lines.addAll(Collections.nCopies(document.getDefaultRootElement().getElementCount(), null));
+        document.addDocumentListener(this);
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        invalidate(e);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        invalidate(e);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Attribute changes do not affect the text
+    }
+
+    /**
+     * Invalidates the lines affected by an edit. Edits which add or remove line breaks replace a range
+     * of line elements; all other edits modify the text of the single line they occurred on.
+     *
+     * @param e the event describing the edit.
+     */
+    private void invalidate(DocumentEvent e) {
+        Element root = document.getDefaultRootElement();
+        DocumentEvent.ElementChange change = e.getChange(root);
+        if (change == null) {
+            lines.set(root.getElementIndex(e.getOffset()), null);
+        } else {
+            int index = change.getIndex();
+            lines.subList(index, index + change.getChildrenRemoved().length).clear();
+            lines.addAll(index, Collections.nCopies(change.getChildrenAdded().length, null));
+        }
+        assert lines.size() == root.getElementCount();
+    }
+
+    /**
+     * Gets the lexed content of every line of the document in order, lexing only the lines which have
+     * changed since they were last lexed.
+     *
+     * @return the lexed lines of the document.
+     */
+    List<LexedChunk> getLexedLines() {
+        Element root = document.getDefaultRootElement();
+        for (int i = 0; i < lines.size(); ++i) {
+            if (lines.get(i) == null) {
+                Element line = root.getElement(i);
+                int start = line.getStartOffset();
+                int end = Math.min(line.getEndOffset(), document.getLength());
+                try {
+                    String text = document.getText(start, end - start);
+                    lines.set(i, LexedChunk.lex(text, 0, text.length()));
+                } catch (BadLocationException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return Collections.unmodifiableList(lines);
+    }
+
+}
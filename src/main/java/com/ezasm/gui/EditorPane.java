@@ -7,10 +7,16 @@ import javax.swing.event.DocumentListener;
 import javax.swing.undo.UndoManager;
 
 import com.ezasm.Theme;
+import com.ezasm.parsing.LexedChunk;
+import com.ezasm.parsing.ParseException;
 
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * The editor pane within the GUI. Allows the user to type code or edit loaded code.
@@ -20,6 +26,9 @@ public class EditorPane extends JPanel implements IThemeable {
     private final JTextArea textArea;
     private final LineNumber lineNumbers;
     private final LineNumberModelImpl model = new LineNumberModelImpl();
+    private final DocumentLineCache lineCache;
+    // The condition of the breakpoint on each line, empty if the breakpoint is unconditional
+    private final Map<Integer, String> breakpoints = new TreeMap<>();
     private static final Dimension MIN_SIZE = new Dimension(600, 400);
     private static final Dimension MAX_SIZE = new Dimension(600, 2000);
 
@@ -32,6 +41,7 @@ public class EditorPane extends JPanel implements IThemeable {
 
         textArea = new JTextArea();
         lineNumbers = new LineNumber(model);
+        lineCache = new DocumentLineCache(textArea.getDocument());
 
         UndoManager manager = new UndoManager();
         textArea.getDocument().addUndoableEditListener(manager);
@@ -115,6 +125,28 @@ public class EditorPane extends JPanel implements IThemeable {
                 return new Rectangle();
             }
         }
+
+        @Override
+        public String getBreakpoint(int line) {
+            return breakpoints.get(line);
+        }
+
+        @Override
+        public void setBreakpoint(int line, String condition) throws ParseException {
+            if (condition == null) {
+                breakpoints.remove(line);
+            } else {
+                if (!condition.isEmpty() && Window.hasInstance()) {
+                    // Compiled only to report an invalid condition before it is set
+                    Window.getInstance().getSimulator().compileCondition(condition);
+                }
+                breakpoints.put(line, condition);
+            }
+            // While a program is loaded, its breakpoints follow the editor's
+            if (Window.hasInstance() && !getEditable()) {
+                Window.getInstance().applyBreakpoints();
+            }
+        }
     }
 
     /**
@@ -127,6 +159,7 @@ public class EditorPane extends JPanel implements IThemeable {
         lineNumbers.setBackground(theme.getCurrentline());
         lineNumbers.setForeground(theme.getForeground().darker());
         lineNumbers.setFont(font);
+        lineNumbers.setBreakpointColors(theme.getRed(), theme.getOrange());
         textArea.setFont(font);
         textArea.setEditable(true);
         textArea.setLineWrap(false);
@@ -162,11 +195,49 @@ public class EditorPane extends JPanel implements IThemeable {
     }
 
     /**
-     * Sets the text of the editor to the given content.
+     * Gets the lexed content of each line of the text editor. Only lines edited since the previous
+     * call are lexed again.
+     *
+     * @return the lexed lines of the text editor in order.
+     */
+    public List<LexedChunk> getLexedLines() {
+        return lineCache.getLexedLines();
+    }
+
+    /**
+     * Sets the text of the editor to the given content, clearing the breakpoints.
      *
      * @param content the text to set the text within the editor to.
      */
     public void setText(String content) {
+        breakpoints.clear();
         textArea.setText(content);
+        lineNumbers.repaint();
+    }
+
+    /**
+     * Gets the breakpoints set on the lines of the editor.
+     *
+     * @return the condition of the breakpoint on each line, empty if the breakpoint is unconditional.
+     */
+    public Map<Integer, String> getBreakpoints() {
+        return Collections.unmodifiableMap(breakpoints);
+    }
+
+    /**
+     * Gets the line number, as given to the program, of the first statement on a line of the editor.
+     *
+     * @param line the line of the editor.
+     * @return the line number of the line's first statement, or -1 if the line has no statement.
+     */
+    public int getStatementNumber(int line) {
+        List<LexedChunk> lines = lineCache.getLexedLines();
+        if (line >= lines.size() || lines.get(line).getStatementCount() == 0)
+            return -1;
+        int number = 0;
+        for (int i = 0; i < line; ++i) {
+            number += lines.get(i).getStatementCount();
+        }
+        return number;
     }
 }
@@ -2,6 +2,8 @@ package com.ezasm.gui;
 
 import java.awt.Rectangle;
 
+import com.ezasm.parsing.ParseException;
+
 /**
  * To be implemented as a private class contained within the editor class
  */
@@ -17,4 +19,19 @@ public interface ILineNumberModel {
      */
     public Rectangle getLineRect(int line);
 
+    /**
+     * @param line the line of the JTextArea
+     * @return the condition of the breakpoint on that line, an empty String if it is unconditional, or
+     *         null if there is no breakpoint
+     */
+    public String getBreakpoint(int line);
+
+    /**
+     * @param line      the line of the JTextArea
+     * @param condition the condition of the breakpoint, an empty String to always break, or null to
+     *                  clear the breakpoint
+     * @throws ParseException if the condition cannot be parsed
+     */
+    public void setBreakpoint(int line, String condition) throws ParseException;
+
 }
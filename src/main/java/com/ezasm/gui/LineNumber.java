@@ -1,15 +1,22 @@
 package com.ezasm.gui;
 
+import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 
 import javax.swing.JComponent;
+import javax.swing.JOptionPane;
 import javax.swing.JScrollPane;
 import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+
+import com.ezasm.parsing.ParseException;
 
 public class LineNumber extends JComponent {
 
@@ -18,6 +25,9 @@ public class LineNumber extends JComponent {
     int HORIZONTAL_PADDING = 1;
     int VERTICAL_PADDING = 3;
 
+    private Color breakpointColor = Color.RED;
+    private Color conditionalColor = Color.ORANGE;
+
     public LineNumber() {
         super();
     }
@@ -25,6 +35,71 @@ public class LineNumber extends JComponent {
     public LineNumber(ILineNumberModel model) {
         super();
         this.model = model;
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int line = lineAt(e.getY());
+                if (line >= 0) {
+                    toggleBreakpoint(line, e.isShiftDown() || SwingUtilities.isRightMouseButton(e));
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets the colors the numbers of lines with breakpoints are highlighted with.
+     *
+     * @param breakpoint  the color of lines with unconditional breakpoints.
+     * @param conditional the color of lines with conditional breakpoints.
+     */
+    public void setBreakpointColors(Color breakpoint, Color conditional) {
+        breakpointColor = breakpoint;
+        conditionalColor = conditional;
+        repaint();
+    }
+
+    /**
+     * Finds the line at a vertical position.
+     *
+     * @param y the vertical position in view coordinates.
+     * @return the line at the position, or -1 if there is none.
+     */
+    private int lineAt(int y) {
+        for (int i = 0; i < model.getNumberLines(); i++) {
+            Rectangle rect = model.getLineRect(i);
+            if (y >= rect.y && y < rect.y + rect.height) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sets or clears the breakpoint on a line. A conditional breakpoint prompts for its condition,
+     * starting from the line's current condition.
+     *
+     * @param line        the line.
+     * @param conditional true to prompt for a condition, false to toggle an unconditional breakpoint.
+     */
+    private void toggleBreakpoint(int line, boolean conditional) {
+        String current = model.getBreakpoint(line);
+        String condition;
+        if (conditional) {
+            condition = JOptionPane.showInputDialog(this, "Break on line " + (line + 1) + " when (e.g. $t0 > 100):",
+                    current);
+            if (condition == null) {
+                return;
+            }
+            condition = condition.strip();
+        } else {
+            condition = current == null ? "" : null;
+        }
+        try {
+            model.setBreakpoint(line, condition);
+        } catch (ParseException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Invalid condition", JOptionPane.ERROR_MESSAGE);
+        }
+        repaint();
     }
 
     public void adjustWidth() {
@@ -62,12 +137,18 @@ public class LineNumber extends JComponent {
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g.setColor(getBackground());
         g2d.fillRect(0, 0, getWidth(), getHeight());
-        g.setColor(getForeground());
         Rectangle rect;
         String text;
+        String breakpoint;
         int xPos, yPos;
         for (int i = 0; i < model.getNumberLines(); i++) {
             rect = model.getLineRect(i);
+            breakpoint = model.getBreakpoint(i);
+            if (breakpoint != null) {
+                g.setColor(breakpoint.isEmpty() ? breakpointColor : conditionalColor);
+                g2d.fillRect(0, rect.y, getWidth(), rect.height);
+            }
+            g.setColor(getForeground());
             text = String.valueOf(i + 1);
             yPos = rect.y + rect.height - VERTICAL_PADDING;
             xPos = getPreferredSize().width - g.getFontMetrics().stringWidth(text) - HORIZONTAL_PADDING;
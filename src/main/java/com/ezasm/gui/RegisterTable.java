@@ -3,6 +3,7 @@ package com.ezasm.gui;
 import com.ezasm.Config;
 import com.ezasm.Theme;
 import com.ezasm.simulation.Registers;
+import com.ezasm.simulation.Simulator;
 
 import javax.swing.*;
 import javax.swing.table.AbstractTableModel;
@@ -14,20 +15,24 @@ import java.awt.*;
 public class RegisterTable extends JPanel implements IThemeable {
 
     private final JTable table;
-    private final Registers registers;
+    private final Simulator simulator;
+    // The values shown, copied from the simulator whenever the table is updated
+    private long[] values;
     private static final Dimension MIN_SIZE = new Dimension(150, 2000);
     private static final Dimension MAX_SIZE = new Dimension(200, 2000);
 
     /**
-     * Given the registers, construct a table which displays the names and values of each one.
+     * Given the simulator, construct a table which displays the names and values of each of its
+     * registers.
      *
-     * @param registers the registers to read from.
+     * @param simulator the simulator to read the registers of.
      */
-    public RegisterTable(Registers registers) {
+    public RegisterTable(Simulator simulator) {
         super();
-        this.registers = registers;
+        this.simulator = simulator;
+        this.values = simulator.readRegisters();
         table = new JTable();
-        AbstractTableModel model = new RegistersTableModel(registers);
+        AbstractTableModel model = new RegistersTableModel();
         table.setModel(model);
         JScrollPane scrollPane = new JScrollPane(table);
 
@@ -55,9 +60,11 @@ public class RegisterTable extends JPanel implements IThemeable {
     }
 
     /**
-     * Forcibly refreshes the display of the table
+     * Forcibly refreshes the display of the table with a consistent copy of the registers, which
+     * never waits for the simulation
      */
     public void update() {
+        values = simulator.readRegisters();
         table.updateUI();
     }
 
@@ -68,15 +75,12 @@ public class RegisterTable extends JPanel implements IThemeable {
 
         private static final String[] columns = { "Register", "Value" };
 
-        private final Registers registers;
-
-        public RegistersTableModel(Registers registers) {
+        public RegistersTableModel() {
             super();
-            this.registers = registers;
         }
 
         public int getRowCount() {
-            return registers.getRegisters().length;
+            return values.length;
         }
 
         public int getColumnCount() {
@@ -89,7 +93,7 @@ public class RegisterTable extends JPanel implements IThemeable {
                 return "$" + Registers.getRegisterName(row);
             } else if (col == 1) {
                 // values
-                return registers.getRegister(row).getLong();
+                return values[row];
             } else {
                 // Error
                 throw new RuntimeException();
@@ -3,6 +3,7 @@ package com.ezasm.gui;
 import com.ezasm.Config;
 import com.ezasm.Theme;
 import com.ezasm.parsing.ParseException;
+import com.ezasm.simulation.Simulator;
 
 import javax.swing.*;
 
@@ -21,6 +22,7 @@ public class ToolbarFactory {
     private static final String PAUSE = "  Pause  ";
     private static final String RESUME = "  Resume  ";
     private static final String STEP = "   Step   ";
+    private static final String STEP_BACK = " Step Back ";
     private static final String RESET = "  Reset  ";
 
     private static final ToolbarActionListener actionListener = new ToolbarActionListener();
@@ -30,6 +32,7 @@ public class ToolbarFactory {
     private static JButton pauseButton;
     private static JButton resumeButton;
     private static JButton stepButton;
+    private static JButton stepBackButton;
     private static JButton resetButton;
 
     /**
@@ -46,6 +49,7 @@ public class ToolbarFactory {
         addButton(toolbar, PAUSE);
         addButton(toolbar, RESUME);
         addButton(toolbar, STEP);
+        addButton(toolbar, STEP_BACK);
         addButton(toolbar, RESET);
 
         toolbar.validate();
@@ -64,18 +68,21 @@ public class ToolbarFactory {
         stopButton.setFont(font);
         resetButton.setFont(font);
         stepButton.setFont(font);
+        stepBackButton.setFont(font);
         startButton.setBackground(theme.getBackground());
         pauseButton.setBackground(theme.getBackground());
         resumeButton.setBackground(theme.getBackground());
         stopButton.setBackground(theme.getBackground());
         resetButton.setBackground(theme.getBackground());
         stepButton.setBackground(theme.getBackground());
+        stepBackButton.setBackground(theme.getBackground());
         startButton.setForeground(theme.getForeground());
         pauseButton.setForeground(theme.getForeground());
         resumeButton.setForeground(theme.getForeground());
         stopButton.setForeground(theme.getForeground());
         resetButton.setForeground(theme.getForeground());
         stepButton.setForeground(theme.getForeground());
+        stepBackButton.setForeground(theme.getForeground());
     }
 
     /**
@@ -85,8 +92,9 @@ public class ToolbarFactory {
      * @param state the new state of the buttons.
      */
     public static void setButtonsEnabled(boolean state) {
-        if (stepButton != null && startButton != null && pauseButton != null) {
+        if (stepButton != null && stepBackButton != null && startButton != null && pauseButton != null) {
             stepButton.setEnabled(state);
+            stepBackButton.setEnabled(state);
             startButton.setEnabled(state);
             pauseButton.setEnabled(false);
         }
@@ -102,6 +110,7 @@ public class ToolbarFactory {
 
         switch (text) {
         case STEP -> stepButton = button;
+        case STEP_BACK -> stepBackButton = button;
         case START -> startButton = button;
         case STOP -> stopButton = button;
         case PAUSE -> pauseButton = button;
@@ -112,6 +121,7 @@ public class ToolbarFactory {
 
     public static void handleProgramCompletion() {
         stepButton.setEnabled(true);
+        stepBackButton.setEnabled(true);
         startButton.setEnabled(true);
         stopButton.setEnabled(false);
         pauseButton.setEnabled(false);
@@ -121,6 +131,20 @@ public class ToolbarFactory {
         Window.getInstance().setEditable(true);
     }
 
+    /**
+     * Sets the state of the buttons for a paused program, whether paused by the user or by reaching a
+     * breakpoint.
+     */
+    public static void handlePause() {
+        stepButton.setEnabled(true);
+        stepBackButton.setEnabled(true);
+        startButton.setEnabled(false);
+        stopButton.setEnabled(true);
+        pauseButton.setEnabled(false);
+        resumeButton.setEnabled(true);
+        resetButton.setEnabled(true);
+    }
+
     /**
      * Helper action listener class to handle options in the toolbar.
      */
@@ -129,6 +153,7 @@ public class ToolbarFactory {
         public void actionPerformed(ActionEvent e) {
             switch (e.getActionCommand()) {
             case STEP -> step();
+            case STEP_BACK -> stepBack();
             case START -> start();
             case STOP -> stop();
             case PAUSE -> pause();
@@ -163,8 +188,19 @@ public class ToolbarFactory {
             }
         }
 
+        private static void stepBack() {
+            Simulator simulator = Window.getInstance().getSimulator();
+            if (simulator.getUndoableSteps() == 0)
+                return;
+            // The program is still loaded, so stepping forward again continues it rather than parsing
+            Window.getInstance().setEditable(false);
+            simulator.stepBack(1);
+            resetButton.setEnabled(true);
+        }
+
         private static void start() {
             stepButton.setEnabled(false);
+            stepBackButton.setEnabled(false);
             startButton.setEnabled(false);
             stopButton.setEnabled(true);
             pauseButton.setEnabled(true);
@@ -197,19 +233,14 @@ public class ToolbarFactory {
 
         private static void pause() {
             // Should be STARTED
-            stepButton.setEnabled(true);
-            startButton.setEnabled(false);
-            stopButton.setEnabled(true);
-            pauseButton.setEnabled(false);
-            resumeButton.setEnabled(true);
-            resetButton.setEnabled(true);
-
+            handlePause();
             Window.getInstance().getSimulationThread().pause();
         }
 
         private static void resume() {
             // Should be PAUSED
             stepButton.setEnabled(true);
+            stepBackButton.setEnabled(false);
             startButton.setEnabled(false);
             stopButton.setEnabled(true);
             pauseButton.setEnabled(true);
@@ -2,12 +2,16 @@ package com.ezasm.gui;
 
 import com.ezasm.simulation.SimulationThread;
 import com.ezasm.simulation.Simulator;
+import com.ezasm.simulation.SimulatorEvent;
 import com.ezasm.Config;
 import com.ezasm.Theme;
 import com.ezasm.parsing.ParseException;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.Map;
 
 /**
  * The main graphical user interface of the program. A singleton which holds all the necessary GUI
@@ -32,6 +36,15 @@ public class Window {
         this.simulationThread = new SimulationThread(this.simulator, config.getSimSpeed());
         this.config = config;
         initialize();
+        simulator.addListener(event -> {
+            updateAll();
+            // A breakpoint pauses the simulation thread without going through the toolbar
+            if (event.isRunStateChanged() && event.getRunState() == SimulatorEvent.RunState.PAUSED
+                    && simulationThread.isPaused()) {
+                ToolbarFactory.handlePause();
+            }
+        }, SwingUtilities::invokeLater);
+        simulator.setUndoEnabled(true);
     }
 
     /**
@@ -69,12 +82,21 @@ public class Window {
     private void initialize() {
         app = new JFrame("EzASM Simulator");
         app.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // Listeners run before the frame exits, so the simulator's memory is released first
+        app.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                simulationThread.interrupt();
+                simulationThread.awaitTermination();
+                simulator.close();
+            }
+        });
         app.setMinimumSize(new Dimension(800, 600));
 
         menubar = MenubarFactory.makeMenuBar();
         toolbar = ToolbarFactory.makeToolbar();
         editor = new EditorPane();
-        table = new RegisterTable(simulator.getRegisters());
+        table = new RegisterTable(simulator);
 
         app.setJMenuBar(menubar);
         app.add(toolbar, BorderLayout.PAGE_START);
@@ -124,14 +146,34 @@ public class Window {
     }
 
     /**
-     * Parses the current text content of the editor pane.
+     * Parses the current text content of the editor pane. Lines which have not been edited since the
+     * previous parse are taken from the editor's cache rather than lexed again.
      *
      * @throws ParseException if there are any errors lexing the given text.
      */
     public void parseText() throws ParseException {
         simulator.resetAll();
         updateAll();
-        simulator.readMultiLineString(editor.getText());
+        simulator.readLexedChunks(editor.getLexedLines());
+        applyBreakpoints();
+    }
+
+    /**
+     * Sets the breakpoints of the editor's lines on the simulator, replacing those it had. Lines
+     * without a statement are skipped.
+     */
+    public void applyBreakpoints() {
+        simulator.clearBreakpoints();
+        for (Map.Entry<Integer, String> breakpoint : editor.getBreakpoints().entrySet()) {
+            int number = editor.getStatementNumber(breakpoint.getKey());
+            if (number < 0)
+                continue;
+            try {
+                simulator.setBreakpoint(number, breakpoint.getValue());
+            } catch (ParseException e) {
+                handleParseException(e);
+            }
+        }
     }
 
     /**
@@ -1,37 +1,73 @@
 package com.ezasm.instructions;
 
+import com.ezasm.instructions.targets.IAbstractTarget;
+import com.ezasm.parsing.Instruction;
 import com.ezasm.parsing.Line;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.StringJoiner;
 
 /**
  * An instruction which can be dispatched. This has all the information necessary to interpret a
- * parsed {@link Line} and caches it for quick interpretation.
+ * parsed {@link Line} and caches it for quick interpretation. Each overload of an instruction is a
+ * separate dispatch instruction with its own opcode.
  */
 public class DispatchInstruction {
 
     /**
-     * The method that corresponds to the instruction.
+     * The name of the instruction.
      */
-    private final Method invocationTarget;
+    private final String name;
 
     /**
-     * The parent class of the method that corresponds to the instruction.
+     * The table the instruction belongs to.
      */
-    private final Class<?> parent;
+    private final IInstructionTable table;
 
     /**
-     * Create a new dispatchable instruction based on a method with specific parameters and its parent
-     * class.
+     * The index of the instruction within its table.
+     */
+    private final int index;
+
+    /**
+     * The parameter types of the method that corresponds to the instruction.
+     */
+    private final Class<?>[] parameterTypes;
+
+    /**
+     * The index of this instruction among all registered instructions.
+     */
+    private final int opcode;
+
+    /**
+     * The instruction token shared by all lines which invoke this instruction, created when first
+     * requested.
+     */
+    private volatile Instruction instruction;
+
+    /**
+     * Create a new dispatchable instruction from an entry of an instruction table.
+     *
+     * @param table  the table the instruction belongs to.
+     * @param index  the index of the instruction within its table.
+     * @param opcode the index of the instruction among all registered instructions.
+     */
+    public DispatchInstruction(IInstructionTable table, int index, int opcode) {
+        this.name = table.getName(index);
+        this.table = table;
+        this.index = index;
+        this.parameterTypes = table.getParameterTypes(index);
+        this.opcode = opcode;
+    }
+
+    /**
+     * Gets the name of the instruction, which is the lowercase name of its method.
      *
-     * @param parent           the parent class.
-     * @param invocationTarget the method for which to deduce operands for instructions and compile into
-     *                         a dispatchable instruction.
+     * @return the name of the instruction.
      */
-    public DispatchInstruction(Class<?> parent, Method invocationTarget) {
-        this.parent = parent;
-        this.invocationTarget = invocationTarget;
+    public String getName() {
+        return name;
     }
 
     /**
@@ -40,11 +76,101 @@ public class DispatchInstruction {
      * @return a Class object corresponding to the parent class.
      */
     public Class<?> getParent() {
-        return parent;
+        return table.getHandlerClass();
+    }
+
+    /**
+     * Gets the table the instruction belongs to.
+     *
+     * @return the instruction table.
+     */
+    public IInstructionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Gets the parameter types of the instruction.
+     *
+     * @return the parameter types of the instruction's method. The array must not be modified.
+     */
+    public Class<?>[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    /**
+     * Gets the signature of the instruction: its name followed by the binary names of its parameter
+     * types, as listed in the index generated by the
+     * {@link com.ezasm.instructions.processor.InstructionProcessor}.
+     *
+     * @return the signature of the instruction.
+     */
+    public String getSignature() {
+        StringJoiner parameters = new StringJoiner(",", name + "(", ")");
+        for (Class<?> parameter : parameterTypes) {
+            parameters.add(parameter.getName());
+        }
+        return parameters.toString();
     }
 
+    /**
+     * Gets the method invoked to execute the instruction. The method is looked up through reflection
+     * and is not needed to execute the instruction.
+     *
+     * @return the method of the instruction.
+     */
     public Method getInvocationTarget() {
-        return invocationTarget;
+        for (Method method : getParent().getMethods()) {
+            if (method.getName().equalsIgnoreCase(name) && Arrays.equals(method.getParameterTypes(), parameterTypes))
+                return method;
+        }
+        throw new IllegalStateException("Method of instruction '" + name + "' not found");
+    }
+
+    /**
+     * Gets the index of this instruction among all registered instructions.
+     *
+     * @return the opcode of the instruction.
+     */
+    public int getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Gets the instruction token shared by all lines which invoke this instruction.
+     *
+     * @return the instruction token.
+     */
+    public Instruction getInstruction() {
+        if (instruction == null) {
+            instruction = new Instruction(name, this);
+        }
+        return instruction;
+    }
+
+    /**
+     * Gets the number of arguments the instruction takes.
+     *
+     * @return the number of arguments of the instruction.
+     */
+    public int getArity() {
+        return parameterTypes.length;
+    }
+
+    /**
+     * Determines if the instruction can be invoked with the given arguments, that is if there are as
+     * many arguments as parameters and each argument is of its parameter's type.
+     *
+     * @param arguments the arguments in question.
+     * @return true if the instruction accepts the arguments, false otherwise.
+     */
+    public boolean accepts(IAbstractTarget[] arguments) {
+        if (parameterTypes.length != arguments.length)
+            return false;
+        for (int i = 0; i < arguments.length; ++i) {
+            if (!parameterTypes[i].isInstance(arguments[i]))
+                return false;
+        }
+        return true;
     }
 
     /**
@@ -56,13 +182,20 @@ public class DispatchInstruction {
      * @param line   the parsed line to interpret.
      */
     public void invoke(Object parent, Line line) {
-        try {
-            this.invocationTarget.invoke(parent, line.getArguments());
-        } catch (IllegalAccessException | InvocationTargetException e) {
-            // TODO handle
-            throw new RuntimeException(e);
-        }
+        table.invoke(parent, index, line.getArguments(), 0);
+    }
 
+    /**
+     * Invoke an instruction with arguments taken from a larger array, such as the operands of every
+     * line of a program.
+     *
+     * @param parent    the parent instruction handler. An instance of
+     *                  {@link DispatchInstruction#getParent()}.
+     * @param arguments the array holding the arguments.
+     * @param offset    the index of the first argument within the array.
+     */
+    public void invoke(Object parent, IAbstractTarget[] arguments, int offset) {
+        table.invoke(parent, index, arguments, offset);
     }
 
 }
@@ -0,0 +1,107 @@
+package com.ezasm.instructions;
+
+import com.ezasm.instructions.exception.InstructionLoadException;
+import com.ezasm.instructions.processor.InstructionProcessor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of instructions shipped together, such as the core instructions or an extension jar. Sets
+ * are discovered through {@link java.util.ServiceLoader}: a jar provides one by listing the
+ * implementing class in <code>META-INF/services/com.ezasm.instructions.IInstructionSet</code>.
+ * <p>
+ * A set only declares an index of the mnemonics it defines. Its handler classes are loaded, and
+ * their instructions registered, the first time a program uses one of their mnemonics.
+ */
+public interface IInstructionSet {
+
+    /**
+     * Gets the index of the mnemonics this set defines. Computing the index must not load any
+     * handler class.
+     *
+     * @return the mapping of each lowercase mnemonic to the binary name of the handler class which
+     *         declares it.
+     */
+    Map<String, String> getIndex();
+
+    /**
+     * Gets the signatures of the instructions of a handler class, each the lowercase name of the
+     * instruction followed by the binary names of its parameter types, such as
+     * <code>inc(com.ezasm.instructions.targets.inputoutput.IAbstractInputOutput)</code>. They
+     * fingerprint the instruction set before the handler class is loaded, so overloads added to it
+     * change the fingerprint. By default they are read from the index the
+     * {@link InstructionProcessor} generates next to the handler class.
+     *
+     * @param handler the binary name of the handler class.
+     * @return the signatures of the handler's instructions, or an empty list if it has no generated
+     *         index, in which case only its mnemonics are fingerprinted.
+     * @throws InstructionLoadException if the generated index cannot be read.
+     */
+    default List<String> getSignatures(String handler) {
+        return readSignatures(getClass().getClassLoader(), handler);
+    }
+
+    /**
+     * Gets the providers of specialized variants for the instructions of a handler class. Called
+     * once, after the handler class is loaded.
+     *
+     * @param handler the binary name of the handler class.
+     * @return the providers of variants for the handler's instructions.
+     */
+    default List<IVariantProvider> getVariantProviders(String handler) {
+        return List.of();
+    }
+
+    /**
+     * Reads the signatures of the instructions of a handler class from the index the
+     * {@link InstructionProcessor} generates next to it, without loading the class.
+     *
+     * @param loader  the class loader of the handler class.
+     * @param handler the binary name of the handler class.
+     * @return the signatures of the handler's instructions in declaration order, or an empty list if it
+     *         has no generated index.
+     * @throws InstructionLoadException if the generated index cannot be read.
+     */
+    static List<String> readSignatures(ClassLoader loader, String handler) {
+        String resource = handler.replace('.', '/') + InstructionProcessor.INDEX_SUFFIX;
+        try (InputStream in = loader.getResourceAsStream(resource)) {
+            if (in == null)
+                return List.of();
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().filter(line -> !line.isBlank())
+                    .toList();
+        } catch (IOException e) {
+            throw new InstructionLoadException("Error reading instruction index of '" + handler + "'", e);
+        }
+    }
+
+    /**
+     * Builds the index of mnemonics of handler classes from the indexes the
+     * {@link InstructionProcessor} generates next to them, without loading the classes.
+     *
+     * @param loader   the class loader of the handler classes.
+     * @param handlers the binary names of the handler classes.
+     * @return the mapping of each lowercase mnemonic to the binary name of the handler class which
+     *         declares it.
+     * @throws InstructionLoadException if a handler class has no generated index.
+     */
+    static Map<String, String> readIndex(ClassLoader loader, String... handlers) {
+        Map<String, String> index = new HashMap<>();
+        for (String handler : handlers) {
+            List<String> signatures = readSignatures(loader, handler);
+            if (signatures.isEmpty()) {
+                throw new InstructionLoadException("No instruction index found for handler class '" + handler
+                        + "'. Was it compiled with the instruction processor?");
+            }
+            for (String signature : signatures) {
+                index.put(signature.substring(0, signature.indexOf('(')), handler);
+            }
+        }
+        return index;
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.ezasm.instructions;
+
+import com.ezasm.instructions.targets.IAbstractTarget;
+import com.ezasm.simulation.Simulator;
+
+/**
+ * The instructions of one handler class along with the means to invoke them. Tables are generated
+ * at build time for every handler class by
+ * {@link com.ezasm.instructions.processor.InstructionProcessor}; handler classes without a generated
+ * table are read through reflection instead.
+ */
+public interface IInstructionTable {
+
+    /**
+     * Gets the handler class declaring the instructions.
+     *
+     * @return the handler class.
+     */
+    Class<?> getHandlerClass();
+
+    /**
+     * Gets the number of instructions in the table.
+     *
+     * @return the number of instructions.
+     */
+    int size();
+
+    /**
+     * Gets the name of an instruction, which is the lowercase name of its method.
+     *
+     * @param index the index of the instruction within the table.
+     * @return the name of the instruction.
+     */
+    String getName(int index);
+
+    /**
+     * Gets the parameter types of an instruction.
+     *
+     * @param index the index of the instruction within the table.
+     * @return the parameter types of the instruction's method.
+     */
+    Class<?>[] getParameterTypes(int index);
+
+    /**
+     * Creates an instance of the handler class bound to a simulator.
+     *
+     * @param simulator the simulator to bind the handler to.
+     * @return the handler instance.
+     */
+    Object createHandler(Simulator simulator);
+
+    /**
+     * Invokes an instruction.
+     *
+     * @param handler   the handler instance, created by {@link IInstructionTable#createHandler(Simulator)}.
+     * @param index     the index of the instruction within the table.
+     * @param arguments the array holding the arguments of the instruction.
+     * @param offset    the index of the first argument within the array, so that the operands of a whole
+     *                  program can be passed without copying those of one line.
+     */
+    void invoke(Object handler, int index, IAbstractTarget[] arguments, int offset);
+
+}
@@ -0,0 +1,20 @@
+package com.ezasm.instructions;
+
+import com.ezasm.simulation.Simulator;
+
+/**
+ * A line of code bound to a specialized implementation of its instruction overload. Variants are
+ * created once per line when it is added to a {@link com.ezasm.parsing.ArrayProgram} and hold the
+ * line's register numbers and immediates as final fields, so executing a line through its variant
+ * reads neither the program nor any {@link com.ezasm.parsing.Line} or argument objects.
+ */
+public interface IInstructionVariant {
+
+    /**
+     * Executes the line of code the variant is bound to.
+     *
+     * @param simulator the simulator to execute the line on.
+     */
+    void execute(Simulator simulator);
+
+}
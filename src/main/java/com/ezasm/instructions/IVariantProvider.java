@@ -0,0 +1,23 @@
+package com.ezasm.instructions;
+
+import com.ezasm.parsing.ArrayProgram;
+
+/**
+ * A source of specialized variants of registered instructions. Providers are registered with
+ * {@link InstructionDispatcher#registerVariants(IVariantProvider)} and are asked for a variant of
+ * every line of code as it is added to a program.
+ */
+public interface IVariantProvider {
+
+    /**
+     * Binds a line of code to a specialized variant of its instruction overload. The variant reads the
+     * register numbers and immediates of the line from the program here, once, and keeps them.
+     *
+     * @param instruction the instruction overload of the line.
+     * @param program     the program containing the line.
+     * @param index       the index of the line within the program.
+     * @return the variant bound to the line, or null if the overload has none for the line's operands.
+     */
+    IInstructionVariant getVariant(DispatchInstruction instruction, ArrayProgram program, int index);
+
+}
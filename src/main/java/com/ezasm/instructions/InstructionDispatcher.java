@@ -5,60 +5,181 @@ import com.ezasm.simulation.Simulator;
 import com.ezasm.instructions.exception.IllegalArgumentException;
 import com.ezasm.instructions.exception.IllegalInstructionException;
 import com.ezasm.instructions.exception.InstructionDispatchException;
-import com.ezasm.instructions.impl.ArithmeticInstructions;
+import com.ezasm.instructions.processor.InstructionProcessor;
+import com.ezasm.parsing.ArrayProgram;
 import com.ezasm.parsing.Line;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
 
 /**
  * Contains a mapping of all instruction String names and their corresponding DispatchInstruction.
+ * Overloads of an instruction are registered separately and lines are bound to the exact overload
+ * while they are parsed, so executing a line needs no lookup.
+ * <p>
+ * Instruction sets are discovered through {@link ServiceLoader} when the class is initialized, but
+ * only their mnemonic indices are read then. The handler classes declaring a mnemonic are loaded the
+ * first time the mnemonic is looked up, and handler instances are created the first time one of
+ * their instructions is executed.
+ * <p>
+ * The registered instructions are held in an immutable {@link InstructionRegistry}. Registering
+ * copies the current registry and publishes the copy, so lookups never lock and simulators on any
+ * number of threads can share the instructions.
  */
 public class InstructionDispatcher {
 
     /**
-     * The internal backing map for Strings and loaded instructions.
+     * The current snapshot of the registered instructions. Only replaced while holding the class lock.
      */
-    private static final HashMap<String, DispatchInstruction> instructions = new HashMap<>();
+    private static volatile InstructionRegistry registry = InstructionRegistry.EMPTY;
+
+    /**
+     * The error of an instruction set which could not be discovered or whose index could not be read,
+     * reported when looking up an instruction which is not found since the set might have declared it.
+     */
+    private static volatile Throwable discoveryError;
 
     static {
-        // load the instructions
-        registerInstructions(ArithmeticInstructions.class);
+        Iterator<IInstructionSet> sets = ServiceLoader.load(IInstructionSet.class).iterator();
+        while (true) {
+            try {
+                if (!sets.hasNext())
+                    break;
+                registerInstructionSet(sets.next());
+            } catch (ServiceConfigurationError | InstructionLoadException e) {
+                // The other sets are still usable
+                discoveryError = e;
+            }
+        }
+    }
+
+    /**
+     * Registers the mnemonic index of an instruction set. None of the set's handler classes are loaded
+     * until one of their mnemonics is looked up.
+     *
+     * @param set the instruction set.
+     */
+    public static synchronized void registerInstructionSet(IInstructionSet set) {
+        registry = registry.withSet(set);
+    }
+
+    /**
+     * Loads the handler classes indexed for a mnemonic and registers their instructions.
+     *
+     * @param name the lowercase mnemonic.
+     * @throws InstructionLoadException if a handler class cannot be loaded or does not declare the
+     *                                  mnemonic.
+     */
+    private static synchronized void loadMnemonic(String name) {
+        List<InstructionRegistry.IndexEntry> entries = registry.getUnloaded(name);
+        while (!entries.isEmpty()) {
+            InstructionRegistry.IndexEntry entry = entries.get(0);
+            // Every mnemonic of the handler is registered along with this one, and none are if it fails
+            registry = registry.withoutUnloaded(entry.handler());
+
+            Class<?> clazz;
+            try {
+                clazz = Class.forName(entry.handler(), true, entry.set().getClass().getClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new InstructionLoadException("Error loading instruction '" + name + "'. Handler class '"
+                        + entry.handler() + "' not found");
+            }
+            registerInstructions(loadTable(clazz));
+            for (IVariantProvider provider : entry.set().getVariantProviders(entry.handler())) {
+                registerVariants(provider);
+            }
+            entries = registry.getUnloaded(name);
+        }
+        if (!registry.getInstructions().containsKey(name)) {
+            throw new InstructionLoadException("Error loading instruction '" + name
+                    + "'. No handler class indexed for it declares it");
+        }
     }
 
     /**
-     * Registers instructions from a class. Instructions are registered by scanning the class's declared
-     * methods for those annotated with {@link Instruction}. It enumerates the methods and scans their
-     * parameters to deduce the appropriate operands.
+     * Registers instructions from a class. The instruction table generated for the class at build
+     * time is used if it exists; otherwise instructions are registered by scanning the class's
+     * declared methods for those annotated with {@link Instruction}.
      *
      * @param clazz The class to register instructions from.
      */
     public static void registerInstructions(Class<?> clazz) {
+        registerInstructions(loadTable(clazz));
+    }
+
+    /**
+     * Loads the instruction table of a handler class, falling back to reading the class through
+     * reflection if no table was generated for it.
+     *
+     * @param clazz the handler class.
+     * @return the instruction table of the class.
+     */
+    static IInstructionTable loadTable(Class<?> clazz) {
         try {
-            clazz.getDeclaredConstructor(Simulator.class);
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException(e);
+            Class<?> table = Class.forName(clazz.getName() + InstructionProcessor.TABLE_SUFFIX, true,
+                    clazz.getClassLoader());
+            if (IInstructionTable.class.isAssignableFrom(table)) {
+                return (IInstructionTable) table.getDeclaredConstructor().newInstance();
+            }
+        } catch (ClassNotFoundException ignored) {
+        } catch (ReflectiveOperationException e) {
+            throw new InstructionLoadException("Error loading instruction table of '" + clazz.getName() + "'");
         }
+        return new ReflectiveInstructionTable(clazz);
+    }
 
-        Arrays.stream(clazz.getDeclaredMethods()).map(c -> {
-            if (c.isAnnotationPresent(Instruction.class)) {
-                return c;
-            } else
-                return null;
-        }).filter(Objects::nonNull).forEach(method -> registerInstruction(clazz, method));
+    /**
+     * Registers the instructions of an instruction table. Registering an instruction of the same
+     * handler class and parameters again has no effect.
+     *
+     * @param table the instruction table.
+     * @throws InstructionLoadException if another handler class already registered an instruction of
+     *                                  the same name and parameters.
+     */
+    public static synchronized void registerInstructions(IInstructionTable table) {
+        registry = registry.withTable(table);
     }
 
     /**
-     * Registers a single instruction. The method is assumed to be annotated with {@link Instruction} at
-     * this point. This function deduces the operands based on the method's parameters (TODO).
+     * Registers a provider of specialized instruction variants. Providers registered earlier take
+     * precedence.
      *
-     * @param parent The parent class of the method.
-     * @param method The method to register as an instruction.
+     * @param provider the provider of variants.
      */
-    private static void registerInstruction(Class<?> parent, Method method) {
-        instructions.put(method.getName().toLowerCase(), new DispatchInstruction(parent, method));
+    public static synchronized void registerVariants(IVariantProvider provider) {
+        registry = registry.withVariants(provider);
+    }
+
+    /**
+     * Gets the current snapshot of the registered instructions. The snapshot never changes, so it may
+     * be handed to other threads as is.
+     *
+     * @return the registered instructions.
+     */
+    public static InstructionRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Replaces the registered instructions with an earlier snapshot, undoing every registration made
+     * since. Used by tests to keep the instructions they register out of other tests.
+     *
+     * @param snapshot the snapshot to restore, taken with {@link InstructionDispatcher#getRegistry()}.
+     */
+    static synchronized void restoreRegistry(InstructionRegistry snapshot) {
+        registry = snapshot;
+    }
+
+    /**
+     * Binds a line of code to a specialized variant of its instruction overload.
+     *
+     * @param program the program containing the line, whose operands have been stored.
+     * @param index   the index of the line within the program.
+     * @return the variant bound to the line, or null if there is none and the line must be executed
+     *         through {@link InstructionDispatcher#execute(ArrayProgram, int)}.
+     */
+    public static IInstructionVariant getVariant(ArrayProgram program, int index) {
+        return registry.getVariant(program, index);
     }
 
     private static void validateInstruction(Method method) {
@@ -69,12 +190,94 @@ public class InstructionDispatcher {
     }
 
     /**
-     * Retrieves the map of registered instructions as immutable.
+     * Gets the names of every known instruction, including those whose handler classes are not
+     * loaded yet.
+     *
+     * @return the names of all instructions.
+     */
+    public static Set<String> getMnemonics() {
+        return registry.getMnemonics();
+    }
+
+    /**
+     * Retrieves the map of registered instructions as immutable. Each name maps to the overloads of
+     * the instruction in the order they were registered. Instructions whose handler classes are not
+     * loaded yet are not included.
      *
      * @return the map of registered Instructions.
      */
-    public static Map<String, DispatchInstruction> getInstructions() {
-        return Collections.unmodifiableMap(instructions);
+    public static Map<String, List<DispatchInstruction>> getInstructions() {
+        return registry.getInstructions();
+    }
+
+    /**
+     * Gets the registered instruction of the given opcode.
+     *
+     * @param opcode the opcode of the instruction.
+     * @return the instruction of the opcode.
+     */
+    public static DispatchInstruction getInstruction(int opcode) {
+        return registry.getInstruction(opcode);
+    }
+
+    /**
+     * Finds the overloads of the registered instruction named by a span of text, ignoring case. The
+     * text is matched in place without allocating. The handler classes declaring the instruction are
+     * loaded if they were not already.
+     *
+     * @param text  the text containing the instruction name.
+     * @param start the index of the first character of the name.
+     * @param end   the index after the last character of the name.
+     * @return the overloads of the instruction, or null if no instruction has that name. The array
+     *         must not be modified.
+     * @throws InstructionLoadException if the handler classes indexed for the name could not be loaded
+     *                                  and no other declares it, or the name is not found and an
+     *                                  instruction set could not be discovered.
+     */
+    public static DispatchInstruction[] findInstructions(CharSequence text, int start, int end) {
+        DispatchInstruction[] overloads = registry.findInstructions(text, start, end);
+        if (overloads == InstructionRegistry.UNLOADED) {
+            try {
+                loadMnemonic(text.subSequence(start, end).toString().toLowerCase());
+            } catch (InstructionLoadException e) {
+                // The failed handler classes are no longer indexed, so the name is found only if another loaded
+                overloads = findInstructions(text, start, end);
+                if (overloads == null)
+                    throw e;
+                return overloads;
+            }
+            return findInstructions(text, start, end);
+        }
+        if (overloads == null && discoveryError != null) {
+            throw new InstructionLoadException("Unable to load instruction set: " + discoveryError.getMessage(),
+                    discoveryError);
+        }
+        return overloads;
+    }
+
+    /**
+     * Finds the overloads of the registered instruction of the given name, ignoring case.
+     *
+     * @param name the instruction name.
+     * @return the overloads of the instruction, or null if no instruction has that name. The array
+     *         must not be modified.
+     * @throws InstructionLoadException if the instruction could not be loaded, see
+     *                                  {@link InstructionDispatcher#findInstructions(CharSequence, int, int)}.
+     */
+    public static DispatchInstruction[] findInstructions(CharSequence name) {
+        return findInstructions(name, 0, name.length());
+    }
+
+    /**
+     * Gets a fingerprint of the known instruction set. The fingerprint is derived from the signature and
+     * handler class of every instruction, whether loaded or only indexed, so it is stable across runs,
+     * does not change as handler classes are loaded and changes whenever the instruction set does.
+     *
+     * @return the fingerprint of the known instruction set.
+     * @see InstructionRegistry#getVersion()
+     */
+    public static long getInstructionSetVersion() {
+        return registry.getVersion();
     }
 
     /**
@@ -84,45 +287,42 @@ public class InstructionDispatcher {
      */
     private final HashMap<Class<?>, Object> instructionHandlerInstances = new HashMap<>();
 
+    /**
+     * The handler instance of each executed instruction, indexed by opcode.
+     */
+    private Object[] handlers;
+
     /**
      * The bound simulator for this dispatcher.
      */
     private final Simulator simulator;
 
     /**
-     * Create a new Instruction Dispatcher, and bind it to an existing {@link Simulator}.
+     * Create a new Instruction Dispatcher, and bind it to an existing {@link Simulator}. No handler is
+     * instantiated until one of its instructions is executed.
      *
      * @param simulator the simulator to bind to.
      */
     public InstructionDispatcher(Simulator simulator) {
         this.simulator = simulator;
-        loadInstructionHandlers();
+        this.handlers = new Object[0];
     }
 
     /**
-     * For all registered instructions, load an instance for each handler and bind it to a simulator.
-     */
-    private void loadInstructionHandlers() {
-        InstructionDispatcher.instructions.values().stream()
-                .filter(instruction -> instructionHandlerInstances.get(instruction.getParent()) == null)
-                .forEach(this::loadInstructionHandler);
-    }
-
-    /**
-     * Load an instance of an instruction handler for an instruction (or skip if already cached).
+     * Load an instance of an instruction handler for an instruction (or reuse it if already cached).
      *
      * @param instruction the registered instruction to load an instance for.
+     * @return the instance of the instruction's handler bound to this dispatcher's simulator.
      */
-    private void loadInstructionHandler(DispatchInstruction instruction) {
-        try {
-            Constructor<?> constructor = instruction.getParent().getDeclaredConstructor(Simulator.class);
-            Object inst = constructor.newInstance(this.simulator);
-            this.instructionHandlerInstances.put(instruction.getParent(), inst);
-        } catch (NoSuchMethodException | InvocationTargetException | InstantiationException
-                | IllegalAccessException e) {
-            throw new RuntimeException(e);
+    private Object loadInstructionHandler(DispatchInstruction instruction) {
+        Object handler = this.instructionHandlerInstances.computeIfAbsent(instruction.getParent(),
+                parent -> instruction.getTable().createHandler(this.simulator));
+        int opcode = instruction.getOpcode();
+        if (opcode >= handlers.length) {
+            handlers = Arrays.copyOf(handlers, Math.max(opcode + 1, handlers.length * 2));
         }
-
+        handlers[opcode] = handler;
+        return handler;
     }
 
     /**
@@ -137,16 +337,35 @@ public class InstructionDispatcher {
      *                                      (not yet implemented).
      */
     public void execute(Line line) throws InstructionDispatchException {
-        DispatchInstruction dispatch = instructions.get(line.getInstruction().text());
-        if (dispatch == null)
-            throw new IllegalInstructionException(line.getInstruction().text());
-
-        Object object = this.instructionHandlerInstances.get(dispatch.getParent());
-        // TODO assume loaded for now
-        assert object != null;
+        DispatchInstruction dispatch = line.getDispatchInstruction();
+        dispatch.invoke(getHandler(dispatch), line);
+    }
 
-        dispatch.invoke(object, line);
+    /**
+     * Execute a line of code of a program through its instruction, passing the operands the program
+     * stores for the line. No {@link Line} is created.
+     *
+     * @param program the program.
+     * @param index   the index of the line of code within the program.
+     */
+    public void execute(ArrayProgram program, int index) {
+        int opcode = program.getOpcode(index);
+        if (opcode == ArrayProgram.NO_OPCODE)
+            return;
+        DispatchInstruction dispatch = getInstruction(opcode);
+        dispatch.invoke(getHandler(dispatch), program.getOperandTargets(), program.getOperandStart(index));
+    }
 
+    /**
+     * Gets the handler instance of an instruction, loading it the first time.
+     *
+     * @param dispatch the instruction.
+     * @return the instance of the instruction's handler bound to this dispatcher's simulator.
+     */
+    private Object getHandler(DispatchInstruction dispatch) {
+        int opcode = dispatch.getOpcode();
+        Object handler = opcode < handlers.length ? handlers[opcode] : null;
+        return handler == null ? loadInstructionHandler(dispatch) : handler;
     }
 
 }
@@ -0,0 +1,325 @@
+package com.ezasm.instructions;
+
+import com.ezasm.instructions.exception.InstructionLoadException;
+import com.ezasm.parsing.ArrayProgram;
+import com.ezasm.parsing.NameTable;
+
+import java.util.*;
+
+/**
+ * An immutable snapshot of the registered instructions: the loaded overloads by name and by opcode,
+ * the mnemonics indexed by instruction sets but not loaded yet, the variant providers and everything
+ * derived from them. Registering never modifies a snapshot; it copies it into a new one, which the
+ * {@link InstructionDispatcher} then publishes. A snapshot can therefore be read from any number of
+ * threads without locking, and a snapshot taken once all instructions are registered never changes.
+ */
+public final class InstructionRegistry {
+
+    /**
+     * The registry before anything is registered.
+     */
+    static final InstructionRegistry EMPTY = new InstructionRegistry(Map.of(), new DispatchInstruction[0], Map.of(),
+            Map.of(), List.of());
+
+    /**
+     * Returned by {@link InstructionRegistry#findInstructions(CharSequence, int, int)} for a name whose
+     * handler classes must be loaded before it is found.
+     */
+    static final DispatchInstruction[] UNLOADED = new DispatchInstruction[0];
+
+    /**
+     * A handler class named by the index of an instruction set.
+     */
+    record IndexEntry(IInstructionSet set, String handler) {
+    }
+
+    /**
+     * The overloads of each loaded instruction in the order they were registered.
+     */
+    private final Map<String, List<DispatchInstruction>> instructions;
+
+    /**
+     * All loaded instructions indexed by their opcode.
+     */
+    private final DispatchInstruction[] opcodes;
+
+    /**
+     * The handler classes of mnemonics which are indexed by an instruction set but not loaded yet.
+     */
+    private final Map<String, List<IndexEntry>> unloaded;
+
+    /**
+     * The signatures of the instructions of each handler class indexed by an instruction set, whether
+     * loaded or not, as the set declared them. Handler classes whose set declares no signatures have
+     * their mnemonics instead.
+     */
+    private final Map<String, Set<String>> indexed;
+
+    /**
+     * The providers of specialized instruction variants in the order they were registered.
+     */
+    private final List<IVariantProvider> variantProviders;
+
+    /**
+     * A case-insensitive table of every known instruction name.
+     */
+    private final NameTable names;
+
+    /**
+     * The overloads of each name numbered by {@link InstructionRegistry#names}, or
+     * {@link InstructionRegistry#UNLOADED} while some of its handler classes are not loaded.
+     */
+    private final DispatchInstruction[][] overloads;
+
+    /**
+     * A fingerprint of the known instructions.
+     */
+    private final long version;
+
+    private InstructionRegistry(Map<String, List<DispatchInstruction>> instructions, DispatchInstruction[] opcodes,
+            Map<String, List<IndexEntry>> unloaded, Map<String, Set<String>> indexed,
+            List<IVariantProvider> variantProviders) {
+        this.instructions = instructions;
+        this.opcodes = opcodes;
+        this.unloaded = unloaded;
+        this.indexed = indexed;
+        this.variantProviders = variantProviders;
+
+        Set<String> mnemonics = new HashSet<>(instructions.keySet());
+        mnemonics.addAll(unloaded.keySet());
+        Map<String, Integer> numbers = new HashMap<>();
+        this.overloads = new DispatchInstruction[mnemonics.size()][];
+        for (String name : mnemonics) {
+            overloads[numbers.size()] = unloaded.containsKey(name) ? UNLOADED
+                    : instructions.get(name).toArray(new DispatchInstruction[0]);
+            numbers.put(name, numbers.size());
+        }
+        this.names = new NameTable(numbers);
+        this.version = computeVersion();
+    }
+
+    private long computeVersion() {
+        // Sorted since the order of registration and of the index is unspecified
+        Set<String> signatures = new TreeSet<>();
+        // Indexed handler classes count as their set declared them, so loading them changes nothing
+        for (Map.Entry<String, Set<String>> handler : indexed.entrySet()) {
+            for (String signature : handler.getValue()) {
+                signatures.add(signature + '@' + handler.getKey());
+            }
+        }
+        for (DispatchInstruction instruction : opcodes) {
+            if (!indexed.containsKey(instruction.getParent().getName())) {
+                signatures.add(instruction.getSignature() + '@' + instruction.getParent().getName());
+            }
+        }
+        long version = 1;
+        for (String signature : signatures) {
+            version = 31 * version + signature.hashCode();
+        }
+        return version == 0 ? 1 : version;
+    }
+
+    /**
+     * Copies the registry with the instructions of an instruction table added. Instructions of the same
+     * handler class and parameters as a loaded instruction are skipped, and the handler class is
+     * removed from the index of unloaded mnemonics.
+     *
+     * @param table the instruction table.
+     * @return the new registry.
+     * @throws InstructionLoadException if another handler class already registered an instruction of
+     *                                  the same name and parameters.
+     */
+    InstructionRegistry withTable(IInstructionTable table) {
+        Map<String, List<DispatchInstruction>> instructions = new HashMap<>(this.instructions);
+        List<DispatchInstruction> opcodes = new ArrayList<>(Arrays.asList(this.opcodes));
+        for (int i = 0; i < table.size(); ++i) {
+            String name = table.getName(i);
+            Class<?>[] parameters = table.getParameterTypes(i);
+            List<DispatchInstruction> overloads = new ArrayList<>(instructions.getOrDefault(name, List.of()));
+            boolean duplicate = false;
+            for (DispatchInstruction overload : overloads) {
+                if (Arrays.equals(overload.getParameterTypes(), parameters)) {
+                    if (overload.getParent() != table.getHandlerClass()) {
+                        throw new InstructionLoadException("Error loading instruction '" + name
+                                + "'. An instruction with the same parameters is already registered");
+                    }
+                    duplicate = true;
+                }
+            }
+            if (!duplicate) {
+                DispatchInstruction instruction = new DispatchInstruction(table, i, opcodes.size());
+                opcodes.add(instruction);
+                overloads.add(instruction);
+                instructions.put(name, List.copyOf(overloads));
+            }
+        }
+        return new InstructionRegistry(Map.copyOf(instructions), opcodes.toArray(new DispatchInstruction[0]),
+                removeHandler(unloaded, table.getHandlerClass().getName()), indexed, variantProviders);
+    }
+
+    /**
+     * Copies the registry with the mnemonic index of an instruction set added. Mnemonics of handler
+     * classes which are already loaded are skipped.
+     *
+     * @param set the instruction set.
+     * @return the new registry.
+     */
+    InstructionRegistry withSet(IInstructionSet set) {
+        Map<String, List<IndexEntry>> unloaded = new HashMap<>(this.unloaded);
+        Map<String, Set<String>> indexed = new HashMap<>(this.indexed);
+        Map<String, Set<String>> added = new HashMap<>();
+        for (Map.Entry<String, String> mnemonic : set.getIndex().entrySet()) {
+            String name = mnemonic.getKey().toLowerCase();
+            String handler = mnemonic.getValue();
+            if (isLoaded(handler))
+                continue;
+            List<IndexEntry> entries = new ArrayList<>(unloaded.getOrDefault(name, List.of()));
+            if (entries.stream().noneMatch(entry -> entry.handler().equals(handler))) {
+                entries.add(new IndexEntry(set, handler));
+            }
+            unloaded.put(name, List.copyOf(entries));
+            added.computeIfAbsent(handler, k -> new TreeSet<>()).add(name);
+        }
+        for (Map.Entry<String, Set<String>> handler : added.entrySet()) {
+            List<String> signatures = set.getSignatures(handler.getKey());
+            Set<String> declared = new TreeSet<>(indexed.getOrDefault(handler.getKey(), Set.of()));
+            declared.addAll(signatures.isEmpty() ? handler.getValue() : signatures);
+            indexed.put(handler.getKey(), Collections.unmodifiableSet(declared));
+        }
+        return new InstructionRegistry(instructions, opcodes, Map.copyOf(unloaded), Map.copyOf(indexed),
+                variantProviders);
+    }
+
+    /**
+     * Copies the registry with a provider of variants added after the existing ones.
+     *
+     * @param provider the provider of variants.
+     * @return the new registry.
+     */
+    InstructionRegistry withVariants(IVariantProvider provider) {
+        List<IVariantProvider> variantProviders = new ArrayList<>(this.variantProviders);
+        variantProviders.add(provider);
+        return new InstructionRegistry(instructions, opcodes, unloaded, indexed, List.copyOf(variantProviders));
+    }
+
+    /**
+     * Copies the registry with a handler class removed from the index of unloaded mnemonics.
+     *
+     * @param handler the binary name of the handler class.
+     * @return the new registry.
+     */
+    InstructionRegistry withoutUnloaded(String handler) {
+        return new InstructionRegistry(instructions, opcodes, removeHandler(unloaded, handler), indexed,
+                variantProviders);
+    }
+
+    private boolean isLoaded(String handler) {
+        for (DispatchInstruction instruction : opcodes) {
+            if (instruction.getParent().getName().equals(handler))
+                return true;
+        }
+        return false;
+    }
+
+    private static Map<String, List<IndexEntry>> removeHandler(Map<String, List<IndexEntry>> unloaded,
+            String handler) {
+        Map<String, List<IndexEntry>> removed = new HashMap<>();
+        for (Map.Entry<String, List<IndexEntry>> mnemonic : unloaded.entrySet()) {
+            List<IndexEntry> entries = mnemonic.getValue().stream().filter(entry -> !entry.handler().equals(handler))
+                    .toList();
+            if (!entries.isEmpty()) {
+                removed.put(mnemonic.getKey(), entries);
+            }
+        }
+        return Map.copyOf(removed);
+    }
+
+    /**
+     * Gets the loaded instructions. Each name maps to the overloads of the instruction in the order
+     * they were registered.
+     *
+     * @return the immutable map of loaded instructions.
+     */
+    public Map<String, List<DispatchInstruction>> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * Gets the names of every known instruction, including those whose handler classes are not
+     * loaded yet.
+     *
+     * @return the sorted names of all instructions.
+     */
+    public Set<String> getMnemonics() {
+        Set<String> mnemonics = new TreeSet<>(instructions.keySet());
+        mnemonics.addAll(unloaded.keySet());
+        return Collections.unmodifiableSet(mnemonics);
+    }
+
+    /**
+     * Gets the loaded instruction of the given opcode.
+     *
+     * @param opcode the opcode of the instruction.
+     * @return the instruction of the opcode.
+     */
+    public DispatchInstruction getInstruction(int opcode) {
+        return opcodes[opcode];
+    }
+
+    /**
+     * Binds a line of code to a specialized variant of its instruction overload, asking the providers
+     * in the order they were registered.
+     *
+     * @param program the program containing the line.
+     * @param index   the index of the line within the program.
+     * @return the variant bound to the line, or null if no provider has one for it.
+     */
+    public IInstructionVariant getVariant(ArrayProgram program, int index) {
+        DispatchInstruction instruction = opcodes[program.getOpcode(index)];
+        for (IVariantProvider provider : variantProviders) {
+            IInstructionVariant variant = provider.getVariant(instruction, program, index);
+            if (variant != null)
+                return variant;
+        }
+        return null;
+    }
+
+    /**
+     * Gets a fingerprint of the known instructions. The fingerprint is derived from the signature and
+     * handler class of every instruction, so overloads of one name are told apart. Handler classes
+     * indexed by an instruction set count with the signatures the set declares for them, or only their
+     * mnemonics if it declares none, whether they are loaded or not. The fingerprint is therefore
+     * stable across runs, does not change as handler classes are loaded and changes whenever the
+     * instruction set does.
+     *
+     * @return the fingerprint of the known instructions.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Finds the overloads of the instruction named by a span of text, ignoring case.
+     *
+     * @param text  the text containing the instruction name.
+     * @param start the index of the first character of the name.
+     * @param end   the index after the last character of the name.
+     * @return the overloads of the instruction, {@link InstructionRegistry#UNLOADED} if some of its
+     *         handler classes must be loaded first, or null if no instruction has that name.
+     */
+    DispatchInstruction[] findInstructions(CharSequence text, int start, int end) {
+        int number = names.get(text, start, end);
+        return number < 0 ? null : overloads[number];
+    }
+
+    /**
+     * Gets the handler classes indexed for a mnemonic which are not loaded yet.
+     *
+     * @param name the lowercase mnemonic.
+     * @return the unloaded handler classes of the mnemonic.
+     */
+    List<IndexEntry> getUnloaded(String name) {
+        return unloaded.getOrDefault(name, List.of());
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.ezasm.instructions;
+
+import com.ezasm.instructions.exception.InstructionLoadException;
+import com.ezasm.instructions.targets.IAbstractTarget;
+import com.ezasm.simulation.Simulator;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * An instruction table read from a handler class through reflection. Used for handler classes which
+ * were compiled without the {@link com.ezasm.instructions.processor.InstructionProcessor}.
+ */
+class ReflectiveInstructionTable implements IInstructionTable {
+
+    private final Class<?> handlerClass;
+    private final Constructor<?> constructor;
+    private final Method[] methods;
+
+    /**
+     * Scans a handler class's declared methods for those annotated with {@link Instruction}.
+     *
+     * @param handlerClass the handler class.
+     * @throws InstructionLoadException if the handler class has no constructor taking a simulator.
+     */
+    ReflectiveInstructionTable(Class<?> handlerClass) {
+        this.handlerClass = handlerClass;
+        try {
+            this.constructor = handlerClass.getDeclaredConstructor(Simulator.class);
+        } catch (NoSuchMethodException e) {
+            throw new InstructionLoadException("Error loading handler class '" + handlerClass.getName()
+                    + "'. Handler classes must declare a constructor taking a Simulator", e);
+        }
+        this.methods = Arrays.stream(handlerClass.getDeclaredMethods())
+                .filter(method -> method.isAnnotationPresent(Instruction.class)).toArray(Method[]::new);
+    }
+
+    @Override
+    public Class<?> getHandlerClass() {
+        return handlerClass;
+    }
+
+    @Override
+    public int size() {
+        return methods.length;
+    }
+
+    @Override
+    public String getName(int index) {
+        return methods[index].getName().toLowerCase();
+    }
+
+    @Override
+    public Class<?>[] getParameterTypes(int index) {
+        return methods[index].getParameterTypes();
+    }
+
+    @Override
+    public Object createHandler(Simulator simulator) {
+        try {
+            return constructor.newInstance(simulator);
+        } catch (InvocationTargetException | InstantiationException | IllegalAccessException e) {
+            throw new InstructionLoadException("Error creating handler of class '" + handlerClass.getName() + "'", e);
+        }
+    }
+
+    @Override
+    public void invoke(Object handler, int index, IAbstractTarget[] arguments, int offset) {
+        try {
+            methods[index].invoke(handler,
+                    (Object[]) Arrays.copyOfRange(arguments, offset, offset + methods[index].getParameterCount()));
+        } catch (InvocationTargetException e) {
+            // Report what the instruction threw as the generated tables do, which call it directly
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            if (e.getCause() instanceof Error cause)
+                throw cause;
+            throw new InstructionLoadException("Error invoking instruction '" + getName(index) + "'", e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new InstructionLoadException("Error invoking instruction '" + getName(index) + "'. Instruction "
+                    + "methods must be public", e);
+        }
+    }
+
+}
@@ -4,4 +4,8 @@ public class InstructionLoadException extends RuntimeException {
     public InstructionLoadException(String s) {
         super(s);
     }
+
+    public InstructionLoadException(String s, Throwable cause) {
+        super(s, cause);
+    }
 }
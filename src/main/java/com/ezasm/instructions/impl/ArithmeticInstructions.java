@@ -10,13 +10,22 @@ import com.ezasm.instructions.exception.IllegalArgumentException;
 import com.ezasm.instructions.targets.input.ImmediateInput;
 import com.ezasm.instructions.targets.inputoutput.RegisterInputOutput;
 
-import java.util.function.BinaryOperator;
+import java.util.function.LongBinaryOperator;
 
 /**
  * An implementation of standard arithmetic instructions for the simulation.
  */
 public class ArithmeticInstructions {
 
+    // The operations of the instructions which combine two inputs
+    private static final LongBinaryOperator ADD = Long::sum;
+    private static final LongBinaryOperator SUB = (a, b) -> a - b;
+    private static final LongBinaryOperator MUL = (a, b) -> a * b;
+    private static final LongBinaryOperator AND = (a, b) -> a & b;
+    private static final LongBinaryOperator OR = (a, b) -> a | b;
+    private static final LongBinaryOperator SLL = (a, b) -> a << b;
+    private static final LongBinaryOperator SRL = (a, b) -> a >> b;
+
     private final Simulator simulator;
 
     /**
@@ -36,10 +45,10 @@ public class ArithmeticInstructions {
      * @param input1 the left-hand side of the operation.
      * @param input2 the right-hand side of the operation.
      */
-    private void arithmetic(BinaryOperator<Long> op, IAbstractOutput output, IAbstractInput input1,
+    private void arithmetic(LongBinaryOperator op, IAbstractOutput output, IAbstractInput input1,
             IAbstractInput input2) {
 
-        long res = op.apply(Conversion.bytesToLong(input1.get(simulator)),
+        long res = op.applyAsLong(Conversion.bytesToLong(input1.get(simulator)),
                 Conversion.bytesToLong(input2.get(simulator)));
         output.set(this.simulator, Conversion.longToBytes(res));
     }
@@ -53,7 +62,7 @@ public class ArithmeticInstructions {
      */
     @Instruction
     public void add(IAbstractOutput output, IAbstractInput input1, IAbstractInput input2) {
-        arithmetic(Long::sum, output, input1, input2);
+        arithmetic(ADD, output, input1, input2);
     }
 
     /**
@@ -65,7 +74,7 @@ public class ArithmeticInstructions {
      */
     @Instruction
     public void sub(IAbstractOutput output, IAbstractInput input1, IAbstractInput input2) {
-        arithmetic((a, b) -> a - b, output, input1, input2);
+        arithmetic(SUB, output, input1, input2);
     }
 
     /**
@@ -77,7 +86,7 @@ public class ArithmeticInstructions {
      */
     @Instruction
     public void mul(IAbstractOutput output, IAbstractInput input1, IAbstractInput input2) {
-        arithmetic((a, b) -> a * b, output, input1, input2);
+        arithmetic(MUL, output, input1, input2);
     }
 
     /**
@@ -104,7 +113,7 @@ public class ArithmeticInstructions {
      */
     @Instruction
     public void and(IAbstractOutput output, IAbstractInput input1, IAbstractInput input2) {
-        arithmetic((a, b) -> a & b, output, input1, input2);
+        arithmetic(AND, output, input1, input2);
     }
 
     /**
@@ -116,7 +125,7 @@ public class ArithmeticInstructions {
      */
     @Instruction
     public void or(IAbstractOutput output, IAbstractInput input1, IAbstractInput input2) {
-        arithmetic((a, b) -> a | b, output, input1, input2);
+        arithmetic(OR, output, input1, input2);
     }
 
     /**
@@ -142,7 +151,7 @@ public class ArithmeticInstructions {
      */
     @Instruction
     public void sll(IAbstractOutput output, IAbstractInput input1, IAbstractInput input2) {
-        arithmetic((a, b) -> a << b, output, input1, input2);
+        arithmetic(SLL, output, input1, input2);
     }
 
     /**
@@ -154,7 +163,7 @@ public class ArithmeticInstructions {
      */
     @Instruction
     public void srl(IAbstractOutput output, IAbstractInput input1, IAbstractInput input2) {
-        arithmetic((a, b) -> a >> b, output, input1, input2);
+        arithmetic(SRL, output, input1, input2);
     }
 
     /**
@@ -0,0 +1,310 @@
+package com.ezasm.instructions.impl;
+
+import com.ezasm.instructions.DispatchInstruction;
+import com.ezasm.instructions.IInstructionVariant;
+import com.ezasm.instructions.IVariantProvider;
+import com.ezasm.instructions.exception.IllegalArgumentException;
+import com.ezasm.parsing.ArrayProgram;
+import com.ezasm.simulation.Simulator;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Specialized variants of the arithmetic instructions writing to an output register. Each operator
+ * has its own variant class per combination of register and immediate inputs, so the operation is
+ * compiled into the variant instead of being called through a shared operator, and each variant holds
+ * the register numbers and immediates of its line as final fields. Commutative operators take an
+ * immediate first input as their second, subtracting an immediate is adding its negation, and lines
+ * whose inputs are all immediates are folded into the constant they compute.
+ * <p>
+ * Variants are records compared by their class and operands, and are interned so that identical
+ * statements share one instance instead of each line holding its own.
+ */
+public class ArithmeticVariants implements IVariantProvider {
+
+    /**
+     * The maximum number of distinct variants interned. When it is reached the interned variants are
+     * forgotten, so the lines already bound keep theirs and later programs share new ones.
+     */
+    private static final int MAX_INTERNED = 1 << 16;
+
+    /**
+     * The interned variants, each mapped to itself.
+     */
+    private static final Map<IInstructionVariant, IInstructionVariant> interned = new ConcurrentHashMap<>();
+
+    @Override
+    public IInstructionVariant getVariant(DispatchInstruction instruction, ArrayProgram program, int index) {
+        IInstructionVariant variant = createVariant(instruction, program, index);
+        if (variant == null)
+            return null;
+        IInstructionVariant shared = interned.get(variant);
+        if (shared != null)
+            return shared;
+        if (interned.size() >= MAX_INTERNED) {
+            interned.clear();
+        }
+        shared = interned.putIfAbsent(variant, variant);
+        return shared == null ? variant : shared;
+    }
+
+    private static IInstructionVariant createVariant(DispatchInstruction instruction, ArrayProgram program,
+            int index) {
+        if (instruction.getParent() != ArithmeticInstructions.class || program.isImmediate(index, 0)) {
+            return null;
+        }
+        int output = (int) program.getOperand(index, 0);
+        if (instruction.getArity() == 1) {
+            // inc with a single register
+            return new AddRegisterImmediate(output, output, 1);
+        }
+        boolean leftImmediate = program.isImmediate(index, 1);
+        long left = program.getOperand(index, 1);
+        if (instruction.getArity() == 2) {
+            return switch (instruction.getName()) {
+            case "not" -> leftImmediate ? new Constant(output, ~left) : new Not(output, (int) left);
+            case "inc" -> leftImmediate ? new Constant(output, left + 1) : new AddRegisterImmediate(output, (int) left, 1);
+            default -> null;
+            };
+        }
+        boolean rightImmediate = program.isImmediate(index, 2);
+        long right = program.getOperand(index, 2);
+        if (leftImmediate && rightImmediate) {
+            return fold(instruction.getName(), output, left, right);
+        } else if (leftImmediate) {
+            return immediateRegister(instruction.getName(), output, left, (int) right);
+        } else if (rightImmediate) {
+            return registerImmediate(instruction.getName(), output, (int) left, right);
+        }
+        return registerRegister(instruction.getName(), output, (int) left, (int) right);
+    }
+
+    private static IInstructionVariant registerRegister(String name, int output, int left, int right) {
+        return switch (name) {
+        case "add" -> new AddRegisterRegister(output, left, right);
+        case "sub" -> new SubRegisterRegister(output, left, right);
+        case "mul" -> new MulRegisterRegister(output, left, right);
+        case "div" -> new DivRegisterRegister(output, left, right);
+        case "and" -> new AndRegisterRegister(output, left, right);
+        case "or" -> new OrRegisterRegister(output, left, right);
+        case "sll" -> new SllRegisterRegister(output, left, right);
+        case "srl" -> new SrlRegisterRegister(output, left, right);
+        default -> null;
+        };
+    }
+
+    private static IInstructionVariant registerImmediate(String name, int output, int left, long right) {
+        return switch (name) {
+        case "add" -> new AddRegisterImmediate(output, left, right);
+        case "sub" -> new AddRegisterImmediate(output, left, -right);
+        case "mul" -> new MulRegisterImmediate(output, left, right);
+        // Dividing by an immediate zero is left to the instruction, which reports it when executed
+        case "div" -> right == 0 ? null : new DivRegisterImmediate(output, left, right);
+        case "and" -> new AndRegisterImmediate(output, left, right);
+        case "or" -> new OrRegisterImmediate(output, left, right);
+        case "sll" -> new SllRegisterImmediate(output, left, right);
+        case "srl" -> new SrlRegisterImmediate(output, left, right);
+        default -> null;
+        };
+    }
+
+    private static IInstructionVariant immediateRegister(String name, int output, long left, int right) {
+        return switch (name) {
+        case "add" -> new AddRegisterImmediate(output, right, left);
+        case "sub" -> new SubImmediateRegister(output, left, right);
+        case "mul" -> new MulRegisterImmediate(output, right, left);
+        case "div" -> new DivImmediateRegister(output, left, right);
+        case "and" -> new AndRegisterImmediate(output, right, left);
+        case "or" -> new OrRegisterImmediate(output, right, left);
+        case "sll" -> new SllImmediateRegister(output, left, right);
+        case "srl" -> new SrlImmediateRegister(output, left, right);
+        default -> null;
+        };
+    }
+
+    private static IInstructionVariant fold(String name, int output, long left, long right) {
+        return switch (name) {
+        case "add" -> new Constant(output, left + right);
+        case "sub" -> new Constant(output, left - right);
+        case "mul" -> new Constant(output, left * right);
+        case "div" -> right == 0 ? null : new Constant(output, left / right);
+        case "and" -> new Constant(output, left & right);
+        case "or" -> new Constant(output, left | right);
+        case "sll" -> new Constant(output, left << right);
+        case "srl" -> new Constant(output, left >> right);
+        default -> null;
+        };
+    }
+
+    private record Constant(int output, long value) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            simulator.getRegister(output).setLong(value);
+        }
+    }
+
+    private record Not(int output, int input) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            simulator.getRegister(output).setLong(~simulator.getRegister(input).getLong());
+        }
+    }
+
+    private record AddRegisterRegister(int output, int left, int right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            long a = simulator.getRegister(left).getLong();
+            long b = simulator.getRegister(right).getLong();
+            simulator.getRegister(output).setLong(a + b);
+        }
+    }
+
+    private record AddRegisterImmediate(int output, int left, long right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            simulator.getRegister(output).setLong(simulator.getRegister(left).getLong() + right);
+        }
+    }
+
+    private record SubRegisterRegister(int output, int left, int right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            long a = simulator.getRegister(left).getLong();
+            long b = simulator.getRegister(right).getLong();
+            simulator.getRegister(output).setLong(a - b);
+        }
+    }
+
+    private record SubImmediateRegister(int output, long left, int right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            simulator.getRegister(output).setLong(left - simulator.getRegister(right).getLong());
+        }
+    }
+
+    private record MulRegisterRegister(int output, int left, int right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            long a = simulator.getRegister(left).getLong();
+            long b = simulator.getRegister(right).getLong();
+            simulator.getRegister(output).setLong(a * b);
+        }
+    }
+
+    private record MulRegisterImmediate(int output, int left, long right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            simulator.getRegister(output).setLong(simulator.getRegister(left).getLong() * right);
+        }
+    }
+
+    private record DivRegisterRegister(int output, int left, int right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            long a = simulator.getRegister(left).getLong();
+            long b = simulator.getRegister(right).getLong();
+            if (b == 0) {
+                throw new IllegalArgumentException(-1);
+            }
+            simulator.getRegister(output).setLong(a / b);
+        }
+    }
+
+    private record DivRegisterImmediate(int output, int left, long right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            simulator.getRegister(output).setLong(simulator.getRegister(left).getLong() / right);
+        }
+    }
+
+    private record DivImmediateRegister(int output, long left, int right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            long b = simulator.getRegister(right).getLong();
+            if (b == 0) {
+                throw new IllegalArgumentException(-1);
+            }
+            simulator.getRegister(output).setLong(left / b);
+        }
+    }
+
+    private record AndRegisterRegister(int output, int left, int right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            long a = simulator.getRegister(left).getLong();
+            long b = simulator.getRegister(right).getLong();
+            simulator.getRegister(output).setLong(a & b);
+        }
+    }
+
+    private record AndRegisterImmediate(int output, int left, long right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            simulator.getRegister(output).setLong(simulator.getRegister(left).getLong() & right);
+        }
+    }
+
+    private record OrRegisterRegister(int output, int left, int right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            long a = simulator.getRegister(left).getLong();
+            long b = simulator.getRegister(right).getLong();
+            simulator.getRegister(output).setLong(a | b);
+        }
+    }
+
+    private record OrRegisterImmediate(int output, int left, long right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            simulator.getRegister(output).setLong(simulator.getRegister(left).getLong() | right);
+        }
+    }
+
+    private record SllRegisterRegister(int output, int left, int right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            long a = simulator.getRegister(left).getLong();
+            long b = simulator.getRegister(right).getLong();
+            simulator.getRegister(output).setLong(a << b);
+        }
+    }
+
+    private record SllRegisterImmediate(int output, int left, long right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            simulator.getRegister(output).setLong(simulator.getRegister(left).getLong() << right);
+        }
+    }
+
+    private record SllImmediateRegister(int output, long left, int right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            simulator.getRegister(output).setLong(left << simulator.getRegister(right).getLong());
+        }
+    }
+
+    private record SrlRegisterRegister(int output, int left, int right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            long a = simulator.getRegister(left).getLong();
+            long b = simulator.getRegister(right).getLong();
+            simulator.getRegister(output).setLong(a >> b);
+        }
+    }
+
+    private record SrlRegisterImmediate(int output, int left, long right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            simulator.getRegister(output).setLong(simulator.getRegister(left).getLong() >> right);
+        }
+    }
+
+    private record SrlImmediateRegister(int output, long left, int right) implements IInstructionVariant {
+        @Override
+        public void execute(Simulator simulator) {
+            simulator.getRegister(output).setLong(left >> simulator.getRegister(right).getLong());
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.ezasm.instructions.impl;
+
+import com.ezasm.instructions.IInstructionSet;
+import com.ezasm.instructions.IVariantProvider;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The instructions built into EzASM. The index is the one the instruction processor generates for
+ * the handler classes, so it always matches the instructions they declare.
+ */
+public class CoreInstructionSet implements IInstructionSet {
+
+    private static final String ARITHMETIC = "com.ezasm.instructions.impl.ArithmeticInstructions";
+
+    @Override
+    public Map<String, String> getIndex() {
+        return IInstructionSet.readIndex(getClass().getClassLoader(), ARITHMETIC);
+    }
+
+    @Override
+    public List<IVariantProvider> getVariantProviders(String handler) {
+        return handler.equals(ARITHMETIC) ? List.of(new ArithmeticVariants()) : List.of();
+    }
+
+}
@@ -0,0 +1,234 @@
+package com.ezasm.instructions.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedSourceVersion;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a dispatch table for every class declaring methods annotated with
+ * <code>@com.ezasm.instructions.Instruction</code>. The table of a handler class <code>Foo</code> is
+ * the class <code>FooTable</code> in the same package. It implements
+ * <code>com.ezasm.instructions.IInstructionTable</code> with one index constant per instruction,
+ * the names and parameter types of the instructions, a direct constructor call for the handler and
+ * a switch of direct calls to each instruction method, so that no reflection is needed at runtime.
+ * <p>
+ * Next to the compiled handler class, the processor also writes its index: the resource
+ * <code>Foo.instructions</code> listing the signature of each instruction on its own line, the
+ * lowercase name followed by the binary names of the parameter types in parentheses. Instruction
+ * sets read it to index their mnemonics and fingerprint their instructions without loading the
+ * handler class.
+ * <p>
+ * The processor only refers to the runtime classes by name, so it can be compiled before them.
+ */
+@SupportedAnnotationTypes(InstructionProcessor.INSTRUCTION_ANNOTATION)
+@SupportedSourceVersion(SourceVersion.RELEASE_17)
+public class InstructionProcessor extends AbstractProcessor {
+
+    /**
+     * The annotation marking instruction methods.
+     */
+    static final String INSTRUCTION_ANNOTATION = "com.ezasm.instructions.Instruction";
+
+    /**
+     * The suffix appended to the name of a handler class to name its dispatch table.
+     */
+    public static final String TABLE_SUFFIX = "Table";
+
+    /**
+     * The suffix appended to the binary name of a handler class to name its index resource.
+     */
+    public static final String INDEX_SUFFIX = ".instructions";
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        Map<TypeElement, List<ExecutableElement>> handlers = new LinkedHashMap<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : round.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.METHOD) {
+                    continue;
+                }
+                if (!element.getModifiers().contains(Modifier.PUBLIC)
+                        || element.getModifiers().contains(Modifier.STATIC)) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            "Instruction methods must be public and not static", element);
+                    continue;
+                }
+                handlers.computeIfAbsent((TypeElement) element.getEnclosingElement(), k -> new ArrayList<>())
+                        .add((ExecutableElement) element);
+            }
+        }
+        for (Map.Entry<TypeElement, List<ExecutableElement>> handler : handlers.entrySet()) {
+            List<ExecutableElement> methods = handler.getValue();
+            // Keep the order the methods are declared in, which the round does not guarantee
+            List<? extends Element> declared = handler.getKey().getEnclosedElements();
+            methods.sort((a, b) -> Integer.compare(declared.indexOf(a), declared.indexOf(b)));
+            try {
+                writeTable(handler.getKey(), methods);
+                writeIndex(handler.getKey(), methods);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Unable to write instruction table: " + e.getMessage(), handler.getKey());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the dispatch table of a handler class.
+     *
+     * @param handler the handler class.
+     * @param methods the instruction methods of the handler in declaration order.
+     * @throws IOException if the source file could not be written.
+     */
+    private void writeTable(TypeElement handler, List<ExecutableElement> methods) throws IOException {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(handler);
+        String handlerName = handler.getQualifiedName().toString();
+        String tableName = handler.getSimpleName() + TABLE_SUFFIX;
+        List<String> constants = constantNames(methods);
+
+        try (PrintWriter out = new PrintWriter(
+                processingEnv.getFiler().createSourceFile(handlerName + TABLE_SUFFIX, handler).openWriter())) {
+            if (!pkg.isUnnamed()) {
+                out.printf("package %s;%n%n", pkg.getQualifiedName());
+            }
+            out.printf("/**%n * The dispatch table of {@link %s}, generated from its instruction methods by {@link %s}.%n */%n",
+                    handlerName, getClass().getName());
+            out.printf("public final class %s implements com.ezasm.instructions.IInstructionTable {%n%n", tableName);
+
+            for (int i = 0; i < methods.size(); ++i) {
+                out.printf("    public static final int %s = %d;%n", constants.get(i), i);
+            }
+            out.println();
+            out.println("    private static final String[] NAMES = {");
+            for (ExecutableElement method : methods) {
+                out.printf("            \"%s\",%n", method.getSimpleName().toString().toLowerCase());
+            }
+            out.println("    };");
+            out.println();
+            out.println("    private static final Class<?>[][] PARAMETERS = {");
+            for (ExecutableElement method : methods) {
+                List<String> parameters = new ArrayList<>();
+                for (VariableElement parameter : method.getParameters()) {
+                    parameters.add(erasure(parameter) + ".class");
+                }
+                out.printf("            { %s },%n", String.join(", ", parameters));
+            }
+            out.println("    };");
+            out.println();
+
+            out.printf("    @Override%n    public Class<?> getHandlerClass() {%n        return %s.class;%n    }%n%n",
+                    handlerName);
+            out.printf("    @Override%n    public int size() {%n        return NAMES.length;%n    }%n%n");
+            out.printf("    @Override%n    public String getName(int index) {%n        return NAMES[index];%n    }%n%n");
+            out.printf("    @Override%n    public Class<?>[] getParameterTypes(int index) {%n"
+                    + "        return PARAMETERS[index].clone();%n    }%n%n");
+            out.printf("    @Override%n    public Object createHandler(com.ezasm.simulation.Simulator simulator) {%n"
+                    + "        return new %s(simulator);%n    }%n%n", handlerName);
+
+            out.printf("    @Override%n    public void invoke(Object handler, int index, "
+                    + "com.ezasm.instructions.targets.IAbstractTarget[] arguments, int offset) {%n");
+            out.printf("        %s target = (%s) handler;%n", handlerName, handlerName);
+            out.println("        switch (index) {");
+            for (int i = 0; i < methods.size(); ++i) {
+                ExecutableElement method = methods.get(i);
+                List<String> arguments = new ArrayList<>();
+                for (int j = 0; j < method.getParameters().size(); ++j) {
+                    arguments.add(String.format("(%s) arguments[offset + %d]", erasure(method.getParameters().get(j)), j));
+                }
+                out.printf("        case %s -> target.%s(%s);%n", constants.get(i), method.getSimpleName(),
+                        String.join(", ", arguments));
+            }
+            out.println("        default -> throw new IndexOutOfBoundsException(index);");
+            out.println("        }");
+            out.println("    }");
+            out.println();
+            out.println("}");
+        }
+    }
+
+    /**
+     * Writes the index resource of a handler class, listing the signature of each instruction.
+     *
+     * @param handler the handler class.
+     * @param methods the instruction methods of the handler in declaration order.
+     * @throws IOException if the resource could not be written.
+     */
+    private void writeIndex(TypeElement handler, List<ExecutableElement> methods) throws IOException {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(handler);
+        String binaryName = processingEnv.getElementUtils().getBinaryName(handler).toString();
+        String relativeName = (pkg.isUnnamed() ? binaryName
+                : binaryName.substring(pkg.getQualifiedName().length() + 1)) + INDEX_SUFFIX;
+        try (PrintWriter out = new PrintWriter(processingEnv.getFiler()
+                .createResource(StandardLocation.CLASS_OUTPUT, pkg.getQualifiedName(), relativeName, handler)
+                .openWriter())) {
+            for (ExecutableElement method : methods) {
+                List<String> parameters = new ArrayList<>();
+                for (VariableElement parameter : method.getParameters()) {
+                    parameters.add(binaryName(parameter));
+                }
+                out.printf("%s(%s)%n", method.getSimpleName().toString().toLowerCase(),
+                        String.join(",", parameters));
+            }
+        }
+    }
+
+    /**
+     * Names the index constant of each instruction after its method. Overloads after the first are
+     * suffixed with their position among the overloads.
+     *
+     * @param methods the instruction methods.
+     * @return the constant name of each method.
+     */
+    private static List<String> constantNames(List<ExecutableElement> methods) {
+        Map<String, Integer> seen = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        for (ExecutableElement method : methods) {
+            String name = method.getSimpleName().toString().toUpperCase();
+            int overload = seen.merge(name, 1, Integer::sum);
+            names.add(overload == 1 ? name : name + "_" + overload);
+        }
+        return names;
+    }
+
+    private String erasure(VariableElement parameter) {
+        return processingEnv.getTypeUtils().erasure(parameter.asType()).toString();
+    }
+
+    /**
+     * Gets the binary name of the erased type of a parameter, as {@link Class#getName()} returns it.
+     *
+     * @param parameter the parameter.
+     * @return the binary name of the parameter's type.
+     */
+    private String binaryName(VariableElement parameter) {
+        TypeMirror type = processingEnv.getTypeUtils().erasure(parameter.asType());
+        if (type.getKind() == TypeKind.DECLARED) {
+            return processingEnv.getElementUtils().getBinaryName((TypeElement) ((DeclaredType) type).asElement())
+                    .toString();
+        }
+        return type.toString();
+    }
+
+}
@@ -1,13 +1,45 @@
 package com.ezasm.instructions.targets.input;
 
+import com.ezasm.Conversion;
 import com.ezasm.simulation.Simulator;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * The implementation of an "immediate" input to be used inline instead of a register or other
  * input. Is used as a fixed value or constant.
  */
 public class ImmediateInput implements IAbstractInput {
 
+    /**
+     * The range of small values which always have a shared instance.
+     */
+    private static final int SMALL_MIN = -128;
+    private static final int SMALL_MAX = 1023;
+
+    /**
+     * The shared instances of small values, indexed by value minus {@link ImmediateInput#SMALL_MIN}.
+     */
+    private static final ImmediateInput[] small = new ImmediateInput[SMALL_MAX - SMALL_MIN + 1];
+
+    static {
+        for (int i = 0; i < small.length; ++i) {
+            small[i] = new ImmediateInput(Conversion.longToBytes(i + SMALL_MIN));
+        }
+    }
+
+    /**
+     * The maximum number of distinct values kept in the constant pool. Values beyond this are still
+     * valid immediates but are no longer shared.
+     */
+    private static final int MAX_POOLED = 1 << 16;
+
+    /**
+     * The constant pool of immediates so that repeated constants share one instance.
+     */
+    private static final Map<Long, ImmediateInput> pool = new ConcurrentHashMap<>();
+
     private final byte[] value;
 
     /**
@@ -19,6 +51,35 @@ public class ImmediateInput implements IAbstractInput {
         this.value = value;
     }
 
+    /**
+     * Gets the shared immediate for the given value, creating it if necessary. Small values are taken
+     * from a fixed table and others from the constant pool.
+     *
+     * @param value the constant value.
+     * @return the immediate representing the value.
+     */
+    public static ImmediateInput valueOf(long value) {
+        if (value >= SMALL_MIN && value <= SMALL_MAX)
+            return small[(int) value - SMALL_MIN];
+        ImmediateInput pooled = pool.get(value);
+        if (pooled != null)
+            return pooled;
+        ImmediateInput created = new ImmediateInput(Conversion.longToBytes(value));
+        if (pool.size() >= MAX_POOLED)
+            return created;
+        pooled = pool.putIfAbsent(value, created);
+        return pooled == null ? created : pooled;
+    }
+
+    /**
+     * Gets the constant value of the immediate as a long.
+     *
+     * @return the constant value.
+     */
+    public long getLong() {
+        return Conversion.bytesToLong(value);
+    }
+
     /**
      * Gets the constant value of the immediate.
      *
@@ -11,6 +11,17 @@ import java.util.function.Function;
  */
 public class RegisterInputOutput implements IAbstractInputOutput {
 
+    /**
+     * The shared instance of each register, indexed by register number.
+     */
+    private static final RegisterInputOutput[] instances = new RegisterInputOutput[Registers.TOTAL_REGISTERS];
+
+    static {
+        for (int i = 0; i < instances.length; ++i) {
+            instances[i] = new RegisterInputOutput(i);
+        }
+    }
+
     private final int register;
 
     /**
@@ -18,17 +29,37 @@ public class RegisterInputOutput implements IAbstractInputOutput {
      *
      * @param register the register reference number.
      */
-    public RegisterInputOutput(int register) {
+    private RegisterInputOutput(int register) {
         this.register = register;
     }
 
     /**
-     * Construct the output based on the register reference string.
+     * Gets the shared output for the register of the given reference number.
+     *
+     * @param register the register reference number.
+     * @return the output representing the register.
+     */
+    public static RegisterInputOutput of(int register) {
+        return instances[register];
+    }
+
+    /**
+     * Gets the shared output for the register of the given reference string.
      *
      * @param register the register reference string.
+     * @return the output representing the register.
+     */
+    public static RegisterInputOutput of(String register) {
+        return instances[Registers.getRegisterNumber(register)];
+    }
+
+    /**
+     * Gets the reference number of the register.
+     *
+     * @return the register reference number.
      */
-    public RegisterInputOutput(String register) {
-        this.register = Registers.getRegisterNumber(register);
+    public int getRegisterNumber() {
+        return register;
     }
 
     /**
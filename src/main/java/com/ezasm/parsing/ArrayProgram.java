@@ -0,0 +1,361 @@
+package com.ezasm.parsing;
+
+import com.ezasm.instructions.DispatchInstruction;
+import com.ezasm.instructions.IInstructionVariant;
+import com.ezasm.instructions.InstructionDispatcher;
+import com.ezasm.instructions.targets.IAbstractTarget;
+import com.ezasm.instructions.targets.input.ImmediateInput;
+import com.ezasm.instructions.targets.inputoutput.RegisterInputOutput;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A program held in memory which can be appended to. Lines of code are stored as parallel primitive
+ * arrays rather than as objects: the opcode of the instruction overload of each line, and one kind
+ * and one value per operand, where the value is either a register number or the immediate itself.
+ * Each operand is also kept as its shared target object, so that instructions without a specialized
+ * variant are invoked on a slice of the target array instead of a decoded line. The arrays take 16
+ * bytes per line plus 13 bytes per operand, counting the references to the variant and the targets as
+ * 4 bytes as with compressed pointers, or 8 bytes more per line and 4 more per operand without them.
+ * Variant objects take 24 to 32 bytes, but the core variants are interned so that identical
+ * statements share one, as lines share their targets. {@link Line} objects are lightweight views created when
+ * a line is requested, for the editor and error reporting.
+ * <p>
+ * Programs which are shared, for example through the {@link ProgramCache}, must not be modified;
+ * copy them with {@link ArrayProgram#copyOf(Program)} instead.
+ */
+public class ArrayProgram extends Program {
+
+    /**
+     * The opcode of a line which has no effect.
+     */
+    public static final int NO_OPCODE = -1;
+
+    /**
+     * The operand kind of a register operand, whose value is the register number.
+     */
+    public static final byte REGISTER = 0;
+
+    /**
+     * The operand kind of an immediate operand, whose value is the immediate itself.
+     */
+    public static final byte IMMEDIATE = 1;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int size;
+    private int[] opcodes = new int[0];
+    private int[] lineNumbers = new int[0];
+    // The specialized variant each line was bound to, holding its operands, if its instruction has one
+    private IInstructionVariant[] variants = new IInstructionVariant[0];
+    // The operands of line i are at indexes operandStarts[i] until operandStarts[i + 1]
+    private int[] operandStarts = new int[1];
+    private byte[] operandKinds = new byte[0];
+    private long[] operandValues = new long[0];
+    // The shared register or immediate target of each operand
+    private IAbstractTarget[] operandTargets = new IAbstractTarget[0];
+
+    private final Map<String, Integer> labels = new LinkedHashMap<>();
+
+    /**
+     * Constructs an empty program.
+     */
+    public ArrayProgram() {
+    }
+
+    /**
+     * Creates a modifiable copy of the given program.
+     *
+     * @param program the program to copy.
+     * @return the copy of the program.
+     */
+    public static ArrayProgram copyOf(Program program) {
+        ArrayProgram copy = new ArrayProgram();
+        copy.labels.putAll(program.getLabels());
+        if (program instanceof ArrayProgram array) {
+            copy.append(array, 0);
+            return copy;
+        }
+        for (int i = 0; i < program.size(); ++i) {
+            copy.add(program.getLine(i), program.getLineNumber(i));
+        }
+        return copy;
+    }
+
+    /**
+     * Links lexed chunks of text into a new program in order, rebasing the labels and line numbers of
+     * each chunk onto its position within the program.
+     *
+     * @param chunks the lexed chunks of the program text in order.
+     * @return the linked program.
+     * @throws ParseException if any chunk contained an error or a label was declared twice.
+     */
+    public static ArrayProgram link(List<LexedChunk> chunks) throws ParseException {
+        ArrayProgram program = new ArrayProgram();
+        int offset = 0;
+        for (LexedChunk chunk : chunks) {
+            offset += chunk.link(program, offset);
+        }
+        return program;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Line getLine(int index) {
+        int opcode = getOpcode(index);
+        if (opcode == NO_OPCODE)
+            return null;
+        return new Line(InstructionDispatcher.getInstruction(opcode),
+                Arrays.copyOfRange(operandTargets, operandStarts[index], operandStarts[index + 1]));
+    }
+
+    @Override
+    public int getLineNumber(int index) {
+        checkIndex(index);
+        return lineNumbers[index];
+    }
+
+    /**
+     * Gets the labels of the program. The mapping may be modified to declare labels.
+     *
+     * @return the modifiable mapping of label text to line numbers.
+     */
+    @Override
+    public Map<String, Integer> getLabels() {
+        return labels;
+    }
+
+    /**
+     * Gets the opcode of the instruction overload a line of code is bound to.
+     *
+     * @param index the index of the line of code.
+     * @return the opcode of the line, or {@link ArrayProgram#NO_OPCODE} if the line has no effect.
+     * @see InstructionDispatcher#getInstruction(int)
+     */
+    public int getOpcode(int index) {
+        checkIndex(index);
+        return opcodes[index];
+    }
+
+    /**
+     * Gets the specialized variant of its instruction which a line of code was bound to when it was
+     * added.
+     *
+     * @param index the index of the line of code.
+     * @return the variant, or null if the line must be executed through
+     *         {@link InstructionDispatcher#execute(ArrayProgram, int)}.
+     */
+    public IInstructionVariant getVariant(int index) {
+        checkIndex(index);
+        return variants[index];
+    }
+
+    /**
+     * Gets the number of operands of a line of code.
+     *
+     * @param index the index of the line of code.
+     * @return the number of operands of the line.
+     */
+    public int getOperandCount(int index) {
+        checkIndex(index);
+        return operandStarts[index + 1] - operandStarts[index];
+    }
+
+    /**
+     * Gets the index of the first operand of a line of code within the operand arrays.
+     *
+     * @param index the index of the line of code.
+     * @return the index of the line's first operand in {@link ArrayProgram#getOperandTargets()}.
+     */
+    public int getOperandStart(int index) {
+        checkIndex(index);
+        return operandStarts[index];
+    }
+
+    /**
+     * Gets the target objects of the operands of every line of code, in order. The operands of a line
+     * start at {@link ArrayProgram#getOperandStart(int)}.
+     *
+     * @return the operand targets. The array must not be modified.
+     */
+    public IAbstractTarget[] getOperandTargets() {
+        return operandTargets;
+    }
+
+    /**
+     * Determines if an operand of a line of code is an immediate.
+     *
+     * @param index   the index of the line of code.
+     * @param operand the index of the operand within the line.
+     * @return true if the operand is an immediate, false if it is a register.
+     */
+    public boolean isImmediate(int index, int operand) {
+        return operandKinds[operandStarts[index] + operand] == IMMEDIATE;
+    }
+
+    /**
+     * Gets the value of an operand of a line of code.
+     *
+     * @param index   the index of the line of code.
+     * @param operand the index of the operand within the line.
+     * @return the register number of a register operand or the value of an immediate operand.
+     */
+    public long getOperand(int index, int operand) {
+        return operandValues[operandStarts[index] + operand];
+    }
+
+    /**
+     * Appends a line of code to the program.
+     *
+     * @param line       the line of code, or null for a line with no effect.
+     * @param lineNumber the line number of the statement the line was lexed from.
+     * @throws IllegalArgumentException if the line has an argument which is neither a register nor
+     *                                  an immediate.
+     */
+    public void add(Line line, int lineNumber) {
+        IAbstractTarget[] arguments = line == null ? new IAbstractTarget[0] : line.getArguments();
+        ensureCapacity(size + 1, operandStarts[size] + arguments.length);
+        int operand = operandStarts[size];
+        for (IAbstractTarget argument : arguments) {
+            if (argument instanceof ImmediateInput immediate) {
+                operandKinds[operand] = IMMEDIATE;
+                operandValues[operand] = immediate.getLong();
+                operandTargets[operand] = ImmediateInput.valueOf(operandValues[operand]);
+            } else if (argument instanceof RegisterInputOutput register) {
+                operandKinds[operand] = REGISTER;
+                operandValues[operand] = register.getRegisterNumber();
+                operandTargets[operand] = register;
+            } else {
+                throw new IllegalArgumentException(
+                        "Cannot store argument of type " + argument.getClass().getSimpleName());
+            }
+            ++operand;
+        }
+        bind(line == null ? null : line.getDispatchInstruction(), lineNumber, operand);
+    }
+
+    /**
+     * Appends a line of code bound to an instruction overload from the values of its operands, without
+     * creating a {@link Line}. The operands must be of the types the overload accepts.
+     *
+     * @param dispatch   the overload the line is bound to.
+     * @param immediates the mask of the operands which are immediates, bit i being operand i.
+     * @param values     the register number of each register operand and the value of each
+     *                   immediate operand.
+     * @param arity      the number of operands.
+     * @param lineNumber the line number of the statement the line was lexed from.
+     */
+    void add(DispatchInstruction dispatch, int immediates, long[] values, int arity, int lineNumber) {
+        ensureCapacity(size + 1, operandStarts[size] + arity);
+        int operand = operandStarts[size];
+        for (int i = 0; i < arity; ++i, ++operand) {
+            operandValues[operand] = values[i];
+            if ((immediates & (1 << i)) != 0) {
+                operandKinds[operand] = IMMEDIATE;
+                operandTargets[operand] = ImmediateInput.valueOf(values[i]);
+            } else {
+                operandKinds[operand] = REGISTER;
+                operandTargets[operand] = RegisterInputOutput.of((int) values[i]);
+            }
+        }
+        bind(dispatch, lineNumber, operand);
+    }
+
+    /**
+     * Completes the line being appended once its operands are stored, binding it to its variant.
+     *
+     * @param dispatch   the overload the line is bound to, or null for a line with no effect.
+     * @param lineNumber the line number of the statement the line was lexed from.
+     * @param operandEnd the index after the line's last operand.
+     */
+    private void bind(DispatchInstruction dispatch, int lineNumber, int operandEnd) {
+        opcodes[size] = dispatch == null ? NO_OPCODE : dispatch.getOpcode();
+        lineNumbers[size] = lineNumber;
+        operandStarts[++size] = operandEnd;
+        // Bound once the line is complete, since the variant reads its operands
+        variants[size - 1] = dispatch == null ? null : InstructionDispatcher.getVariant(this, size - 1);
+    }
+
+    /**
+     * Appends the lines and labels of another program to this program. Line numbers and labels are
+     * kept as they are in the other program.
+     *
+     * @param program the program to append.
+     * @throws ParseException if one of the labels has already been declared.
+     */
+    public void addAll(Program program) throws ParseException {
+        for (Map.Entry<String, Integer> label : program.getLabels().entrySet()) {
+            Lexer.addLabel(labels, label.getKey(), label.getValue());
+        }
+        if (program instanceof ArrayProgram array) {
+            append(array, 0);
+            return;
+        }
+        for (int i = 0; i < program.size(); ++i) {
+            add(program.getLine(i), program.getLineNumber(i));
+        }
+    }
+
+    /**
+     * Appends the lines of code of another program without decoding them, offsetting their line
+     * numbers. Labels are not copied.
+     *
+     * @param program    the program whose lines to append.
+     * @param lineOffset the amount to add to each line number.
+     */
+    void append(ArrayProgram program, int lineOffset) {
+        int operands = program.operandStarts[program.size];
+        ensureCapacity(size + program.size, operandStarts[size] + operands);
+        int operandOffset = operandStarts[size];
+        System.arraycopy(program.opcodes, 0, opcodes, size, program.size);
+        System.arraycopy(program.variants, 0, variants, size, program.size);
+        for (int i = 0; i < program.size; ++i) {
+            lineNumbers[size + i] = program.lineNumbers[i] + lineOffset;
+            operandStarts[size + i + 1] = program.operandStarts[i + 1] + operandOffset;
+        }
+        System.arraycopy(program.operandKinds, 0, operandKinds, operandOffset, operands);
+        System.arraycopy(program.operandValues, 0, operandValues, operandOffset, operands);
+        System.arraycopy(program.operandTargets, 0, operandTargets, operandOffset, operands);
+        size += program.size;
+    }
+
+    /**
+     * Removes all lines and labels from the program.
+     */
+    public void clear() {
+        Arrays.fill(variants, 0, size, null);
+        Arrays.fill(operandTargets, 0, operandStarts[size], null);
+        size = 0;
+        labels.clear();
+    }
+
+    private void ensureCapacity(int lines, int operands) {
+        if (lines > opcodes.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, Math.max(lines, opcodes.length * 2));
+            opcodes = Arrays.copyOf(opcodes, capacity);
+            lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+            variants = Arrays.copyOf(variants, capacity);
+            operandStarts = Arrays.copyOf(operandStarts, capacity + 1);
+        }
+        if (operands > operandKinds.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, Math.max(operands, operandKinds.length * 2));
+            operandKinds = Arrays.copyOf(operandKinds, capacity);
+            operandValues = Arrays.copyOf(operandValues, capacity);
+            operandTargets = Arrays.copyOf(operandTargets, capacity);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Line " + index + " out of bounds for program of " + size + " lines");
+        }
+    }
+
+}
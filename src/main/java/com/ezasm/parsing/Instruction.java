@@ -1,11 +1,14 @@
 package com.ezasm.parsing;
 
+import com.ezasm.instructions.DispatchInstruction;
+
 import java.lang.reflect.Method;
 
 /**
- * Represents an instruction in the assembly language: a name and a function to invoke.
+ * Represents an instruction in the assembly language: a name and the instruction overload to
+ * dispatch.
  */
-public record Instruction(String text, Method target) {
+public record Instruction(String text, DispatchInstruction dispatch) {
 
     /**
      * Gets the instruction name String.
@@ -18,12 +21,12 @@ public record Instruction(String text, Method target) {
     }
 
     /**
-     * Gets the target function to invoke.
+     * Gets the target function to invoke. The method is looked up through reflection when this is
+     * called; neither parsing nor execution needs it.
      *
      * @return the target function to invoke.
      */
-    @Override
     public Method target() {
-        return target;
+        return dispatch.getInvocationTarget();
     }
 }
@@ -0,0 +1,147 @@
+package com.ezasm.parsing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of lexing a contiguous range of program text independently of the rest of the
+ * program. Statements are numbered locally from zero and labels are collected into a local table,
+ * so a chunk can be lexed on any thread and later linked into the program at its final offset.
+ * Lexed lines are stored compactly as soon as they are parsed.
+ */
+public class LexedChunk {
+
+    private final ArrayProgram lines = new ArrayProgram();
+    private final List<String> labels = new ArrayList<>();
+    private final List<Integer> labelNumbers = new ArrayList<>();
+    private int statements;
+    private String errorStatement;
+    private int errorNumber = -1;
+
+    private LexedChunk() {
+    }
+
+    /**
+     * Lexes the statements within the given range of text. Statements are separated by line breaks
+     * or semicolons; the range is expected to begin at the start of a statement. Lexing stops at the
+     * first statement which cannot be parsed, which is reported when the chunk is linked.
+     *
+     * @param text  the program text.
+     * @param start the index of the first character of the range.
+     * @param end   the index after the last character of the range.
+     * @return the lexed chunk.
+     */
+    public static LexedChunk lex(CharSequence text, int start, int end) {
+        LexedChunk chunk = new LexedChunk();
+        int statementStart = start;
+        for (int i = start; i <= end; ++i) {
+            if (i == end || Lexer.isStatementBreak(text.charAt(i))) {
+                if (i > statementStart && !chunk.add(text.subSequence(statementStart, i).toString())) {
+                    break;
+                }
+                statementStart = i + 1;
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Lexes a single raw statement and records its result under the next local statement number.
+     *
+     * @param statement the raw text of the statement.
+     * @return true if lexing may continue, false if the statement could not be parsed.
+     */
+    private boolean add(String statement) {
+        int number = statements++;
+        String line = Lexer.normalize(statement);
+        if (line.length() == 0 || Lexer.isComment(line))
+            return true;
+        if (Lexer.isLabel(line)) {
+            labels.add(line);
+            labelNumbers.add(number);
+            return true;
+        }
+        try {
+            lines.add(Lexer.parseStatement(line, number), number);
+            return true;
+        } catch (ParseException e) {
+            errorStatement = statement;
+            errorNumber = number;
+            return false;
+        }
+    }
+
+    /**
+     * Gets the number of statements within the chunk, including empty statements, comments and labels.
+     *
+     * @return the number of statements within the chunk.
+     */
+    public int getStatementCount() {
+        return statements;
+    }
+
+    /**
+     * Gets the number of valid lines of code within the chunk.
+     *
+     * @return the number of valid lines of code within the chunk.
+     */
+    public int getLineCount() {
+        return lines.size();
+    }
+
+    /**
+     * Gets the local line number of the statement a line of code was lexed from.
+     *
+     * @param index the index of the line of code within the chunk.
+     * @return the line number of the statement relative to the start of the chunk.
+     */
+    public int getLineNumber(int index) {
+        return lines.getLineNumber(index);
+    }
+
+    /**
+     * Links the chunk into a program: rebases the local label table onto the given offset, adds the
+     * labels to the program's labels in order and appends the lexed lines. Labels and errors are
+     * reported exactly as if the chunk's statements had been parsed in sequence at that offset.
+     *
+     * @param labels the mapping of label text to line numbers of the program.
+     * @param offset the line number of the first statement of this chunk within the program.
+     * @param out    the list of lines of the program to append to.
+     * @return the number of statements within the chunk.
+     * @throws ParseException if a statement could not be parsed or a label was declared twice.
+     */
+    public int link(Map<String, Integer> labels, int offset, List<Line> out) throws ParseException {
+        linkLabels(labels, offset);
+        out.addAll(lines.getLines());
+        return statements;
+    }
+
+    /**
+     * Links the chunk into a program as {@link LexedChunk#link(Map, int, List)} does, appending the
+     * lines without decoding them and rebasing their line numbers onto the given offset.
+     *
+     * @param program the program to link into.
+     * @param offset  the line number of the first statement of this chunk within the program.
+     * @return the number of statements within the chunk.
+     * @throws ParseException if a statement could not be parsed or a label was declared twice.
+     */
+    int link(ArrayProgram program, int offset) throws ParseException {
+        linkLabels(program.getLabels(), offset);
+        program.append(lines, offset);
+        return statements;
+    }
+
+    private void linkLabels(Map<String, Integer> labels, int offset) throws ParseException {
+        for (int i = 0; i < this.labels.size(); ++i) {
+            Lexer.addLabel(labels, this.labels.get(i), offset + labelNumbers.get(i));
+        }
+        if (errorStatement != null) {
+            // Parse the statement again at its final position for an accurate message
+            Lexer.parseLine(errorStatement, labels, offset + errorNumber);
+            throw new ParseException(String.format("Error parsing statement '%s' on line %d", errorStatement.strip(),
+                    offset + errorNumber + 1));
+        }
+    }
+
+}
@@ -2,17 +2,56 @@ package com.ezasm.parsing;
 
 import com.ezasm.simulation.Registers;
 import com.ezasm.instructions.InstructionDispatcher;
+import com.ezasm.instructions.exception.InstructionLoadException;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.ObjIntConsumer;
+import java.util.regex.Pattern;
 
 /**
  * Static context functions regarding lexing and tokenizing Strings.
  */
 public class Lexer {
 
+    /**
+     * The characters which separate tokens within a statement.
+     */
+    private static final Pattern SEPARATORS = Pattern.compile("[ \t,;]+");
+
+    /**
+     * The length of text in characters above which lexing is split across the fork-join pool.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 20;
+
+    /**
+     * The minimum length of text in characters handed to a single parallel lexing task.
+     */
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    /**
+     * The number of chunks to create per thread so that uneven chunks still balance across the pool.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * The size in characters of the buffer used when streaming text from a reader.
+     */
+    private static final int READ_BUFFER_SIZE = 8192;
+
     private static boolean isAlNum(char c) {
         return isNumeric(c) || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c == '_') || (c == '-');
     }
@@ -29,17 +68,6 @@ public class Lexer {
         return c >= '0' && c <= '9';
     }
 
-    private static boolean isNumeric(String text) {
-        if (text.startsWith("-")) {
-            text = text.substring(1);
-        }
-        for (int i = 0; i < text.length(); ++i) {
-            if (!isNumeric(text.charAt(i)))
-                return false;
-        }
-        return true;
-    }
-
     /**
      * Determines if the line is a comment or not
      *
@@ -75,9 +103,7 @@ public class Lexer {
      * @return true if the given token is a valid register, false otherwise.
      */
     public static boolean isRegister(String token) {
-        if (token.length() < 1)
-            return false;
-        return token.startsWith("$") && token.length() > 1 && Registers.isRegister(token.substring(1));
+        return Registers.parseRegisterToken(token) >= 0;
     }
 
     /**
@@ -96,32 +122,78 @@ public class Lexer {
     }
 
     /**
-     * Determines if the given token is an immediate or not.
+     * Determines if the given token is an immediate or not. Decimal, hexadecimal (<code>0x</code>),
+     * binary (<code>0b</code>) and character (<code>'c'</code>) literals are immediates.
      *
      * @param token the token String in question.
      * @return true if the given token is a valid immediate, false otherwise.
      */
     public static boolean isImmediate(String token) {
-        if (token.length() < 1)
-            return false;
-        if (!isNumeric(token))
-            return false;
-        try {
-            Long.parseLong(token);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+        return Literals.isLiteral(token);
     }
 
     /**
      * Determines if a given token is a valid instruction or not.
      *
      * @param token the token String in question.
-     * @return true if the token is a registered instruction, false otherwise.
+     * @return true if the token is a registered instruction, false otherwise, including if its
+     *         instruction could not be loaded.
      */
     public static boolean isInstruction(String token) {
-        return InstructionDispatcher.getInstructions().containsKey(token);
+        try {
+            return InstructionDispatcher.findInstructions(token) != null;
+        } catch (InstructionLoadException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Collapses separators (whitespace, commas and semicolons) into single spaces and trims the
+     * statement.
+     *
+     * @param line the raw text of the statement.
+     * @return the normalized statement.
+     */
+    static String normalize(String line) {
+        return SEPARATORS.matcher(line).replaceAll(" ").trim();
+    }
+
+    /**
+     * Adds a label to the mapping of labels. Labels may only be declared once.
+     *
+     * @param labels the mapping of label text to line numbers.
+     * @param label  the label text.
+     * @param number the line number of the label.
+     * @throws ParseException if the label has already been declared.
+     */
+    static void addLabel(Map<String, Integer> labels, String label, int number) throws ParseException {
+        if (labels.putIfAbsent(label, number) != null) {
+            throw new ParseException(String.format("Duplicate label '%s' on line %d", label, number + 1));
+        }
+    }
+
+    /**
+     * Parses a normalized statement which is known not to be empty, a comment, or a label.
+     *
+     * @param line   the normalized statement.
+     * @param number the line number of this line.
+     * @return the line corresponding to the text.
+     * @throws ParseException if the line could not be properly parsed.
+     */
+    static Line parseStatement(String line, int number) throws ParseException {
+        String[] tokens = line.split(" ");
+        if (tokens.length < 2) {
+            // ERROR too few tokens to be a line
+            throw new ParseException(String
+                    .format("Too few tokens found on line %d: '%s' is likely an incomplete statement", number, line));
+        }
+
+        String[] args = Arrays.copyOfRange(tokens, 1, tokens.length);
+        try {
+            return new Line(tokens[0], args);
+        } catch (ParseException e) {
+            throw new ParseException(String.format("%s on line %d", e.getMessage(), number + 1));
+        }
     }
 
     /**
@@ -133,72 +205,169 @@ public class Lexer {
      * @param number the line number of this line.
      * @return null if the line was empty, a comment, or a label; otherwise returns the line
      *         corresponding to the text.
-     * @throws ParseException if the line could not be properly parsed.
+     * @throws ParseException if the line could not be properly parsed or declares a duplicate label.
      */
     public static Line parseLine(String line, Map<String, Integer> labels, int number) throws ParseException {
-        line = line.replaceAll("[\s\t,;]+", " ").trim();
+        line = normalize(line);
         if (line.length() == 0)
             return null;
         if (Lexer.isComment(line))
             return null;
         if (Lexer.isLabel(line)) {
-            labels.putIfAbsent(line, number);
-            return null;
-        }
-        String[] tokens = line.split("[ ,]");
-        if (tokens.length == 0) {
-            // Empty line
+            addLabel(labels, line, number);
             return null;
-        } else if (tokens.length < 2) {
-            // ERROR too few tokens to be a line
-            throw new ParseException(String
-                    .format("Too few tokens found on line %d: '%s' is likely an incomplete statement", number, line));
-        }
-
-        String[] args = Arrays.copyOfRange(tokens, 1, tokens.length);
-        try {
-            return new Line(tokens[0], args);
-        } catch (ParseException e) {
-            throw new ParseException(String.format("%s on line %d", e.getMessage(), number + 1));
         }
+        return parseStatement(line, number);
     }
 
     /**
      * Parses a String containing multiple lines. Meant for use within a simulation of the programming
-     * language.
+     * language. Large programs are split into chunks at statement boundaries which are lexed in
+     * parallel on the common fork-join pool; the result is identical to lexing the text sequentially.
      *
      * @param lines  the text containing the lines to parse.
      * @param labels the mapping of label text to line numbers.
      * @return the list of valid lines of code found.
-     * @throws ParseException if any line could not be properly parsed.
+     * @throws ParseException if any line could not be properly parsed or a label is declared twice.
      */
     public static List<Line> parseLines(String lines, Map<String, Integer> labels) throws ParseException {
-        List<String> linesRead = new ArrayList<>();
         List<Line> linesLexed = new ArrayList<>();
-        StringBuilder sb = new StringBuilder();
+        int offset = 0;
+        for (LexedChunk chunk : lexChunks(lines)) {
+            offset += chunk.link(labels, offset, linesLexed);
+        }
+        return linesLexed;
+    }
 
-        lines = lines + "\n";
+    /**
+     * Parses a String containing multiple lines into a self-contained program, recording the line
+     * number of the statement each line of code was lexed from.
+     *
+     * @param text the text containing the lines to parse.
+     * @return the lexed program.
+     * @throws ParseException if any line could not be properly parsed or a label is declared twice.
+     */
+    public static ArrayProgram parseProgram(String text) throws ParseException {
+        return ArrayProgram.link(lexChunks(text));
+    }
 
-        // individually read lines treating semicolons as line breaks
-        for (int i = 0; i < lines.length(); ++i) {
-            char c = lines.charAt(i);
-            if (c == '\n' || c == ';') {
-                if (sb.length() > 0) {
-                    linesRead.add(sb.toString());
-                    sb.delete(0, sb.length());
+    /**
+     * Parses a stream of text containing multiple lines, passing each valid line of code to the sink
+     * as soon as it has been lexed. The text is read through a single reusable buffer so that only
+     * the current statement is held in memory besides the lines themselves.
+     *
+     * @param reader the reader to read the text from.
+     * @param labels the mapping of label text to line numbers.
+     * @param sink   the consumer to receive each valid line of code in order along with the line
+     *               number of the statement it was lexed from.
+     * @throws ParseException if any line could not be properly parsed or a label is declared twice.
+     * @throws IOException    if an error occurred reading from the reader.
+     */
+    public static void parseLines(Reader reader, Map<String, Integer> labels, ObjIntConsumer<Line> sink)
+            throws ParseException, IOException {
+        CharBuffer buffer = CharBuffer.allocate(READ_BUFFER_SIZE);
+        StringBuilder statement = new StringBuilder();
+        int number = 0;
+        while (reader.read(buffer) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                char c = buffer.get();
+                if (!isStatementBreak(c)) {
+                    statement.append(c);
+                } else if (statement.length() > 0) {
+                    emit(parseLine(statement.toString(), labels, number), number, sink);
+                    statement.setLength(0);
+                    ++number;
                 }
-            } else {
-                sb.append(c);
             }
+            buffer.clear();
+        }
+        if (statement.length() > 0) {
+            emit(parseLine(statement.toString(), labels, number), number, sink);
+        }
+    }
+
+    private static void emit(Line line, int number, ObjIntConsumer<Line> sink) {
+        if (line != null)
+            sink.accept(line, number);
+    }
+
+    /**
+     * Parses a stream of text containing multiple lines.
+     *
+     * @param reader the reader to read the text from.
+     * @param labels the mapping of label text to line numbers.
+     * @return the list of valid lines of code found.
+     * @throws ParseException if any line could not be properly parsed or a label is declared twice.
+     * @throws IOException    if an error occurred reading from the reader.
+     */
+    public static List<Line> parseLines(Reader reader, Map<String, Integer> labels)
+            throws ParseException, IOException {
+        List<Line> linesLexed = new ArrayList<>();
+        parseLines(reader, labels, (line, number) -> linesLexed.add(line));
+        return linesLexed;
+    }
+
+    /**
+     * Parses the file at the given path, streaming its content from a file channel rather than reading
+     * the whole file into memory first.
+     *
+     * @param path   the path of the file to parse.
+     * @param labels the mapping of label text to line numbers.
+     * @param sink   the consumer to receive each valid line of code in order along with the line
+     *               number of the statement it was lexed from.
+     * @throws ParseException if any line could not be properly parsed or a label is declared twice.
+     * @throws IOException    if the file could not be opened or read.
+     */
+    public static void parseFile(Path path, Map<String, Integer> labels, ObjIntConsumer<Line> sink)
+            throws ParseException, IOException {
+        try (ReadableByteChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+                Reader reader = Channels.newReader(channel, Charset.defaultCharset().newDecoder(), -1)) {
+            parseLines(reader, labels, sink);
+        }
+    }
+
+    /**
+     * Splits the text into chunks at statement boundaries and lexes them. Chunks are lexed on the
+     * common fork-join pool when the text is large enough to benefit from it.
+     *
+     * @param text the text containing the lines to parse.
+     * @return the lexed chunks in the order they appear in the text.
+     */
+    private static List<LexedChunk> lexChunks(String text) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        if (text.length() < PARALLEL_THRESHOLD || parallelism < 2) {
+            return List.of(LexedChunk.lex(text, 0, text.length()));
         }
 
-        for (int i = 0; i < linesRead.size(); ++i) {
-            Line lexed = parseLine(linesRead.get(i), labels, i);
-            if (lexed != null) {
-                linesLexed.add(lexed);
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, text.length() / (parallelism * CHUNKS_PER_THREAD));
+        List<ForkJoinTask<LexedChunk>> tasks = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(start + chunkSize, text.length());
+            while (end < text.length() && !isStatementBreak(text.charAt(end - 1))) {
+                ++end;
             }
+            final int chunkStart = start, chunkEnd = end;
+            tasks.add(ForkJoinPool.commonPool().submit(() -> LexedChunk.lex(text, chunkStart, chunkEnd)));
+            start = end;
         }
-        return linesLexed;
+
+        List<LexedChunk> chunks = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<LexedChunk> task : tasks) {
+            chunks.add(task.join());
+        }
+        return chunks;
+    }
+
+    /**
+     * Determines if the given character ends a statement.
+     *
+     * @param c the character in question.
+     * @return true if the character is a line break or a semicolon, false otherwise.
+     */
+    static boolean isStatementBreak(char c) {
+        return c == '\n' || c == ';';
     }
 
 }
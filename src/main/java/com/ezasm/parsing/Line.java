@@ -1,18 +1,22 @@
 package com.ezasm.parsing;
 
-import com.ezasm.Conversion;
+import com.ezasm.instructions.DispatchInstruction;
 import com.ezasm.instructions.InstructionDispatcher;
+import com.ezasm.instructions.exception.InstructionLoadException;
 import com.ezasm.instructions.targets.IAbstractTarget;
 import com.ezasm.instructions.targets.input.ImmediateInput;
 import com.ezasm.instructions.targets.inputoutput.RegisterInputOutput;
+import com.ezasm.simulation.Registers;
+
+import java.util.StringJoiner;
 
 /**
  * The representation of a line of code. Consists of an Instruction object and the arguments
- * thereof.
+ * thereof. Lines are bound to the exact overload of their instruction when they are created.
  */
 public class Line {
 
-    private final Instruction instruction;
+    private final DispatchInstruction dispatch;
     private final IAbstractTarget[] arguments;
 
     /**
@@ -24,26 +28,17 @@ public class Line {
      *                        corresponding types.
      */
     public Line(String instruction, String[] arguments) throws ParseException {
-        if (!Lexer.isInstruction(instruction)) {
-            throw new ParseException("Error parsing instruction '" + instruction + "'");
-        }
-
-        this.instruction = new Instruction(instruction,
-                InstructionDispatcher.getInstructions().get(instruction).getInvocationTarget());
+        DispatchInstruction[] candidates = resolveOverloads(instruction, arguments.length);
         this.arguments = new IAbstractTarget[arguments.length];
 
-        if (this.instruction.target().getParameterCount() != arguments.length) {
-            throw new ParseException(
-                    String.format("Incorrect number of arguments for instruction '%s': expected %d but got %d",
-                            instruction, this.instruction.target().getParameterCount(), arguments.length));
-        }
-
         // Determine the type of each argument and create the token respectively
         for (int i = 0; i < arguments.length; ++i) {
-            if (Lexer.isImmediate(arguments[i])) {
-                this.arguments[i] = new ImmediateInput(Conversion.longToBytes(Long.parseLong(arguments[i])));
-            } else if (Lexer.isRegister(arguments[i])) {
-                this.arguments[i] = new RegisterInputOutput(arguments[i]);
+            ImmediateInput immediate = Literals.parseImmediate(arguments[i]);
+            int register;
+            if (immediate != null) {
+                this.arguments[i] = immediate;
+            } else if ((register = Registers.parseRegisterToken(arguments[i])) >= 0) {
+                this.arguments[i] = RegisterInputOutput.of(register);
                 // Code for parsing a dereference
                 // } else if(Lexer.isDereference(arguments[i])) {
                 // this.arguments[i] = new DereferenceToken(arguments[i]);
@@ -52,13 +47,141 @@ public class Line {
                 throw new ParseException("Error parsing token '" + arguments[i] + "'");
             }
 
-            // Ensure that the given token is of the required type
-            if (!this.instruction.target().getParameterTypes()[i].isInstance(this.arguments[i])) {
-                throw new ParseException("Expected token of type '"
-                        + this.instruction.target().getParameterTypes()[i].getSimpleName().replace("IAbstract", "")
-                        + "' but got '" + this.arguments[i].getClass().getSimpleName() + "' instead");
+            if (candidates.length == 1) {
+                validateArgument(candidates[0], i, this.arguments[i]);
+            }
+        }
+        this.dispatch = selectOverload(candidates, this.arguments);
+    }
+
+    /**
+     * Creates and validates a line based on already decoded arguments.
+     *
+     * @param instruction the String representing the instruction.
+     * @param arguments   the decoded arguments.
+     * @throws ParseException if the instruction does not exist or does not accept the arguments.
+     */
+    public Line(String instruction, IAbstractTarget[] arguments) throws ParseException {
+        this.dispatch = selectOverload(resolveOverloads(instruction, arguments.length), arguments);
+        this.arguments = arguments;
+    }
+
+    /**
+     * Creates a line from an instruction and arguments which have already been validated together.
+     *
+     * @param dispatch  the overload of the instruction.
+     * @param arguments the arguments of the instruction.
+     */
+    Line(DispatchInstruction dispatch, IAbstractTarget[] arguments) {
+        this.dispatch = dispatch;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Looks up the overloads of the registered instruction of the given name which accept the number
+     * of arguments given.
+     *
+     * @param instruction the String representing the instruction.
+     * @param arity       the number of arguments given.
+     * @return the overloads taking that many arguments, of which there is at least one.
+     * @throws ParseException if the instruction does not exist or the number of arguments is wrong.
+     */
+    private static DispatchInstruction[] resolveOverloads(String instruction, int arity) throws ParseException {
+        DispatchInstruction[] overloads;
+        try {
+            overloads = InstructionDispatcher.findInstructions(instruction);
+        } catch (InstructionLoadException e) {
+            throw new ParseException("Error parsing instruction '" + instruction + "'. " + e.getMessage());
+        }
+        if (overloads == null) {
+            throw new ParseException("Error parsing instruction '" + instruction + "'");
+        }
+
+        int matching = 0;
+        for (DispatchInstruction overload : overloads) {
+            if (overload.getArity() == arity)
+                ++matching;
+        }
+        if (matching == overloads.length)
+            return overloads;
+        if (matching == 0) {
+            StringJoiner expected = new StringJoiner(" or ");
+            for (DispatchInstruction overload : overloads) {
+                expected.add(String.valueOf(overload.getArity()));
             }
+            throw new ParseException(
+                    String.format("Incorrect number of arguments for instruction '%s': expected %s but got %d",
+                            instruction, expected, arity));
+        }
 
+        DispatchInstruction[] candidates = new DispatchInstruction[matching];
+        int candidate = 0;
+        for (DispatchInstruction overload : overloads) {
+            if (overload.getArity() == arity)
+                candidates[candidate++] = overload;
+        }
+        return candidates;
+    }
+
+    /**
+     * Selects the most specific overload which accepts the given arguments, as Java does for method
+     * overloads. Of several accepting overloads none of which is more specific than the others, the
+     * one registered first is selected.
+     *
+     * @param candidates the overloads taking as many arguments as given, in registration order.
+     * @param arguments  the arguments.
+     * @return the overload to bind the line to.
+     * @throws ParseException if no overload accepts the arguments.
+     */
+    private static DispatchInstruction selectOverload(DispatchInstruction[] candidates, IAbstractTarget[] arguments)
+            throws ParseException {
+        DispatchInstruction selected = null;
+        for (DispatchInstruction candidate : candidates) {
+            if (candidate.accepts(arguments) && (selected == null || isMoreSpecific(candidate, selected)))
+                selected = candidate;
+        }
+        if (selected != null)
+            return selected;
+        for (int i = 0; i < arguments.length; ++i) {
+            validateArgument(candidates[0], i, arguments[i]);
+        }
+        throw new ParseException("No overload of instruction '" + candidates[0].getName() + "' accepts the arguments");
+    }
+
+    /**
+     * Determines if an overload is strictly more specific than another of the same arity, that is if
+     * each of its parameter types is assignable to the other's and they differ.
+     *
+     * @param overload the overload in question.
+     * @param other    the overload to compare against.
+     * @return true if the overload is more specific, false otherwise.
+     */
+    private static boolean isMoreSpecific(DispatchInstruction overload, DispatchInstruction other) {
+        Class<?>[] parameters = overload.getParameterTypes();
+        Class<?>[] otherParameters = other.getParameterTypes();
+        boolean differs = false;
+        for (int i = 0; i < parameters.length; ++i) {
+            if (!otherParameters[i].isAssignableFrom(parameters[i]))
+                return false;
+            differs |= parameters[i] != otherParameters[i];
+        }
+        return differs;
+    }
+
+    /**
+     * Ensures that the given argument is of the type required by the instruction.
+     *
+     * @param instruction the instruction overload.
+     * @param index       the index of the argument.
+     * @param argument    the argument.
+     * @throws ParseException if the argument is not of the required type.
+     */
+    private static void validateArgument(DispatchInstruction instruction, int index, IAbstractTarget argument)
+            throws ParseException {
+        Class<?> parameter = instruction.getParameterTypes()[index];
+        if (!parameter.isInstance(argument)) {
+            throw new ParseException("Expected token of type '" + parameter.getSimpleName().replace("IAbstract", "")
+                    + "' but got '" + argument.getClass().getSimpleName() + "' instead");
         }
     }
 
@@ -68,7 +191,16 @@ public class Line {
      * @return the instruction token.
      */
     public Instruction getInstruction() {
-        return instruction;
+        return dispatch.getInstruction();
+    }
+
+    /**
+     * Gets the overload of the instruction this line is bound to.
+     *
+     * @return the bound instruction overload.
+     */
+    public DispatchInstruction getDispatchInstruction() {
+        return dispatch;
     }
 
     /**
@@ -87,6 +219,6 @@ public class Line {
      */
     @Override
     public String toString() {
-        return instruction.text();
+        return dispatch.getName();
     }
 }
@@ -0,0 +1,176 @@
+package com.ezasm.parsing;
+
+import com.ezasm.instructions.targets.input.ImmediateInput;
+
+/**
+ * Static context functions for validating and converting literal tokens. A literal is validated and
+ * converted in a single pass without throwing exceptions on the failure path. Supported forms are
+ * decimal (<code>123</code>, <code>-123</code>), hexadecimal (<code>0x7F</code>), binary
+ * (<code>0b101</code>) and character (<code>'a'</code>, <code>'\n'</code>) literals.
+ */
+public class Literals {
+
+    private static int digitValue(char c, int radix) {
+        int value;
+        if (c >= '0' && c <= '9') {
+            value = c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            value = c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            value = c - 'A' + 10;
+        } else {
+            return -1;
+        }
+        return value < radix ? value : -1;
+    }
+
+    private static int escapeValue(char c) {
+        return switch (c) {
+        case 'n' -> '\n';
+        case 't' -> '\t';
+        case 'r' -> '\r';
+        case '0' -> '\0';
+        case '\\' -> '\\';
+        case '\'' -> '\'';
+        case '"' -> '"';
+        default -> -1;
+        };
+    }
+
+    /**
+     * Validates and converts a character literal such as <code>'a'</code> or <code>'\n'</code>.
+     *
+     * @param token  the token in question, starting with a single quote.
+     * @param result the single element array to store the value into, may be null.
+     * @return true if the token is a valid character literal, false otherwise.
+     */
+    private static boolean parseCharacter(CharSequence token, long[] result) {
+        int length = token.length();
+        int value;
+        if (length == 3 && token.charAt(1) != '\\' && token.charAt(1) != '\'') {
+            value = token.charAt(1);
+        } else if (length == 4 && token.charAt(1) == '\\') {
+            value = escapeValue(token.charAt(2));
+        } else {
+            return false;
+        }
+        if (value < 0 || token.charAt(length - 1) != '\'')
+            return false;
+        if (result != null)
+            result[0] = value;
+        return true;
+    }
+
+    /**
+     * Validates and converts a hexadecimal or binary literal. These literals may use all 64 bits, so
+     * <code>0xFFFFFFFFFFFFFFFF</code> is the same value as <code>-1</code>.
+     *
+     * @param token    the token in question.
+     * @param start    the index of the first digit.
+     * @param bits     the number of bits per digit (4 for hexadecimal and 1 for binary).
+     * @param negative whether the literal was preceded by a minus sign.
+     * @param result   the single element array to store the value into, may be null.
+     * @return true if the token is a valid literal which fits within 64 bits, false otherwise.
+     */
+    private static boolean parsePowerOfTwo(CharSequence token, int start, int bits, boolean negative,
+            long[] result) {
+        int length = token.length();
+        if (start >= length)
+            return false;
+        int radix = 1 << bits;
+        long value = 0;
+        for (int i = start; i < length; ++i) {
+            int digit = digitValue(token.charAt(i), radix);
+            if (digit < 0 || (value >>> (Long.SIZE - bits)) != 0)
+                return false;
+            value = (value << bits) | digit;
+        }
+        if (result != null)
+            result[0] = negative ? -value : value;
+        return true;
+    }
+
+    /**
+     * Validates and converts a decimal literal. Accumulates negatively so that
+     * <code>Long.MIN_VALUE</code> can be represented.
+     *
+     * @param token    the token in question.
+     * @param start    the index of the first digit.
+     * @param negative whether the literal was preceded by a minus sign.
+     * @param result   the single element array to store the value into, may be null.
+     * @return true if the token is a valid literal which fits within a long, false otherwise.
+     */
+    private static boolean parseDecimal(CharSequence token, int start, boolean negative, long[] result) {
+        int length = token.length();
+        if (start >= length)
+            return false;
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyMin = limit / 10;
+        long value = 0;
+        for (int i = start; i < length; ++i) {
+            int digit = digitValue(token.charAt(i), 10);
+            if (digit < 0 || value < multiplyMin)
+                return false;
+            value *= 10;
+            if (value < limit + digit)
+                return false;
+            value -= digit;
+        }
+        if (result != null)
+            result[0] = negative ? value : -value;
+        return true;
+    }
+
+    /**
+     * Validates a literal token and converts it to its value in a single pass. No exceptions are thrown
+     * or caught for invalid or overflowing literals.
+     *
+     * @param token  the token String in question.
+     * @param result the single element array to store the converted value into. May be null if only
+     *               validation is required.
+     * @return true if the token is a valid literal, false otherwise.
+     */
+    public static boolean parse(CharSequence token, long[] result) {
+        int length = token.length();
+        if (length < 1)
+            return false;
+        if (token.charAt(0) == '\'')
+            return parseCharacter(token, result);
+
+        boolean negative = token.charAt(0) == '-';
+        int start = negative ? 1 : 0;
+        if (length - start > 2 && token.charAt(start) == '0') {
+            char prefix = token.charAt(start + 1);
+            if (prefix == 'x' || prefix == 'X')
+                return parsePowerOfTwo(token, start + 2, 4, negative, result);
+            if (prefix == 'b' || prefix == 'B')
+                return parsePowerOfTwo(token, start + 2, 1, negative, result);
+        }
+        return parseDecimal(token, start, negative, result);
+    }
+
+    /**
+     * Determines if the given token is a valid literal or not.
+     *
+     * @param token the token String in question.
+     * @return true if the given token is a valid literal, false otherwise.
+     */
+    public static boolean isLiteral(CharSequence token) {
+        return parse(token, null);
+    }
+
+    /**
+     * Parses the given token into its interned immediate.
+     *
+     * @param token the token String to parse.
+     * @return the shared immediate for the value of the literal, or null if the token is not a valid
+     *         literal.
+     */
+    public static ImmediateInput parseImmediate(CharSequence token) {
+        long[] value = new long[1];
+        if (!parse(token, value))
+            return null;
+        return ImmediateInput.valueOf(value[0]);
+    }
+
+}
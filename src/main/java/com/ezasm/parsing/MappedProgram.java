@@ -0,0 +1,233 @@
+package com.ezasm.parsing;
+
+import com.ezasm.instructions.DispatchInstruction;
+import com.ezasm.instructions.InstructionDispatcher;
+import com.ezasm.instructions.targets.IAbstractTarget;
+import com.ezasm.instructions.targets.input.ImmediateInput;
+import com.ezasm.instructions.targets.inputoutput.RegisterInputOutput;
+import com.ezasm.simulation.Registers;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.ezasm.parsing.ProgramFile.*;
+
+/**
+ * A read-only program backed by a buffer in the precompiled program format, usually a memory-mapped
+ * file. Every record is validated when the program is opened, so a corrupt file is rejected before
+ * it runs. Lines of code are decoded from their fixed size records each time they are requested;
+ * programs to be executed are copied once into the arrays of an {@link ArrayProgram} with
+ * {@link MappedProgram#decode()} instead, without decoding any line.
+ */
+class MappedProgram extends Program {
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final String[] opcodes;
+    private final int constantPool;
+    private final int lines;
+    private final int recordSize;
+    private final int lineNumbers;
+    private final Map<String, Integer> labels;
+
+    /**
+     * Decodes the header, opcode table and labels of a precompiled program.
+     *
+     * @param buffer the buffer containing the precompiled program.
+     * @throws IOException if the buffer is not a valid precompiled program for the registered
+     *                     instruction set.
+     */
+    MappedProgram(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        try {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Not a precompiled EzASM program");
+            }
+            if (buffer.getLong(INSTRUCTION_SET_VERSION) != InstructionDispatcher.getInstructionSetVersion()) {
+                throw new IOException("Precompiled program was assembled for a different instruction set");
+            }
+            size = buffer.getInt(LINE_COUNT);
+            recordSize = ProgramFile.recordSize(buffer.getInt(MAX_ARITY));
+            constantPool = (int) buffer.getLong(CONSTANT_POOL);
+            lines = (int) buffer.getLong(LINES);
+            lineNumbers = (int) buffer.getLong(LINE_NUMBERS);
+
+            opcodes = new String[buffer.getInt(OPCODE_COUNT)];
+            ByteBuffer table = buffer.duplicate().position((int) buffer.getLong(OPCODE_TABLE));
+            for (int i = 0; i < opcodes.length; ++i) {
+                opcodes[i] = readString(table);
+                if (!Lexer.isInstruction(opcodes[i])) {
+                    throw new IOException("Unknown instruction '" + opcodes[i] + "' in precompiled program");
+                }
+            }
+
+            Map<String, Integer> labels = new LinkedHashMap<>();
+            table.position((int) buffer.getLong(LABEL_TABLE));
+            for (int i = buffer.getInt(LABEL_COUNT); i > 0; --i) {
+                int number = table.getInt();
+                labels.put(readString(table), number);
+            }
+            this.labels = Collections.unmodifiableMap(labels);
+
+            int constants = buffer.getInt(CONSTANT_COUNT);
+            if (size < 0 || recordSize > ProgramFile.recordSize(MAX_OPERANDS) || lines < 0 || lineNumbers < 0
+                    || (long) lines + (long) size * recordSize > buffer.limit()
+                    || (long) lineNumbers + 4L * size > buffer.limit()
+                    || (long) constantPool + 8L * constants > buffer.limit()) {
+                throw new IOException("Precompiled program is truncated or corrupt");
+            }
+            for (int i = 0; i < size; ++i) {
+                validateRecord(i, constants);
+            }
+        } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Precompiled program is truncated or corrupt", e);
+        }
+    }
+
+    /**
+     * Validates the record of a line of code: its opcode, its arity, its mask of immediates and each
+     * operand.
+     *
+     * @param index     the index of the line of code.
+     * @param constants the number of constants in the constant pool.
+     * @throws IOException if the record is corrupt.
+     */
+    private void validateRecord(int index, int constants) throws IOException {
+        int record = lines + index * recordSize;
+        int opcode = buffer.getShort(record) & 0xFFFF;
+        if (opcode == NO_OPCODE)
+            return;
+        int arity = buffer.get(record + 2) & 0xFF;
+        int immediates = buffer.get(record + 3) & 0xFF;
+        if (opcode >= opcodes.length || ProgramFile.recordSize(arity) > recordSize || immediates >>> arity != 0) {
+            throw new IOException("Corrupt line " + index + " in precompiled program");
+        }
+        for (int i = 0; i < arity; ++i) {
+            int operand = buffer.getInt(record + 4 + 4 * i);
+            int limit = (immediates & (1 << i)) != 0 ? constants : Registers.TOTAL_REGISTERS;
+            if (operand < 0 || operand >= limit) {
+                throw new IOException("Corrupt operand " + i + " of line " + index + " in precompiled program");
+            }
+        }
+    }
+
+    /**
+     * Copies every line of code into a program held in memory, so executing the program never reads a
+     * record. The operands of each record are stored as they are, without creating a {@link Line}; the
+     * overload of a line only depends on its instruction and which of its operands are immediates, so
+     * it is resolved once for each of those.
+     *
+     * @return the program.
+     * @throws IOException if a line does not match any overload of its instruction.
+     */
+    ArrayProgram decode() throws IOException {
+        ArrayProgram program = new ArrayProgram();
+        program.getLabels().putAll(labels);
+        Map<Integer, DispatchInstruction> overloads = new HashMap<>();
+        long[] values = new long[MAX_OPERANDS];
+        for (int i = 0; i < size; ++i) {
+            int record = lines + i * recordSize;
+            int opcode = buffer.getShort(record) & 0xFFFF;
+            if (opcode == NO_OPCODE) {
+                program.add(null, getLineNumber(i));
+                continue;
+            }
+            int arity = buffer.get(record + 2) & 0xFF;
+            int immediates = buffer.get(record + 3) & 0xFF;
+            DispatchInstruction dispatch = overloads.get(opcode << 16 | arity << 8 | immediates);
+            if (dispatch == null) {
+                try {
+                    dispatch = resolve(opcode, arity, immediates);
+                } catch (ParseException e) {
+                    throw new IOException("Corrupt line " + i + " in precompiled program: " + e.getMessage(), e);
+                }
+                overloads.put(opcode << 16 | arity << 8 | immediates, dispatch);
+            }
+            for (int j = 0; j < arity; ++j) {
+                int operand = buffer.getInt(record + 4 + 4 * j);
+                values[j] = (immediates & (1 << j)) != 0 ? buffer.getLong(constantPool + 8 * operand) : operand;
+            }
+            program.add(dispatch, immediates, values, arity, getLineNumber(i));
+        }
+        return program;
+    }
+
+    /**
+     * Resolves the overload of an instruction taking operands of the given kinds.
+     *
+     * @param opcode     the index of the instruction in the opcode table.
+     * @param arity      the number of operands.
+     * @param immediates the mask of the operands which are immediates.
+     * @return the overload.
+     * @throws ParseException if no overload of the instruction accepts the operands.
+     */
+    private DispatchInstruction resolve(int opcode, int arity, int immediates) throws ParseException {
+        IAbstractTarget[] arguments = new IAbstractTarget[arity];
+        for (int i = 0; i < arity; ++i) {
+            arguments[i] = (immediates & (1 << i)) != 0 ? ImmediateInput.valueOf(0) : RegisterInputOutput.of(0);
+        }
+        return new Line(opcodes[opcode], arguments).getDispatchInstruction();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Line getLine(int index) {
+        try {
+            return decodeLine(index);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Corrupt line " + index + " in precompiled program: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decodes the record of a line of code.
+     *
+     * @param index the index of the line of code.
+     * @return the line of code, or null if the line has no effect.
+     * @throws ParseException if the line does not match any overload of its instruction.
+     */
+    private Line decodeLine(int index) throws ParseException {
+        int record = lines + index * recordSize;
+        int opcode = buffer.getShort(record) & 0xFFFF;
+        if (opcode == NO_OPCODE)
+            return null;
+        int immediates = buffer.get(record + 3) & 0xFF;
+        IAbstractTarget[] arguments = new IAbstractTarget[buffer.get(record + 2) & 0xFF];
+        for (int i = 0; i < arguments.length; ++i) {
+            int operand = buffer.getInt(record + 4 + 4 * i);
+            if ((immediates & (1 << i)) != 0) {
+                arguments[i] = ImmediateInput.valueOf(buffer.getLong(constantPool + 8 * operand));
+            } else {
+                arguments[i] = RegisterInputOutput.of(operand);
+            }
+        }
+        return new Line(opcodes[opcode], arguments);
+    }
+
+    @Override
+    public int getLineNumber(int index) {
+        return buffer.getInt(lineNumbers + 4 * index);
+    }
+
+    @Override
+    public Map<String, Integer> getLabels() {
+        return labels;
+    }
+
+}
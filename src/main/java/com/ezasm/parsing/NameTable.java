@@ -0,0 +1,116 @@
+package com.ezasm.parsing;
+
+import java.util.Map;
+
+/**
+ * An immutable, case-insensitive table from names to non-negative numbers. The table is a perfect
+ * hash: a seed is searched for at construction so that every name lands in its own slot, so a lookup
+ * is one hash over the characters and at most one comparison. Lookups match a span of any
+ * {@link CharSequence} directly, so classifying a token allocates nothing. Case is folded for ASCII
+ * letters only.
+ * <p>
+ * The table is meant for small fixed sets of names such as registers and mnemonics; to stay
+ * collision free it is sized several times larger than the number of names.
+ */
+public class NameTable {
+
+    private static final int MAX_SEED_ATTEMPTS = 1 << 10;
+    private static final int NOT_FOUND = -1;
+
+    private final String[] keys;
+    private final int[] values;
+    private final int mask;
+    private final int seed;
+
+    /**
+     * Builds a table containing the given names.
+     *
+     * @param names the mapping of names to their non-negative numbers. Names which differ only in the
+     *              case of ASCII letters must not both be present.
+     * @throws IllegalArgumentException if a number is negative or two names are equal ignoring case.
+     */
+    public NameTable(Map<String, Integer> names) {
+        int capacity = Integer.highestOneBit(Math.max(4, names.size() * 2) - 1) << 1;
+        while (true) {
+            for (int seed = 1; seed <= MAX_SEED_ATTEMPTS; ++seed) {
+                String[] keys = new String[capacity];
+                int[] values = new int[capacity];
+                if (fill(names, keys, values, seed)) {
+                    this.keys = keys;
+                    this.values = values;
+                    this.mask = capacity - 1;
+                    this.seed = seed;
+                    return;
+                }
+            }
+            capacity <<= 1;
+        }
+    }
+
+    private static boolean fill(Map<String, Integer> names, String[] keys, int[] values, int seed) {
+        for (Map.Entry<String, Integer> name : names.entrySet()) {
+            String key = name.getKey();
+            if (name.getValue() < 0) {
+                throw new IllegalArgumentException("Negative number for name '" + key + "'");
+            }
+            int slot = hash(key, 0, key.length(), seed) & (keys.length - 1);
+            if (keys[slot] != null) {
+                if (keys[slot].length() == key.length() && regionMatches(keys[slot], key, 0, key.length())) {
+                    throw new IllegalArgumentException("Name '" + key + "' is present twice ignoring case");
+                }
+                return false;
+            }
+            keys[slot] = key;
+            values[slot] = name.getValue();
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of the name equal, ignoring case, to the given span of text.
+     *
+     * @param text  the text containing the name.
+     * @param start the index of the first character of the name.
+     * @param end   the index after the last character of the name.
+     * @return the number of the name, or -1 if the name is not in the table.
+     */
+    public int get(CharSequence text, int start, int end) {
+        int slot = hash(text, start, end, seed) & mask;
+        String key = keys[slot];
+        if (key == null || key.length() != end - start || !regionMatches(key, text, start, end))
+            return NOT_FOUND;
+        return values[slot];
+    }
+
+    /**
+     * Gets the number of the name equal, ignoring case, to the given text.
+     *
+     * @param text the name.
+     * @return the number of the name, or -1 if the name is not in the table.
+     */
+    public int get(CharSequence text) {
+        return get(text, 0, text.length());
+    }
+
+    private static int hash(CharSequence text, int start, int end, int seed) {
+        int hash = seed;
+        for (int i = start; i < end; ++i) {
+            hash = 31 * hash + fold(text.charAt(i));
+        }
+        hash *= 0x9E3779B1;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean regionMatches(String key, CharSequence text, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            if (fold(key.charAt(i - start)) != fold(text.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+}
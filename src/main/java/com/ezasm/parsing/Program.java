@@ -0,0 +1,73 @@
+package com.ezasm.parsing;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A fully lexed program: its lines of code, its labels, and a source map from each line of code to
+ * the line number of the statement it was lexed from. Implementations decide how the lines are
+ * stored; lines are only guaranteed to exist as {@link Line} objects once they are requested.
+ */
+public abstract class Program {
+
+    /**
+     * Gets the number of lines of code in the program.
+     *
+     * @return the number of lines of code in the program.
+     */
+    public abstract int size();
+
+    /**
+     * Gets a line of code of the program.
+     *
+     * @param index the index of the line of code.
+     * @return the line of code, or null if the line at that index has no effect.
+     */
+    public abstract Line getLine(int index);
+
+    /**
+     * Gets the line number of the statement a line of code was lexed from.
+     *
+     * @param index the index of the line of code.
+     * @return the line number of the statement it was lexed from.
+     */
+    public abstract int getLineNumber(int index);
+
+    /**
+     * Gets the labels of the program.
+     *
+     * @return the mapping of label text to line numbers.
+     */
+    public abstract Map<String, Integer> getLabels();
+
+    /**
+     * Gets a list view of the lines of code of the program. Lines are requested from the program as
+     * the list is read.
+     *
+     * @return the unmodifiable list of lines of code.
+     */
+    public List<Line> getLines() {
+        return new AbstractList<>() {
+            @Override
+            public Line get(int index) {
+                return getLine(index);
+            }
+
+            @Override
+            public int size() {
+                return Program.this.size();
+            }
+        };
+    }
+
+    /**
+     * Determines if the program has neither lines of code nor labels.
+     *
+     * @return true if the program is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size() == 0 && getLabels().isEmpty();
+    }
+
+}
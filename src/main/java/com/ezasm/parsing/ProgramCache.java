@@ -0,0 +1,343 @@
+package com.ezasm.parsing;
+
+import com.ezasm.instructions.InstructionDispatcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of lexed programs keyed by a SHA-256 hash of their source text and the version of the
+ * registered instruction set. Programs are kept in memory in least-recently-used order up to a
+ * maximum total number of lines, and can optionally be persisted to a cache directory so that they
+ * survive between runs. Files are read once and keyed by a hash of their bytes, so a cached file is
+ * never decoded or lexed, and a file which is not cached is lexed from the same bytes it is keyed by.
+ */
+public class ProgramCache {
+
+    /**
+     * The default maximum total number of lines of code kept in memory.
+     */
+    public static final int DEFAULT_MAX_LINES = 1 << 20;
+
+    /**
+     * The maximum total number of lines of code the shared cache keeps in memory unless it is replaced.
+     */
+    public static final int SHARED_MAX_LINES = 1 << 16;
+
+    // Created the first time it is needed, so processes which never parse a program hold no cache
+    private static volatile ProgramCache shared;
+
+    private final int maxLines;
+    private final Path directory;
+    private final LinkedHashMap<String, Program> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedLines;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructs a program cache.
+     *
+     * @param maxLines  the maximum total number of lines of code to keep in memory.
+     * @param directory the directory to persist programs to, or null to only cache in memory.
+     */
+    public ProgramCache(int maxLines, Path directory) {
+        this.maxLines = maxLines;
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the cache shared by all simulators.
+     *
+     * @return the shared program cache.
+     */
+    public static ProgramCache getShared() {
+        ProgramCache cache = shared;
+        if (cache == null) {
+            synchronized (ProgramCache.class) {
+                if (shared == null) {
+                    shared = new ProgramCache(SHARED_MAX_LINES, null);
+                }
+                cache = shared;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Replaces the cache shared by all simulators.
+     *
+     * @param cache the new shared program cache.
+     */
+    public static void setShared(ProgramCache cache) {
+        shared = cache;
+    }
+
+    /**
+     * Computes the cache key of the given source text for the currently registered instruction set.
+     *
+     * @param source the source text of the program.
+     * @return the hexadecimal SHA-256 hash identifying the program.
+     */
+    public static String key(String source) {
+        return key(source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Computes the cache key of the given bytes of a source file for the currently registered
+     * instruction set.
+     *
+     * @param bytes the bytes of the source file.
+     * @return the hexadecimal SHA-256 hash identifying the program.
+     */
+    private static String key(byte[] bytes) {
+        return HexFormat.of().formatHex(newDigest().digest(bytes));
+    }
+
+    /**
+     * Computes the cache key of the given file for the currently registered instruction set. The file
+     * is hashed as it is read, without holding its contents.
+     *
+     * @param file the path of the source file of the program.
+     * @return the hexadecimal SHA-256 hash identifying the program.
+     * @throws IOException if the file could not be read.
+     */
+    public static String key(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Creates a SHA-256 digest already fed with the version of the registered instruction set.
+     *
+     * @return the digest.
+     */
+    private static MessageDigest newDigest() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long version = InstructionDispatcher.getInstructionSetVersion();
+            for (int i = Long.BYTES - 1; i >= 0; --i) {
+                digest.update((byte) (version >>> (i * Byte.SIZE)));
+            }
+            return digest;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gets the lexed program for the given source text, lexing it only if it is not cached in memory
+     * or in the cache directory.
+     *
+     * @param source the source text of the program.
+     * @return the lexed program.
+     * @throws ParseException if the program is not cached and could not be properly parsed.
+     */
+    public Program parse(String source) throws ParseException {
+        String key = key(source);
+        Program program = lookup(key);
+        if (program == null) {
+            program = Lexer.parseProgram(source);
+            store(key, program);
+        }
+        return program;
+    }
+
+    /**
+     * Gets the lexed program of the given file, lexing it only if it is not cached in memory or in the
+     * cache directory. The file is read once, and the program is lexed from the bytes it is keyed by,
+     * so a file changed while it is parsed is never cached under the key of other contents.
+     *
+     * @param file the path of the source file of the program.
+     * @return the lexed program.
+     * @throws ParseException if the program is not cached and could not be properly parsed.
+     * @throws IOException    if the file could not be read.
+     */
+    public Program parseFile(Path file) throws ParseException, IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        String key = key(bytes);
+        Program program = lookup(key);
+        if (program == null) {
+            ArrayProgram lexed = new ArrayProgram();
+            try (Reader reader = new InputStreamReader(new ByteArrayInputStream(bytes), Charset.defaultCharset())) {
+                Lexer.parseLines(reader, lexed.getLabels(), lexed::add);
+            }
+            store(key, lexed);
+            program = lexed;
+        }
+        return program;
+    }
+
+    /**
+     * Looks a program up in memory and then in the cache directory, counting the hit or miss.
+     *
+     * @param key the cache key of the program.
+     * @return the cached program, or null if it must be lexed.
+     */
+    private Program lookup(String key) {
+        Program program = get(key);
+        if (program != null) {
+            hits.incrementAndGet();
+            return program;
+        }
+        program = readFromDisk(key);
+        if (program != null) {
+            diskHits.incrementAndGet();
+            put(key, program);
+            return program;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches a newly lexed program in memory and in the cache directory.
+     *
+     * @param key     the cache key of the program.
+     * @param program the lexed program.
+     */
+    private void store(String key, Program program) {
+        put(key, program);
+        writeToDisk(key, program);
+    }
+
+    private synchronized Program get(String key) {
+        return entries.get(key);
+    }
+
+    private synchronized void put(String key, Program program) {
+        if (program.size() > maxLines || entries.containsKey(key))
+            return;
+        entries.put(key, program);
+        cachedLines += program.size();
+        Iterator<Program> eldest = entries.values().iterator();
+        while (cachedLines > maxLines) {
+            cachedLines -= eldest.next().size();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Maps a precompiled program from the cache directory. Unreadable or outdated entries are treated
+     * as absent.
+     *
+     * @param key the cache key of the program.
+     * @return the program read, or null if it is not persisted.
+     */
+    private Program readFromDisk(String key) {
+        if (directory == null)
+            return null;
+        Path file = directory.resolve(key + ProgramFile.EXTENSION);
+        if (!Files.isReadable(file))
+            return null;
+        try {
+            return ProgramFile.map(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Persists a program to the cache directory. Persisting is best effort; a program which cannot be
+     * written is simply lexed again next time. The file is written under a temporary name and then
+     * moved into place so that concurrent readers never see a partial entry.
+     *
+     * @param key     the cache key of the program.
+     * @param program the program to persist.
+     */
+    private void writeToDisk(String key, Program program) {
+        if (directory == null)
+            return;
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            ProgramFile.write(program, temporary);
+            Files.move(temporary, directory.resolve(key + ProgramFile.EXTENSION), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                if (temporary != null)
+                    Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Removes all programs cached in memory. Persisted programs are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        cachedLines = 0;
+    }
+
+    /**
+     * Gets the number of lookups served from memory.
+     *
+     * @return the number of in-memory cache hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of lookups served from the cache directory.
+     *
+     * @return the number of on-disk cache hits.
+     */
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    /**
+     * Gets the number of lookups which required lexing the program.
+     *
+     * @return the number of cache misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of programs currently cached in memory.
+     *
+     * @return the number of programs cached in memory.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets a summary of the cache counters.
+     *
+     * @return a String describing the cache's hits, disk hits and misses.
+     */
+    @Override
+    public String toString() {
+        return String.format("ProgramCache[hits=%d, diskHits=%d, misses=%d, programs=%d]", getHits(), getDiskHits(),
+                getMisses(), size());
+    }
+
+}
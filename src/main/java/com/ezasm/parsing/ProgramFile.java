@@ -0,0 +1,229 @@
+package com.ezasm.parsing;
+
+import com.ezasm.instructions.InstructionDispatcher;
+import com.ezasm.instructions.targets.IAbstractTarget;
+import com.ezasm.instructions.targets.input.ImmediateInput;
+import com.ezasm.instructions.targets.inputoutput.RegisterInputOutput;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads and writes precompiled programs (<code>.ezb</code> files). The format is a fixed header
+ * followed by an opcode table of instruction names, a constant pool of immediates, one fixed size
+ * record per line of code, the source line map and the label table. All values are big-endian.
+ * <p>
+ * Line records consist of a 16-bit opcode, an 8-bit arity, an 8-bit mask of which operands are
+ * immediates and one 32-bit operand per argument slot, which is either a register number or an
+ * index into the constant pool. Lines therefore have at most {@link ProgramFile#MAX_OPERANDS}
+ * operands. Because records have a fixed size, they are validated and decoded straight from a
+ * memory-mapped file without reading it into the heap first.
+ */
+public class ProgramFile {
+
+    /**
+     * The file extension of precompiled programs.
+     */
+    public static final String EXTENSION = ".ezb";
+
+    static final int MAGIC = 0x455A4200; // "EZB\0"
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 80;
+    static final int NO_OPCODE = 0xFFFF;
+    // The width of the mask of immediates
+    static final int MAX_OPERANDS = Byte.SIZE;
+
+    // Offsets of the header fields
+    static final int INSTRUCTION_SET_VERSION = 8;
+    static final int LINE_COUNT = 16;
+    static final int OPCODE_COUNT = 20;
+    static final int CONSTANT_COUNT = 24;
+    static final int LABEL_COUNT = 28;
+    static final int MAX_ARITY = 32;
+    static final int OPCODE_TABLE = 40;
+    static final int CONSTANT_POOL = 48;
+    static final int LINES = 56;
+    static final int LINE_NUMBERS = 64;
+    static final int LABEL_TABLE = 72;
+
+    /**
+     * Determines if the given path names a precompiled program.
+     *
+     * @param path the path in question.
+     * @return true if the file name ends with the precompiled program extension, false otherwise.
+     */
+    public static boolean isProgramFile(Path path) {
+        return path.getFileName() != null && path.getFileName().toString().toLowerCase().endsWith(EXTENSION);
+    }
+
+    /**
+     * Computes the size in bytes of a line record.
+     *
+     * @param maxArity the greatest number of arguments of any line.
+     * @return the size of a line record in bytes.
+     */
+    static int recordSize(int maxArity) {
+        return 4 + 4 * maxArity;
+    }
+
+    /**
+     * Writes a program to the given path in the precompiled program format.
+     *
+     * @param program the program to write.
+     * @param path    the path of the file to write.
+     * @throws IOException if an error occurred writing the file or the program contains an argument
+     *                     which cannot be encoded.
+     */
+    public static void write(Program program, Path path) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            write(program, out);
+        }
+    }
+
+    /**
+     * Writes a program to a stream in the precompiled program format. The encoding identifies the
+     * program: two programs are encoded alike only if their lines, operands, line numbers and labels
+     * are. The stream is flushed but not closed.
+     *
+     * @param program the program to write.
+     * @param stream  the stream to write to.
+     * @throws IOException if an error occurred writing the stream or the program contains an argument
+     *                     which cannot be encoded.
+     */
+    public static void write(Program program, OutputStream stream) throws IOException {
+        Map<String, Integer> opcodes = new LinkedHashMap<>();
+        Map<Long, Integer> constants = new LinkedHashMap<>();
+        int maxArity = 0;
+        for (int i = 0; i < program.size(); ++i) {
+            Line line = program.getLine(i);
+            if (line == null)
+                continue;
+            opcodes.putIfAbsent(line.getInstruction().text(), opcodes.size());
+            maxArity = Math.max(maxArity, line.getArguments().length);
+            for (IAbstractTarget argument : line.getArguments()) {
+                if (argument instanceof ImmediateInput immediate) {
+                    constants.putIfAbsent(immediate.getLong(), constants.size());
+                }
+            }
+        }
+        if (opcodes.size() >= NO_OPCODE) {
+            throw new IOException("Too many distinct instructions to encode");
+        }
+        if (maxArity > MAX_OPERANDS) {
+            throw new IOException("Lines of more than " + MAX_OPERANDS + " operands cannot be encoded");
+        }
+
+        long opcodeTable = HEADER_SIZE;
+        long constantPool = opcodeTable;
+        for (String name : opcodes.keySet()) {
+            constantPool += 2 + name.getBytes(StandardCharsets.UTF_8).length;
+        }
+        long lines = constantPool + 8L * constants.size();
+        long lineNumbers = lines + (long) recordSize(maxArity) * program.size();
+        long labelTable = lineNumbers + 4L * program.size();
+
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(InstructionDispatcher.getInstructionSetVersion());
+        out.writeInt(program.size());
+        out.writeInt(opcodes.size());
+        out.writeInt(constants.size());
+        out.writeInt(program.getLabels().size());
+        out.writeInt(maxArity);
+        out.writeInt(0);
+        out.writeLong(opcodeTable);
+        out.writeLong(constantPool);
+        out.writeLong(lines);
+        out.writeLong(lineNumbers);
+        out.writeLong(labelTable);
+
+        for (String name : opcodes.keySet()) {
+            writeString(out, name);
+        }
+        for (long constant : constants.keySet()) {
+            out.writeLong(constant);
+        }
+        for (int i = 0; i < program.size(); ++i) {
+            writeLine(out, program.getLine(i), maxArity, opcodes, constants);
+        }
+        for (int i = 0; i < program.size(); ++i) {
+            out.writeInt(program.getLineNumber(i));
+        }
+        for (Map.Entry<String, Integer> label : program.getLabels().entrySet()) {
+            out.writeInt(label.getValue());
+            writeString(out, label.getKey());
+        }
+        out.flush();
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeLine(DataOutputStream out, Line line, int maxArity, Map<String, Integer> opcodes,
+            Map<Long, Integer> constants) throws IOException {
+        if (line == null) {
+            out.writeShort(NO_OPCODE);
+            out.writeShort(0);
+            for (int i = 0; i < maxArity; ++i) {
+                out.writeInt(0);
+            }
+            return;
+        }
+        IAbstractTarget[] arguments = line.getArguments();
+        int immediates = 0;
+        for (int i = 0; i < arguments.length; ++i) {
+            if (arguments[i] instanceof ImmediateInput) {
+                immediates |= 1 << i;
+            } else if (!(arguments[i] instanceof RegisterInputOutput)) {
+                throw new IOException("Cannot encode argument of type " + arguments[i].getClass().getSimpleName());
+            }
+        }
+        out.writeShort(opcodes.get(line.getInstruction().text()));
+        out.writeByte(arguments.length);
+        out.writeByte(immediates);
+        for (int i = 0; i < maxArity; ++i) {
+            if (i >= arguments.length) {
+                out.writeInt(0);
+            } else if (arguments[i] instanceof ImmediateInput immediate) {
+                out.writeInt(constants.get(immediate.getLong()));
+            } else {
+                out.writeInt(((RegisterInputOutput) arguments[i]).getRegisterNumber());
+            }
+        }
+    }
+
+    /**
+     * Opens a precompiled program by mapping the file into memory read-only. Every record is
+     * validated, and the records are copied once into a program held in memory, so executing it never
+     * reads a record. No {@link Line} is created for the lines of code.
+     *
+     * @param path the path of the file to open.
+     * @return the decoded program.
+     * @throws IOException if the file could not be read, is not a precompiled program, was assembled
+     *                     for a different instruction set or is corrupt.
+     */
+    public static Program map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Precompiled program is too large to map");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedProgram(buffer).decode();
+        }
+    }
+
+}
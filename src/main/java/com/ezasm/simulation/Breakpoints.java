@@ -0,0 +1,148 @@
+package com.ezasm.simulation;
+
+import com.ezasm.parsing.Literals;
+import com.ezasm.parsing.ParseException;
+import com.ezasm.parsing.Program;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The breakpoints of a program, compiled from line numbers to the indices of its lines of code so
+ * the run loop checks the PC against a bitset instead of looking the line up. Compiled breakpoints
+ * are immutable; they are compiled again whenever a breakpoint is set or cleared, another program
+ * is loaded or lines are appended to the program. The run loop only tests the bitset when {@link Breakpoints#isEmpty()} is false, so
+ * running without breakpoints costs one check per line.
+ */
+final class Breakpoints {
+
+    /**
+     * The compiled breakpoints of no program, with no breakpoint set.
+     */
+    static final Breakpoints NONE = new Breakpoints(null, 0, new BitSet(), new IBreakpointCondition[0]);
+
+    // A register or literal, a comparison operator and another register or literal
+    private static final Pattern CONDITION = Pattern.compile("^\\s*(\\S+?)\\s*(==|!=|<=|>=|<|>)\\s*(\\S+)\\s*$");
+
+    private final Program program;
+    // The number of lines of the program when compiled, as lines may be appended to it in place
+    private final int size;
+    // Bit i is set if line of code i has a breakpoint, whose condition is conditions[i]
+    private final BitSet lines;
+    private final IBreakpointCondition[] conditions;
+
+    private Breakpoints(Program program, int size, BitSet lines, IBreakpointCondition[] conditions) {
+        this.program = program;
+        this.size = size;
+        this.lines = lines;
+        this.conditions = conditions;
+    }
+
+    /**
+     * Compiles the breakpoints set on line numbers against the lines of code of a program. Every line
+     * of code lexed from a line number with a breakpoint gets the breakpoint.
+     *
+     * @param byLine  the condition of the breakpoint on each line number.
+     * @param program the program.
+     * @return the compiled breakpoints.
+     */
+    static Breakpoints compile(Map<Integer, IBreakpointCondition> byLine, Program program) {
+        if (byLine.isEmpty())
+            return new Breakpoints(program, program.size(), NONE.lines, NONE.conditions);
+        BitSet lines = new BitSet(program.size());
+        IBreakpointCondition[] conditions = new IBreakpointCondition[program.size()];
+        for (int i = 0; i < program.size(); ++i) {
+            IBreakpointCondition condition = byLine.get(program.getLineNumber(i));
+            if (condition != null) {
+                lines.set(i);
+                conditions[i] = condition;
+            }
+        }
+        return new Breakpoints(program, program.size(), lines, conditions);
+    }
+
+    /**
+     * Determines whether the breakpoints were compiled against a program as it is now: the same
+     * program, with no lines appended since.
+     *
+     * @param program the program.
+     * @return true if the breakpoints are up to date with the program, false otherwise.
+     */
+    boolean isCompiledAgainst(Program program) {
+        return this.program == program && (program == null || size == program.size());
+    }
+
+    /**
+     * Determines whether no line of code has a breakpoint.
+     *
+     * @return true if no line has a breakpoint, false otherwise.
+     */
+    boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    /**
+     * Determines whether execution should stop before a line of code: whether the line has a
+     * breakpoint and its condition holds.
+     *
+     * @param pc the index of the line of code.
+     * @return true if execution should stop, false otherwise.
+     */
+    boolean shouldBreak(int pc) {
+        return lines.get(pc) && conditions[pc].test();
+    }
+
+    /**
+     * Compiles the text of a condition into a predicate over the registers. A condition compares two
+     * operands, each a register or a literal, with one of <code>== != &lt; &lt;= &gt; &gt;=</code>;
+     * values are compared as signed integers. Registers are resolved once here, so testing the
+     * condition only reads them.
+     *
+     * @param condition the text of the condition, such as <code>$t0 &gt; 100</code>.
+     * @param registers the registers the condition reads.
+     * @return the compiled condition.
+     * @throws ParseException if the condition is not a comparison of registers and literals.
+     */
+    static IBreakpointCondition compileCondition(String condition, Registers registers) throws ParseException {
+        Matcher matcher = CONDITION.matcher(condition);
+        if (!matcher.matches()) {
+            throw new ParseException("Error parsing breakpoint condition '" + condition + "'");
+        }
+        LongSupplier left = operand(matcher.group(1), registers);
+        LongSupplier right = operand(matcher.group(3), registers);
+        return switch (matcher.group(2)) {
+        case "==" -> () -> left.getAsLong() == right.getAsLong();
+        case "!=" -> () -> left.getAsLong() != right.getAsLong();
+        case "<" -> () -> left.getAsLong() < right.getAsLong();
+        case "<=" -> () -> left.getAsLong() <= right.getAsLong();
+        case ">" -> () -> left.getAsLong() > right.getAsLong();
+        default -> () -> left.getAsLong() >= right.getAsLong();
+        };
+    }
+
+    /**
+     * Compiles an operand of a condition into a supplier of its value.
+     *
+     * @param token     the register or literal.
+     * @param registers the registers a register operand is read from.
+     * @return the supplier of the operand's value.
+     * @throws ParseException if the token is neither a register nor a literal.
+     */
+    private static LongSupplier operand(String token, Registers registers) throws ParseException {
+        int number = Registers.parseRegisterToken(token);
+        Register register = number >= 0 ? registers.getRegister(number) : null;
+        if (register != null) {
+            return register::getLong;
+        }
+        long[] value = new long[1];
+        if (Literals.parse(token, value)) {
+            long literal = value[0];
+            return () -> literal;
+        }
+        throw new ParseException("Error parsing token '" + token + "' in breakpoint condition");
+    }
+
+}
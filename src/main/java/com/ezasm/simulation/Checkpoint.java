@@ -0,0 +1,277 @@
+package com.ezasm.simulation;
+
+import com.ezasm.parsing.Program;
+import com.ezasm.parsing.ProgramFile;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Saves and restores the state of a simulator: its registers, memory and heap pointer, along with a
+ * digest of the loaded program so a checkpoint is only restored into the program it was taken of. The
+ * format is a fixed header, the bytes of every register and a sequence of memory chunk records ended
+ * by a record with an index of -1. All values are big-endian.
+ * <p>
+ * A checkpoint is restored in two stages. It is first read into a staging memory of its own while the
+ * simulator is untouched, so a corrupt or mismatched file changes nothing; the staged state is then
+ * applied to the simulator, which cannot fail.
+ * <p>
+ * Memory is stored in chunks of 64 KiB. Chunks which are all zero, including every part of memory the
+ * backend never allocated, are skipped; the rest are deflated at the fastest level, or stored as they
+ * are if they do not shrink. Chunk records consist of the 64-bit index of the chunk in memory, its
+ * 32-bit length and the 32-bit length of the stored bytes which follow, and are written to the file
+ * with gathering writes.
+ */
+final class Checkpoint implements AutoCloseable {
+
+    static final int MAGIC = 0x455A4300; // "EZC\0"
+    static final int FORMAT_VERSION = 2;
+    static final int CHUNK_SIZE = 1 << 16;
+
+    private static final int DIGEST_SIZE = 32;
+    private static final int HEADER_SIZE = 8 + DIGEST_SIZE + 24;
+    private static final int RECORD_SIZE = 16;
+    // The number of buffers gathered into each write
+    private static final int BATCH = 64;
+
+    // The staged state: the bytes of each register, and the memory with its heap pointer
+    private final byte[][] registers;
+    private final Memory memory;
+
+    private Checkpoint(byte[][] registers, Memory memory) {
+        this.registers = registers;
+        this.memory = memory;
+    }
+
+    /**
+     * Writes the state of a simulator to a file.
+     *
+     * @param simulator the simulator to save, which must not be stepped meanwhile.
+     * @param path      the path of the file to write.
+     * @throws IOException if an error occurred writing the file.
+     */
+    static void save(Simulator simulator, Path path) throws IOException {
+        Memory memory = simulator.getMemory();
+        IMemoryBackend backend = memory.getBackend();
+        Registers registers = simulator.getRegisters();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + Registers.TOTAL_REGISTERS * memory.WORD_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.put(digest(simulator.getProgram()));
+        header.putInt(memory.WORD_SIZE);
+        header.putInt(Registers.TOTAL_REGISTERS);
+        header.putLong(memory.size());
+        header.putLong(memory.currentHeapPointer() - memory.initialHeapPointer());
+        for (int i = 0; i < Registers.TOTAL_REGISTERS; ++i) {
+            Register register = registers.getRegister(i);
+            header.put(register == null ? new byte[memory.WORD_SIZE] : register.getBytes());
+        }
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<ByteBuffer> pending = new ArrayList<>(BATCH);
+            pending.add(header);
+            List<long[]> ranges = new ArrayList<>();
+            backend.forEachAllocated((start, end) -> ranges.add(new long[] { start, end }));
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            byte[] chunk = new byte[CHUNK_SIZE];
+            byte[] deflated = new byte[CHUNK_SIZE];
+            try {
+                for (long[] range : ranges) {
+                    for (long index = range[0]; index < range[1]; index += CHUNK_SIZE) {
+                        int length = (int) Math.min(CHUNK_SIZE, range[1] - index);
+                        backend.read(index, chunk, 0, length);
+                        if (isZero(chunk, length))
+                            continue;
+                        deflater.reset();
+                        deflater.setInput(chunk, 0, length);
+                        deflater.finish();
+                        int stored = deflater.deflate(deflated);
+                        byte[] data = deflater.finished() && stored < length ? Arrays.copyOf(deflated, stored)
+                                : Arrays.copyOf(chunk, length);
+
+                        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+                        record.putLong(index).putInt(length).putInt(data.length).flip();
+                        pending.add(record);
+                        pending.add(ByteBuffer.wrap(data));
+                        if (pending.size() >= BATCH) {
+                            writeFully(channel, pending);
+                        }
+                    }
+                }
+            } finally {
+                deflater.end();
+            }
+            pending.add(ByteBuffer.allocate(RECORD_SIZE).putLong(-1).putInt(0).putInt(0).flip());
+            writeFully(channel, pending);
+        }
+    }
+
+    /**
+     * Reads a checkpoint into a staging memory without changing the simulator. The simulator must have
+     * the program the checkpoint was taken of loaded, and memory of the same word size and size.
+     *
+     * @param simulator the simulator the checkpoint is to be restored into.
+     * @param path      the path of the file to read.
+     * @return the staged checkpoint, to be applied and closed.
+     * @throws IOException if an error occurred reading the file, the file is not a checkpoint or it
+     *                     does not match the simulator.
+     */
+    static Checkpoint read(Simulator simulator, Path path) throws IOException {
+        Memory target = simulator.getMemory();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException(path + " is not a checkpoint of this version");
+            }
+            byte[] digest = new byte[DIGEST_SIZE];
+            in.readFully(digest);
+            if (!Arrays.equals(digest, digest(simulator.getProgram()))) {
+                throw new IOException("The checkpoint was taken of a different program");
+            }
+            int wordSize = in.readInt();
+            int registerCount = in.readInt();
+            long size = in.readLong();
+            long allocated = in.readLong();
+            if (wordSize != target.WORD_SIZE || registerCount != Registers.TOTAL_REGISTERS || size != target.size()) {
+                throw new IOException("The checkpoint was taken with " + size + " bytes of memory and words of "
+                        + wordSize + " bytes");
+            }
+
+            byte[][] values = new byte[registerCount][wordSize];
+            for (byte[] value : values) {
+                in.readFully(value);
+            }
+
+            Memory memory = new Memory(wordSize, size / wordSize);
+            memory.setAllocated(allocated);
+            Inflater inflater = new Inflater();
+            byte[] chunk = new byte[CHUNK_SIZE];
+            byte[] stored = new byte[CHUNK_SIZE];
+            boolean staged = false;
+            try {
+                for (long index = in.readLong(); index >= 0; index = in.readLong()) {
+                    int length = in.readInt();
+                    int storedLength = in.readInt();
+                    if (length < 0 || storedLength < 0 || length > CHUNK_SIZE || storedLength > length
+                            || index > size - length) {
+                        throw new IOException("Corrupt chunk record at index " + index);
+                    }
+                    in.readFully(stored, 0, storedLength);
+                    if (storedLength == length) {
+                        memory.load(index, stored, length);
+                        continue;
+                    }
+                    inflater.reset();
+                    inflater.setInput(stored, 0, storedLength);
+                    if (inflater.inflate(chunk, 0, length) != length) {
+                        throw new IOException("Corrupt chunk at index " + index);
+                    }
+                    memory.load(index, chunk, length);
+                }
+                staged = true;
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt chunk: " + e.getMessage(), e);
+            } catch (EOFException e) {
+                throw new IOException("The checkpoint is truncated", e);
+            } finally {
+                inflater.end();
+                if (!staged) {
+                    memory.close();
+                }
+            }
+            return new Checkpoint(values, memory);
+        }
+    }
+
+    /**
+     * Replaces the registers, memory and heap pointer of a simulator with the staged ones.
+     *
+     * @param simulator the simulator the checkpoint was read for, which must not be stepped meanwhile.
+     */
+    void apply(Simulator simulator) {
+        simulator.getMemory().copyFrom(memory);
+        for (int i = 0; i < registers.length; ++i) {
+            Register register = simulator.getRegisters().getRegister(i);
+            if (register != null) {
+                register.setBytes(registers[i]);
+            }
+        }
+    }
+
+    /**
+     * Releases the staging memory.
+     */
+    @Override
+    public void close() {
+        memory.close();
+    }
+
+    /**
+     * Writes buffers to a channel with gathering writes until all of them are written, and clears the
+     * list.
+     *
+     * @param channel the channel to write to.
+     * @param buffers the buffers to write.
+     * @throws IOException if an error occurred writing.
+     */
+    private static void writeFully(FileChannel channel, List<ByteBuffer> buffers) throws IOException {
+        ByteBuffer[] array = buffers.toArray(new ByteBuffer[0]);
+        while (array[array.length - 1].hasRemaining()) {
+            channel.write(array);
+        }
+        buffers.clear();
+    }
+
+    private static boolean isZero(byte[] bytes, int length) {
+        for (int i = 0; i < length; ++i) {
+            if (bytes[i] != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Computes a SHA-256 digest identifying a program by its encoding as a precompiled program, which
+     * covers the instruction and operands of every line along with the line numbers and labels.
+     *
+     * @param program the program.
+     * @return the digest.
+     * @throws IOException if the program cannot be encoded.
+     */
+    static byte[] digest(Program program) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        try (DigestOutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+            ProgramFile.write(program, out);
+        }
+        return digest.digest();
+    }
+
+}
@@ -0,0 +1,298 @@
+package com.ezasm.simulation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A memory backend outside the Java heap, stored in direct buffers of 1 MiB which are only allocated
+ * once they are written. Large memories therefore add nothing for the garbage collector to trace or
+ * copy. Segments written since the last clear are tracked in a bitmap, so clearing only touches the
+ * segments which were written. Closing the backend frees its segments immediately where the runtime
+ * allows it, rather than whenever the buffers are collected. Words within a segment are read and
+ * written in place through the buffers' big-endian accessors. Forks share their segments until one
+ * of them writes a segment, which it then copies; shared segments are left to the garbage collector
+ * rather than freed on close. Segments which were viewed are copied for the fork up front instead, so
+ * the views keep reading the segment this backend writes, and are left to the garbage collector as
+ * well, which frees them once the views are unreachable.
+ */
+class DirectMemoryBackend implements IMemoryBackend {
+
+    private static final int SEGMENT_BITS = 20;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+    /**
+     * The greatest number of bytes a direct backend can hold.
+     */
+    static final long MAX_SIZE = (long) Integer.MAX_VALUE << SEGMENT_BITS;
+
+    // Zeros copied over a segment to clear it
+    private static final byte[] ZEROS = new byte[1 << 16];
+
+    // Frees a direct buffer immediately, or null if the runtime does not allow it
+    private static final MethodHandle FREE = findFree();
+
+    private final long size;
+    private final ByteBuffer[] segments;
+    // Bit i is set if segment i was written since the last clear
+    private final long[] dirty;
+    // Bit i is set if segment i belongs to this backend alone; other segments may be shared with forks
+    private final long[] owned;
+    // Bit i is set if segment i was handed out as a view, so it is never replaced or freed
+    private final long[] viewed;
+
+    /**
+     * Creates a backend of the given size. Nothing is allocated but the segment table.
+     *
+     * @param size the number of bytes in the backend.
+     */
+    DirectMemoryBackend(long size) {
+        if (size < 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Direct memory cannot hold " + size + " bytes");
+        }
+        this.size = size;
+        this.segments = new ByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+        this.dirty = new long[(segments.length + Long.SIZE - 1) / Long.SIZE];
+        this.owned = new long[dirty.length];
+        this.viewed = new long[dirty.length];
+    }
+
+    /**
+     * Creates a fork of a backend, sharing all of its segments.
+     *
+     * @param parent the backend to fork.
+     */
+    private DirectMemoryBackend(DirectMemoryBackend parent) {
+        this.size = parent.size;
+        this.segments = parent.segments.clone();
+        this.dirty = parent.dirty.clone();
+        this.owned = new long[dirty.length];
+        this.viewed = new long[dirty.length];
+        for (int word = 0; word < dirty.length; ++word) {
+            // Viewed segments stay with the parent, whose views read them in place
+            for (long bits = parent.viewed[word]; bits != 0; bits &= bits - 1) {
+                int segment = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                segments[segment] = ByteBuffer.allocateDirect(SEGMENT_SIZE).put(0, parent.segments[segment], 0,
+                        SEGMENT_SIZE);
+            }
+            owned[word] = parent.viewed[word];
+            parent.owned[word] = parent.viewed[word];
+        }
+    }
+
+    @Override
+    public boolean canFork() {
+        return true;
+    }
+
+    @Override
+    public IMemoryBackend fork() {
+        return new DirectMemoryBackend(this);
+    }
+
+    private static MethodHandle findFree() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void read(long index, byte[] destination, int offset, int count) {
+        while (count > 0) {
+            int inSegment = (int) (index & (SEGMENT_SIZE - 1));
+            int length = Math.min(count, SEGMENT_SIZE - inSegment);
+            ByteBuffer segment = segments[(int) (index >>> SEGMENT_BITS)];
+            if (segment == null) {
+                Arrays.fill(destination, offset, offset + length, (byte) 0);
+            } else {
+                segment.get(inSegment, destination, offset, length);
+            }
+            index += length;
+            offset += length;
+            count -= length;
+        }
+    }
+
+    @Override
+    public void write(long index, byte[] source, int offset, int count) {
+        while (count > 0) {
+            int inSegment = (int) (index & (SEGMENT_SIZE - 1));
+            int length = Math.min(count, SEGMENT_SIZE - inSegment);
+            writableSegment((int) (index >>> SEGMENT_BITS)).put(inSegment, source, offset, length);
+            index += length;
+            offset += length;
+            count -= length;
+        }
+    }
+
+    @Override
+    public byte getByte(long index) {
+        ByteBuffer segment = segments[(int) (index >>> SEGMENT_BITS)];
+        return segment == null ? 0 : segment.get((int) (index & (SEGMENT_SIZE - 1)));
+    }
+
+    @Override
+    public ByteBuffer view(long index, int count) {
+        int inSegment = (int) (index & (SEGMENT_SIZE - 1));
+        if (inSegment > SEGMENT_SIZE - count) {
+            return IMemoryBackend.super.view(index, count);
+        }
+        int segment = (int) (index >>> SEGMENT_BITS);
+        viewed[segment / Long.SIZE] |= 1L << segment;
+        return ownedSegment(segment).slice(inSegment, count).asReadOnlyBuffer();
+    }
+
+    @Override
+    public long getLong(long index) {
+        int inSegment = (int) (index & (SEGMENT_SIZE - 1));
+        if (inSegment > SEGMENT_SIZE - Long.BYTES) {
+            return IMemoryBackend.super.getLong(index);
+        }
+        ByteBuffer segment = segments[(int) (index >>> SEGMENT_BITS)];
+        return segment == null ? 0 : segment.getLong(inSegment);
+    }
+
+    @Override
+    public void putLong(long index, long value) {
+        int inSegment = (int) (index & (SEGMENT_SIZE - 1));
+        if (inSegment > SEGMENT_SIZE - Long.BYTES) {
+            IMemoryBackend.super.putLong(index, value);
+            return;
+        }
+        writableSegment((int) (index >>> SEGMENT_BITS)).putLong(inSegment, value);
+    }
+
+    @Override
+    public int getInt(long index) {
+        int inSegment = (int) (index & (SEGMENT_SIZE - 1));
+        if (inSegment > SEGMENT_SIZE - Integer.BYTES) {
+            return IMemoryBackend.super.getInt(index);
+        }
+        ByteBuffer segment = segments[(int) (index >>> SEGMENT_BITS)];
+        return segment == null ? 0 : segment.getInt(inSegment);
+    }
+
+    @Override
+    public void putInt(long index, int value) {
+        int inSegment = (int) (index & (SEGMENT_SIZE - 1));
+        if (inSegment > SEGMENT_SIZE - Integer.BYTES) {
+            IMemoryBackend.super.putInt(index, value);
+            return;
+        }
+        writableSegment((int) (index >>> SEGMENT_BITS)).putInt(inSegment, value);
+    }
+
+    /**
+     * Gets a segment to write to, allocating it if it was never written and marking it dirty.
+     *
+     * @param segment the number of the segment.
+     * @return the segment.
+     */
+    private ByteBuffer writableSegment(int segment) {
+        dirty[segment / Long.SIZE] |= 1L << segment;
+        return ownedSegment(segment);
+    }
+
+    /**
+     * Gets a segment belonging to this backend alone, allocating it if it was never written and
+     * copying it if it is shared with a fork. A segment allocated only to be viewed stays clean, as it
+     * holds nothing but zeros until it is written.
+     *
+     * @param segment the number of the segment.
+     * @return the segment.
+     */
+    private ByteBuffer ownedSegment(int segment) {
+        if ((owned[segment / Long.SIZE] & (1L << segment)) != 0) {
+            return segments[segment];
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SEGMENT_SIZE);
+        if (segments[segment] != null) {
+            buffer.put(0, segments[segment], 0, SEGMENT_SIZE);
+        }
+        segments[segment] = buffer;
+        owned[segment / Long.SIZE] |= 1L << segment;
+        return buffer;
+    }
+
+    @Override
+    public void forEachAllocated(IRangeConsumer consumer) {
+        int start = -1;
+        for (int segment = 0; segment <= segments.length; ++segment) {
+            boolean allocated = segment < segments.length && segments[segment] != null;
+            if (allocated && start < 0) {
+                start = segment;
+            } else if (!allocated && start >= 0) {
+                consumer.accept((long) start << SEGMENT_BITS, Math.min((long) segment << SEGMENT_BITS, size));
+                start = -1;
+            }
+        }
+    }
+
+    @Override
+    public void clear(IRangeConsumer cleared) {
+        for (int word = 0; word < dirty.length; ++word) {
+            for (long bits = dirty[word]; bits != 0; bits &= bits - 1) {
+                int segment = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                if ((owned[word] & (1L << segment)) != 0) {
+                    for (int i = 0; i < SEGMENT_SIZE; i += ZEROS.length) {
+                        segments[segment].put(i, ZEROS);
+                    }
+                } else {
+                    // A shared segment is dropped rather than cleared under the forks using it
+                    segments[segment] = null;
+                }
+                long start = (long) segment << SEGMENT_BITS;
+                cleared.accept(start, Math.min(start + SEGMENT_SIZE, size));
+            }
+            dirty[word] = 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        Arrays.fill(dirty, 0);
+        for (int segment = 0; segment < segments.length; ++segment) {
+            ByteBuffer closed = segments[segment];
+            // The segment is unreachable before it is freed, so a later read sees zeros instead
+            segments[segment] = null;
+            long bit = 1L << segment;
+            if ((owned[segment / Long.SIZE] & bit) != 0 && (viewed[segment / Long.SIZE] & bit) == 0) {
+                free(closed);
+            }
+        }
+        Arrays.fill(owned, 0);
+        Arrays.fill(viewed, 0);
+    }
+
+    /**
+     * Frees a direct or mapped buffer immediately where the runtime allows it. Otherwise the buffer is
+     * freed when it is collected. The buffer must not be used afterwards.
+     *
+     * @param buffer the buffer to free.
+     */
+    static void free(ByteBuffer buffer) {
+        if (FREE == null)
+            return;
+        try {
+            FREE.invokeExact(buffer);
+        } catch (Throwable e) {
+            // Left to be freed when the buffer is collected
+        }
+    }
+
+}
@@ -0,0 +1,247 @@
+package com.ezasm.simulation;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A memory backend on the Java heap, stored in pages of 4 KiB which are only allocated once they are
+ * written. Pages written since the last clear are tracked in a bitmap, so clearing only touches the
+ * pages which were written. Words within a page are read and written in place through array view
+ * handles. Forks share their pages until one of them writes a page, which it then copies. Pages which
+ * were viewed are copied for the fork up front instead, so the views keep reading the page this
+ * backend writes.
+ */
+class HeapMemoryBackend implements IMemoryBackend {
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    /**
+     * The greatest number of bytes a heap backend can hold.
+     */
+    static final long MAX_SIZE = (long) Integer.MAX_VALUE << PAGE_BITS;
+
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final long size;
+    private byte[][] pages;
+    // Bit i is set if page i was written since the last clear
+    private final long[] dirty;
+    // Bit i is set if page i belongs to this backend alone; other pages may be shared with forks
+    private final long[] owned;
+    // Bit i is set if page i was handed out as a view, so it is never replaced
+    private final long[] viewed;
+
+    /**
+     * Creates a backend of the given size. Nothing is allocated but the page table.
+     *
+     * @param size the number of bytes in the backend.
+     */
+    HeapMemoryBackend(long size) {
+        if (size < 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Heap memory cannot hold " + size + " bytes");
+        }
+        this.size = size;
+        this.pages = new byte[(int) ((size + PAGE_SIZE - 1) >>> PAGE_BITS)][];
+        this.dirty = new long[(pages.length + Long.SIZE - 1) / Long.SIZE];
+        this.owned = new long[dirty.length];
+        this.viewed = new long[dirty.length];
+    }
+
+    /**
+     * Creates a fork of a backend, sharing all of its pages.
+     *
+     * @param parent the backend to fork.
+     */
+    private HeapMemoryBackend(HeapMemoryBackend parent) {
+        this.size = parent.size;
+        this.pages = parent.pages.clone();
+        this.dirty = parent.dirty.clone();
+        this.owned = new long[dirty.length];
+        this.viewed = new long[dirty.length];
+        for (int word = 0; word < dirty.length; ++word) {
+            // Viewed pages stay with the parent, whose views read them in place
+            for (long bits = parent.viewed[word]; bits != 0; bits &= bits - 1) {
+                int page = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                pages[page] = parent.pages[page].clone();
+            }
+            owned[word] = parent.viewed[word];
+            parent.owned[word] = parent.viewed[word];
+        }
+    }
+
+    @Override
+    public boolean canFork() {
+        return true;
+    }
+
+    @Override
+    public IMemoryBackend fork() {
+        return new HeapMemoryBackend(this);
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void read(long index, byte[] destination, int offset, int count) {
+        while (count > 0) {
+            int inPage = (int) (index & (PAGE_SIZE - 1));
+            int length = Math.min(count, PAGE_SIZE - inPage);
+            byte[] page = pages[(int) (index >>> PAGE_BITS)];
+            if (page == null) {
+                Arrays.fill(destination, offset, offset + length, (byte) 0);
+            } else {
+                System.arraycopy(page, inPage, destination, offset, length);
+            }
+            index += length;
+            offset += length;
+            count -= length;
+        }
+    }
+
+    @Override
+    public void write(long index, byte[] source, int offset, int count) {
+        while (count > 0) {
+            int inPage = (int) (index & (PAGE_SIZE - 1));
+            int length = Math.min(count, PAGE_SIZE - inPage);
+            System.arraycopy(source, offset, writablePage((int) (index >>> PAGE_BITS)), inPage, length);
+            index += length;
+            offset += length;
+            count -= length;
+        }
+    }
+
+    @Override
+    public byte getByte(long index) {
+        byte[] page = pages[(int) (index >>> PAGE_BITS)];
+        return page == null ? 0 : page[(int) (index & (PAGE_SIZE - 1))];
+    }
+
+    @Override
+    public ByteBuffer view(long index, int count) {
+        int inPage = (int) (index & (PAGE_SIZE - 1));
+        if (inPage > PAGE_SIZE - count) {
+            return IMemoryBackend.super.view(index, count);
+        }
+        int page = (int) (index >>> PAGE_BITS);
+        viewed[page / Long.SIZE] |= 1L << page;
+        return ByteBuffer.wrap(ownedPage(page)).slice(inPage, count).asReadOnlyBuffer();
+    }
+
+    @Override
+    public long getLong(long index) {
+        int inPage = (int) (index & (PAGE_SIZE - 1));
+        if (inPage > PAGE_SIZE - Long.BYTES) {
+            return IMemoryBackend.super.getLong(index);
+        }
+        byte[] page = pages[(int) (index >>> PAGE_BITS)];
+        return page == null ? 0 : (long) LONG.get(page, inPage);
+    }
+
+    @Override
+    public void putLong(long index, long value) {
+        int inPage = (int) (index & (PAGE_SIZE - 1));
+        if (inPage > PAGE_SIZE - Long.BYTES) {
+            IMemoryBackend.super.putLong(index, value);
+            return;
+        }
+        LONG.set(writablePage((int) (index >>> PAGE_BITS)), inPage, value);
+    }
+
+    @Override
+    public int getInt(long index) {
+        int inPage = (int) (index & (PAGE_SIZE - 1));
+        if (inPage > PAGE_SIZE - Integer.BYTES) {
+            return IMemoryBackend.super.getInt(index);
+        }
+        byte[] page = pages[(int) (index >>> PAGE_BITS)];
+        return page == null ? 0 : (int) INT.get(page, inPage);
+    }
+
+    @Override
+    public void putInt(long index, int value) {
+        int inPage = (int) (index & (PAGE_SIZE - 1));
+        if (inPage > PAGE_SIZE - Integer.BYTES) {
+            IMemoryBackend.super.putInt(index, value);
+            return;
+        }
+        INT.set(writablePage((int) (index >>> PAGE_BITS)), inPage, value);
+    }
+
+    /**
+     * Gets a page to write to, allocating it if it was never written and marking it dirty.
+     *
+     * @param page the number of the page.
+     * @return the page.
+     */
+    private byte[] writablePage(int page) {
+        dirty[page / Long.SIZE] |= 1L << page;
+        return ownedPage(page);
+    }
+
+    /**
+     * Gets a page belonging to this backend alone, allocating it if it was never written and copying
+     * it if it is shared with a fork. A page allocated only to be viewed stays clean, as it holds
+     * nothing but zeros until it is written.
+     *
+     * @param page the number of the page.
+     * @return the page.
+     */
+    private byte[] ownedPage(int page) {
+        if ((owned[page / Long.SIZE] & (1L << page)) != 0) {
+            return pages[page];
+        }
+        byte[] bytes = pages[page] == null ? new byte[PAGE_SIZE] : pages[page].clone();
+        pages[page] = bytes;
+        owned[page / Long.SIZE] |= 1L << page;
+        return bytes;
+    }
+
+    @Override
+    public void forEachAllocated(IRangeConsumer consumer) {
+        int start = -1;
+        for (int page = 0; page <= pages.length; ++page) {
+            boolean allocated = page < pages.length && pages[page] != null;
+            if (allocated && start < 0) {
+                start = page;
+            } else if (!allocated && start >= 0) {
+                consumer.accept((long) start << PAGE_BITS, Math.min((long) page << PAGE_BITS, size));
+                start = -1;
+            }
+        }
+    }
+
+    @Override
+    public void clear(IRangeConsumer cleared) {
+        for (int word = 0; word < dirty.length; ++word) {
+            for (long bits = dirty[word]; bits != 0; bits &= bits - 1) {
+                int page = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                if ((owned[word] & (1L << page)) != 0) {
+                    Arrays.fill(pages[page], (byte) 0);
+                } else {
+                    // A shared page is dropped rather than cleared under the forks using it
+                    pages[page] = null;
+                }
+                long start = (long) page << PAGE_BITS;
+                cleared.accept(start, Math.min(start + PAGE_SIZE, size));
+            }
+            dirty[word] = 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        pages = new byte[0][];
+        Arrays.fill(dirty, 0);
+        Arrays.fill(owned, 0);
+        Arrays.fill(viewed, 0);
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.ezasm.simulation;
+
+/**
+ * The condition of a breakpoint, tested each time the line it is set on is about to be executed.
+ * Conditions are compiled once when the breakpoint is set, so testing one only reads the registers
+ * it was compiled against. See {@link Simulator#compileCondition(String)}.
+ */
+@FunctionalInterface
+public interface IBreakpointCondition {
+
+    /**
+     * A condition which always holds, making a breakpoint unconditional.
+     */
+    IBreakpointCondition ALWAYS = () -> true;
+
+    /**
+     * Tests the condition against the current state of the simulator.
+     *
+     * @return true if execution should stop at the breakpoint, false otherwise.
+     */
+    boolean test();
+
+}
@@ -0,0 +1,237 @@
+package com.ezasm.simulation;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The storage behind a {@link Memory}: a zero-initialized range of bytes indexed from zero. Backends
+ * only allocate the parts of the range which are written and remember which parts were written since
+ * they were last cleared. Indices are always within the backend's size; bounds are checked by the
+ * memory.
+ */
+public interface IMemoryBackend extends AutoCloseable {
+
+    /**
+     * Receives ranges of bytes.
+     */
+    @FunctionalInterface
+    interface IRangeConsumer {
+        /**
+         * Receives a range of bytes.
+         *
+         * @param start the index of the first byte of the range.
+         * @param end   the index after the last byte of the range.
+         */
+        void accept(long start, long end);
+    }
+
+    /**
+     * Gets the number of bytes in the backend.
+     *
+     * @return the size of the backend in bytes.
+     */
+    long size();
+
+    /**
+     * Copies bytes out of the backend. Bytes which were never written are zero.
+     *
+     * @param index       the index of the first byte to copy.
+     * @param destination the array to copy to.
+     * @param offset      the index in the array to copy the first byte to.
+     * @param count       the number of bytes to copy.
+     */
+    void read(long index, byte[] destination, int offset, int count);
+
+    /**
+     * Copies bytes into the backend.
+     *
+     * @param index  the index of the first byte to write.
+     * @param source the array to copy from.
+     * @param offset the index in the array of the first byte to copy.
+     * @param count  the number of bytes to copy.
+     */
+    void write(long index, byte[] source, int offset, int count);
+
+    /**
+     * Reads one byte.
+     *
+     * @param index the index of the byte.
+     * @return the byte read.
+     */
+    default byte getByte(long index) {
+        byte[] bytes = new byte[1];
+        read(index, bytes, 0, 1);
+        return bytes[0];
+    }
+
+    /**
+     * Gets a read-only view of a range of bytes. Backends override this to return a live view of their
+     * storage when the range is stored contiguously; otherwise the view is a copy.
+     *
+     * @param index the index of the first byte of the range.
+     * @param count the number of bytes in the range.
+     * @return a read-only buffer over the range, positioned at its start.
+     */
+    default ByteBuffer view(long index, int count) {
+        byte[] bytes = new byte[count];
+        read(index, bytes, 0, count);
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Reads the big-endian long starting at an index. Backends override this to read the word in
+     * place.
+     *
+     * @param index the index of the first byte of the long.
+     * @return the long read.
+     */
+    default long getLong(long index) {
+        byte[] bytes = new byte[Long.BYTES];
+        read(index, bytes, 0, Long.BYTES);
+        long value = 0;
+        for (byte b : bytes) {
+            value = (value << Byte.SIZE) | (b & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Writes a long in big-endian order starting at an index. Backends override this to write the
+     * word in place.
+     *
+     * @param index the index of the first byte of the long.
+     * @param value the long to write.
+     */
+    default void putLong(long index, long value) {
+        byte[] bytes = new byte[Long.BYTES];
+        for (int i = Long.BYTES - 1; i >= 0; --i) {
+            bytes[i] = (byte) value;
+            value >>>= Byte.SIZE;
+        }
+        write(index, bytes, 0, Long.BYTES);
+    }
+
+    /**
+     * Reads the big-endian int starting at an index. Backends override this to read the word in
+     * place.
+     *
+     * @param index the index of the first byte of the int.
+     * @return the int read.
+     */
+    default int getInt(long index) {
+        byte[] bytes = new byte[Integer.BYTES];
+        read(index, bytes, 0, Integer.BYTES);
+        int value = 0;
+        for (byte b : bytes) {
+            value = (value << Byte.SIZE) | (b & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Writes an int in big-endian order starting at an index. Backends override this to write the
+     * word in place.
+     *
+     * @param index the index of the first byte of the int.
+     * @param value the int to write.
+     */
+    default void putInt(long index, int value) {
+        byte[] bytes = new byte[Integer.BYTES];
+        for (int i = Integer.BYTES - 1; i >= 0; --i) {
+            bytes[i] = (byte) value;
+            value >>>= Byte.SIZE;
+        }
+        write(index, bytes, 0, Integer.BYTES);
+    }
+
+    /**
+     * Reads consecutive big-endian longs.
+     *
+     * @param index       the index of the first byte of the first long.
+     * @param destination the array to read the longs into.
+     * @param offset      the index in the array of the first long.
+     * @param count       the number of longs to read.
+     */
+    default void getLongs(long index, long[] destination, int offset, int count) {
+        for (int i = 0; i < count; ++i) {
+            destination[offset + i] = getLong(index + (long) i * Long.BYTES);
+        }
+    }
+
+    /**
+     * Writes consecutive longs in big-endian order.
+     *
+     * @param index  the index of the first byte of the first long.
+     * @param source the array of the longs to write.
+     * @param offset the index in the array of the first long.
+     * @param count  the number of longs to write.
+     */
+    default void putLongs(long index, long[] source, int offset, int count) {
+        for (int i = 0; i < count; ++i) {
+            putLong(index + (long) i * Long.BYTES, source[offset + i]);
+        }
+    }
+
+    /**
+     * Lists the ranges of the backend which may hold bytes other than zero, in order. Backends override
+     * this to skip what they never allocated.
+     *
+     * @param consumer receives the ranges.
+     */
+    default void forEachAllocated(IRangeConsumer consumer) {
+        consumer.accept(0, size());
+    }
+
+    /**
+     * Sets every byte written since the previous clear back to zero.
+     *
+     * @param cleared receives the ranges which were cleared.
+     */
+    void clear(IRangeConsumer cleared);
+
+    /**
+     * Determines whether the backend can be forked.
+     *
+     * @return true if {@link IMemoryBackend#fork()} is supported, false otherwise.
+     */
+    default boolean canFork() {
+        return false;
+    }
+
+    /**
+     * Creates a copy of the backend which shares its storage copy-on-write: neither backend sees the
+     * other's later writes, and each copies only the parts it writes.
+     *
+     * @return the copy.
+     * @throws UnsupportedOperationException if the backend cannot be forked; see
+     *                                       {@link IMemoryBackend#canFork()}.
+     */
+    default IMemoryBackend fork() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot be forked");
+    }
+
+    /**
+     * Gets the number of bytes allocated on the heap when the backend was opened, which a memory
+     * starts from and returns to on reset. Backends which do not persist start with nothing allocated.
+     *
+     * @return the number of bytes initially allocated.
+     */
+    default long getInitialAllocation() {
+        return 0;
+    }
+
+    /**
+     * Writes the contents of the backend and the number of bytes allocated on the heap to the storage
+     * it persists to, if any. Backends which do not persist do nothing.
+     *
+     * @param allocated the number of bytes allocated on the heap.
+     */
+    default void force(long allocated) {
+    }
+
+    /**
+     * Releases the storage of the backend. The backend must not be used afterwards.
+     */
+    @Override
+    void close();
+
+}
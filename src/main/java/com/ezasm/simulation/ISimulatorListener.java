@@ -0,0 +1,18 @@
+package com.ezasm.simulation;
+
+/**
+ * Receives the changes made to a {@link Simulator}'s state. Listeners are registered with
+ * {@link Simulator#addListener(ISimulatorListener, java.util.concurrent.Executor)} and are called on
+ * their own executor, never on the simulating thread.
+ */
+public interface ISimulatorListener {
+
+    /**
+     * Called with the changes made since the previous call. If the listener falls behind the
+     * simulator, the changes of several steps are coalesced into one event.
+     *
+     * @param event the changes to the simulator's state.
+     */
+    void onChange(SimulatorEvent event);
+
+}
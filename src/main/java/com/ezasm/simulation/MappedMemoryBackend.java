@@ -0,0 +1,513 @@
+package com.ezasm.simulation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A memory backend mapped from a file, so its contents outlive the simulator and a file can be loaded
+ * as memory without copying it in. The file holds the bytes of the memory followed by the big-endian
+ * number of bytes allocated on the heap, and is grown to that length if it is shorter. The memory is
+ * mapped in segments of 1 GiB. Writes reach the file whenever the operating system writes the pages
+ * back; {@link MappedMemoryBackend#force(long)} makes sure they have, and stores the heap pointer.
+ * <p>
+ * Written pages of 4 KiB are tracked, and clearing zeroes those written since the previous clear as
+ * the other backends do, leaving the rest of the file as it was opened. Nothing is copied onto the
+ * Java heap for this, so a long run writing large parts of the file holds no copy of them. Segments
+ * which were viewed are left mapped on close until the garbage collector finds the views unreachable.
+ * <p>
+ * Forks are kept on the Java heap and read the pages they have not written from the file. Before this
+ * backend writes or clears a page which forks may still read from the file, it hands them a copy of
+ * the page, so they never see its later writes. Forks are not persisted.
+ */
+class MappedMemoryBackend implements IMemoryBackend {
+
+    private static final int SEGMENT_BITS = 30;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    // Never written, so it is shared by every cleared page of a fork until the page is written
+    private static final byte[] ZERO_PAGE = new byte[PAGE_SIZE];
+
+    /**
+     * The greatest number of bytes a mapped backend can hold.
+     */
+    static final long MAX_SIZE = (long) Integer.MAX_VALUE << PAGE_BITS;
+
+    private final long size;
+    private final FileChannel channel;
+    private MappedByteBuffer[] segments;
+    // The number of bytes allocated on the heap when the file was opened
+    private final long initialAllocation;
+    // Bit i is set if page i was written since the last clear
+    private final long[] dirty;
+    // Element i is set if segment i was handed out as a view, so it is not unmapped on close
+    private final boolean[] viewed;
+    // The forks of this backend, and bit i is set if page i may still be read from the file by one
+    private final List<Fork> forks = new ArrayList<>();
+    private final long[] shared;
+
+    /**
+     * Maps a file as a backend of the given size, creating the file if it does not exist. A file which
+     * is shorter than the memory and the heap pointer is grown with zeros.
+     *
+     * @param file the file to map.
+     * @param size the number of bytes in the backend.
+     * @throws IOException if the file could not be opened or mapped.
+     */
+    MappedMemoryBackend(Path file, long size) throws IOException {
+        if (size < 0 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Mapped memory cannot hold " + size + " bytes");
+        }
+        this.size = size;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < size + Long.BYTES) {
+                // Writing the last byte grows the file without writing the rest of it
+                channel.write(ByteBuffer.allocate(1), size + Long.BYTES - 1);
+            }
+            ByteBuffer allocation = ByteBuffer.allocate(Long.BYTES);
+            while (allocation.hasRemaining()) {
+                channel.read(allocation, size + allocation.position());
+            }
+            this.initialAllocation = allocation.getLong(0);
+            this.segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; ++i) {
+                long start = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.dirty = new long[(int) ((((size + PAGE_SIZE - 1) >>> PAGE_BITS) + Long.SIZE - 1) / Long.SIZE)];
+        this.viewed = new boolean[segments.length];
+        this.shared = new long[dirty.length];
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void read(long index, byte[] destination, int offset, int count) {
+        while (count > 0) {
+            int inSegment = (int) (index & (SEGMENT_SIZE - 1));
+            int length = Math.min(count, SEGMENT_SIZE - inSegment);
+            segments[(int) (index >>> SEGMENT_BITS)].get(inSegment, destination, offset, length);
+            index += length;
+            offset += length;
+            count -= length;
+        }
+    }
+
+    @Override
+    public void write(long index, byte[] source, int offset, int count) {
+        beforeWrite(index, count);
+        while (count > 0) {
+            int inSegment = (int) (index & (SEGMENT_SIZE - 1));
+            int length = Math.min(count, SEGMENT_SIZE - inSegment);
+            segments[(int) (index >>> SEGMENT_BITS)].put(inSegment, source, offset, length);
+            index += length;
+            offset += length;
+            count -= length;
+        }
+    }
+
+    /**
+     * Prepares the pages of a range to be written: hands them to the forks still reading them from
+     * the file, and marks them dirty.
+     *
+     * @param index the index of the first byte of the range.
+     * @param count the number of bytes in the range.
+     */
+    private void beforeWrite(long index, long count) {
+        if (count <= 0)
+            return;
+        int last = (int) ((index + count - 1) >>> PAGE_BITS);
+        for (int page = (int) (index >>> PAGE_BITS); page <= last; ++page) {
+            unshare(page);
+            dirty[page / Long.SIZE] |= 1L << page;
+        }
+    }
+
+    /**
+     * Hands a copy of a page to every fork which may still read it from the file.
+     *
+     * @param page the number of the page about to change.
+     */
+    private void unshare(int page) {
+        if ((shared[page / Long.SIZE] & (1L << page)) == 0)
+            return;
+        byte[] bytes = readPage(segments, size, page);
+        for (Fork fork : forks) {
+            fork.share(page, bytes);
+        }
+        shared[page / Long.SIZE] &= ~(1L << page);
+    }
+
+    /**
+     * Copies a page out of the mapped segments.
+     *
+     * @param segments the segments of the file.
+     * @param size     the number of bytes in the backend.
+     * @param page     the number of the page.
+     * @return a copy of the page, shorter than a page if it is the last one.
+     */
+    private static byte[] readPage(MappedByteBuffer[] segments, long size, int page) {
+        long start = (long) page << PAGE_BITS;
+        byte[] bytes = new byte[(int) Math.min(PAGE_SIZE, size - start)];
+        // Pages never cross a segment, as segments are a whole number of pages
+        segments[(int) (start >>> SEGMENT_BITS)].get((int) (start & (SEGMENT_SIZE - 1)), bytes);
+        return bytes;
+    }
+
+    @Override
+    public byte getByte(long index) {
+        return segments[(int) (index >>> SEGMENT_BITS)].get((int) (index & (SEGMENT_SIZE - 1)));
+    }
+
+    @Override
+    public ByteBuffer view(long index, int count) {
+        int inSegment = (int) (index & (SEGMENT_SIZE - 1));
+        if (inSegment > SEGMENT_SIZE - count) {
+            return IMemoryBackend.super.view(index, count);
+        }
+        int segment = (int) (index >>> SEGMENT_BITS);
+        viewed[segment] = true;
+        return segments[segment].slice(inSegment, count).asReadOnlyBuffer();
+    }
+
+    @Override
+    public long getLong(long index) {
+        int inSegment = (int) (index & (SEGMENT_SIZE - 1));
+        if (inSegment > SEGMENT_SIZE - Long.BYTES) {
+            return IMemoryBackend.super.getLong(index);
+        }
+        return segments[(int) (index >>> SEGMENT_BITS)].getLong(inSegment);
+    }
+
+    @Override
+    public void putLong(long index, long value) {
+        int inSegment = (int) (index & (SEGMENT_SIZE - 1));
+        if (inSegment > SEGMENT_SIZE - Long.BYTES) {
+            IMemoryBackend.super.putLong(index, value);
+            return;
+        }
+        beforeWrite(index, Long.BYTES);
+        segments[(int) (index >>> SEGMENT_BITS)].putLong(inSegment, value);
+    }
+
+    @Override
+    public int getInt(long index) {
+        int inSegment = (int) (index & (SEGMENT_SIZE - 1));
+        if (inSegment > SEGMENT_SIZE - Integer.BYTES) {
+            return IMemoryBackend.super.getInt(index);
+        }
+        return segments[(int) (index >>> SEGMENT_BITS)].getInt(inSegment);
+    }
+
+    @Override
+    public void putInt(long index, int value) {
+        int inSegment = (int) (index & (SEGMENT_SIZE - 1));
+        if (inSegment > SEGMENT_SIZE - Integer.BYTES) {
+            IMemoryBackend.super.putInt(index, value);
+            return;
+        }
+        beforeWrite(index, Integer.BYTES);
+        segments[(int) (index >>> SEGMENT_BITS)].putInt(inSegment, value);
+    }
+
+    /**
+     * Zeroes every page written since the previous clear.
+     *
+     * @param cleared receives the ranges which were cleared.
+     */
+    @Override
+    public void clear(IRangeConsumer cleared) {
+        for (int word = 0; word < dirty.length; ++word) {
+            for (long bits = dirty[word]; bits != 0; bits &= bits - 1) {
+                int page = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                long start = (long) page << PAGE_BITS;
+                int length = (int) Math.min(PAGE_SIZE, size - start);
+                unshare(page);
+                segments[(int) (start >>> SEGMENT_BITS)].put((int) (start & (SEGMENT_SIZE - 1)), ZERO_PAGE, 0,
+                        length);
+                cleared.accept(start, start + length);
+            }
+            dirty[word] = 0;
+        }
+    }
+
+    @Override
+    public long getInitialAllocation() {
+        return initialAllocation;
+    }
+
+    @Override
+    public boolean canFork() {
+        return true;
+    }
+
+    @Override
+    public IMemoryBackend fork() {
+        Fork fork = new Fork(this, new HashMap<>(), dirty.clone());
+        forks.add(fork);
+        Arrays.fill(shared, -1L);
+        return fork;
+    }
+
+    /**
+     * Stops handing pages to a fork which was closed.
+     *
+     * @param fork the fork.
+     */
+    private void release(Fork fork) {
+        forks.remove(fork);
+        if (forks.isEmpty()) {
+            Arrays.fill(shared, 0);
+        }
+    }
+
+    @Override
+    public void force(long allocated) {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        try {
+            ByteBuffer allocation = ByteBuffer.allocate(Long.BYTES).putLong(0, allocated);
+            while (allocation.hasRemaining()) {
+                channel.write(allocation, size + allocation.position());
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write the heap pointer to the memory file", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        MappedByteBuffer[] closed = segments;
+        segments = new MappedByteBuffer[0];
+        Arrays.fill(dirty, 0);
+        for (int segment = 0; segment < closed.length; ++segment) {
+            // Forks still read the pages they did not copy from the file
+            if (!viewed[segment] && forks.isEmpty()) {
+                DirectMemoryBackend.free(closed[segment]);
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Unable to close memory file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A fork of a mapped backend, holding the pages it has written or been handed on the Java heap and
+     * reading the rest from the file. Pages are shared between forks of the fork copy-on-write, and
+     * clearing zeroes the pages written since the previous clear, as it does for the mapped backend.
+     */
+    private static final class Fork implements IMemoryBackend {
+
+        private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class,
+                ByteOrder.BIG_ENDIAN);
+        private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class,
+                ByteOrder.BIG_ENDIAN);
+
+        private final MappedMemoryBackend file;
+        private final MappedByteBuffer[] segments;
+        // The pages which are not read from the file, of which those in owned belong to this fork alone
+        private final Map<Integer, byte[]> pages;
+        private final Set<Integer> owned = new HashSet<>();
+        // Bit i is set if page i was written since the last clear
+        private final long[] dirty;
+
+        private Fork(MappedMemoryBackend file, Map<Integer, byte[]> pages, long[] dirty) {
+            this.file = file;
+            this.segments = file.segments;
+            this.pages = pages;
+            this.dirty = dirty;
+        }
+
+        /**
+         * Receives a page about to change in the file, unless this fork already has it.
+         *
+         * @param page  the number of the page.
+         * @param bytes the bytes of the page, shared with other forks.
+         */
+        private void share(int page, byte[] bytes) {
+            pages.putIfAbsent(page, bytes);
+        }
+
+        @Override
+        public long size() {
+            return file.size;
+        }
+
+        @Override
+        public void read(long index, byte[] destination, int offset, int count) {
+            while (count > 0) {
+                int inPage = (int) (index & (PAGE_SIZE - 1));
+                int length = Math.min(count, PAGE_SIZE - inPage);
+                byte[] page = pages.get((int) (index >>> PAGE_BITS));
+                if (page == null) {
+                    segments[(int) (index >>> SEGMENT_BITS)].get((int) (index & (SEGMENT_SIZE - 1)), destination,
+                            offset, length);
+                } else {
+                    System.arraycopy(page, inPage, destination, offset, length);
+                }
+                index += length;
+                offset += length;
+                count -= length;
+            }
+        }
+
+        @Override
+        public void write(long index, byte[] source, int offset, int count) {
+            while (count > 0) {
+                int inPage = (int) (index & (PAGE_SIZE - 1));
+                int length = Math.min(count, PAGE_SIZE - inPage);
+                System.arraycopy(source, offset, writablePage((int) (index >>> PAGE_BITS)), inPage, length);
+                index += length;
+                offset += length;
+                count -= length;
+            }
+        }
+
+        @Override
+        public byte getByte(long index) {
+            byte[] page = pages.get((int) (index >>> PAGE_BITS));
+            return page == null ? segments[(int) (index >>> SEGMENT_BITS)].get((int) (index & (SEGMENT_SIZE - 1)))
+                    : page[(int) (index & (PAGE_SIZE - 1))];
+        }
+
+        @Override
+        public long getLong(long index) {
+            int inPage = (int) (index & (PAGE_SIZE - 1));
+            if (inPage > PAGE_SIZE - Long.BYTES) {
+                return IMemoryBackend.super.getLong(index);
+            }
+            byte[] page = pages.get((int) (index >>> PAGE_BITS));
+            return page == null ? segments[(int) (index >>> SEGMENT_BITS)].getLong((int) (index & (SEGMENT_SIZE - 1)))
+                    : (long) LONG.get(page, inPage);
+        }
+
+        @Override
+        public void putLong(long index, long value) {
+            int inPage = (int) (index & (PAGE_SIZE - 1));
+            if (inPage > PAGE_SIZE - Long.BYTES) {
+                IMemoryBackend.super.putLong(index, value);
+                return;
+            }
+            LONG.set(writablePage((int) (index >>> PAGE_BITS)), inPage, value);
+        }
+
+        @Override
+        public int getInt(long index) {
+            int inPage = (int) (index & (PAGE_SIZE - 1));
+            if (inPage > PAGE_SIZE - Integer.BYTES) {
+                return IMemoryBackend.super.getInt(index);
+            }
+            byte[] page = pages.get((int) (index >>> PAGE_BITS));
+            return page == null ? segments[(int) (index >>> SEGMENT_BITS)].getInt((int) (index & (SEGMENT_SIZE - 1)))
+                    : (int) INT.get(page, inPage);
+        }
+
+        @Override
+        public void putInt(long index, int value) {
+            int inPage = (int) (index & (PAGE_SIZE - 1));
+            if (inPage > PAGE_SIZE - Integer.BYTES) {
+                IMemoryBackend.super.putInt(index, value);
+                return;
+            }
+            INT.set(writablePage((int) (index >>> PAGE_BITS)), inPage, value);
+        }
+
+        /**
+         * Gets a page to write to, copying it if it is read from the file or shared, and marking it
+         * dirty.
+         *
+         * @param page the number of the page.
+         * @return the page.
+         */
+        private byte[] writablePage(int page) {
+            dirty[page / Long.SIZE] |= 1L << page;
+            if (owned.add(page)) {
+                pages.put(page, currentPage(page));
+            }
+            return pages.get(page);
+        }
+
+        /**
+         * Copies the current bytes of a page.
+         *
+         * @param page the number of the page.
+         * @return the copy.
+         */
+        private byte[] currentPage(int page) {
+            byte[] bytes = pages.get(page);
+            return bytes == null ? readPage(segments, file.size, page) : bytes.clone();
+        }
+
+        @Override
+        public void clear(IRangeConsumer cleared) {
+            for (int word = 0; word < dirty.length; ++word) {
+                for (long bits = dirty[word]; bits != 0; bits &= bits - 1) {
+                    int page = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                    // The zero page is shared, so it is copied on write
+                    pages.put(page, ZERO_PAGE);
+                    owned.remove(page);
+                    long start = (long) page << PAGE_BITS;
+                    cleared.accept(start, start + Math.min(PAGE_SIZE, file.size - start));
+                }
+                dirty[word] = 0;
+            }
+        }
+
+        @Override
+        public long getInitialAllocation() {
+            return file.initialAllocation;
+        }
+
+        @Override
+        public boolean canFork() {
+            return true;
+        }
+
+        @Override
+        public IMemoryBackend fork() {
+            Fork fork = new Fork(file, new HashMap<>(pages), dirty.clone());
+            // The pages this fork reads from the file are already handed to every fork before they change
+            file.forks.add(fork);
+            owned.clear();
+            return fork;
+        }
+
+        @Override
+        public void close() {
+            file.release(this);
+            pages.clear();
+            owned.clear();
+            Arrays.fill(dirty, 0);
+        }
+
+    }
+
+}
@@ -2,7 +2,12 @@ package com.ezasm.simulation;
 
 import com.ezasm.Conversion;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 /**
  * Represents the system memory. There will be a single and contiguous array of memory which
@@ -10,8 +15,15 @@ import java.util.Arrays;
  * Implements an "offset" for the address spacing to not start at 0. Keeps track of allocated memory
  * and throws an exception when the heap crosses the stack. Has a default size of 2^16 words (or
  * 2^19 bytes). Has a default word size of 8 bytes (the typical long integer or long float size).
+ * <p>
+ * Addresses are 64 bits wide. The bytes are stored in an {@link IMemoryBackend} which only allocates
+ * the parts of memory which are written, so untouched memory costs nothing and reads as zero, and a
+ * reset only clears what was written. Memories larger than
+ * {@link Memory#DIRECT_THRESHOLD} bytes are stored outside the Java heap and are freed when the
+ * memory is closed. Memory can also be mapped from a file by {@link Memory#mapFile(Path, int, long)}
+ * to keep its contents between runs.
  */
-public class Memory {
+public class Memory implements AutoCloseable {
 
     /**
      * The default number of words possible to store in the system.
@@ -23,24 +35,40 @@ public class Memory {
      */
     public static final int DEFAULT_WORD_SIZE = 8;
 
+    /**
+     * The number of bytes above which memory is stored outside the Java heap.
+     */
+    public static final long DIRECT_THRESHOLD = 1L << 26;
+
     /**
      * The offset applied to all output addresses.
      */
     private static final int OFFSET = 0x1_0000;
 
+    // The number of bytes copied at a time between memories
+    private static final int COPY_CHUNK = 1 << 16;
+
     public final int WORD_SIZE;
-    private final int MEMORY_SIZE;
-    private final byte[] memory;
-    private int alloc;
+    private final long MEMORY_SIZE;
+    private final IMemoryBackend backend;
+    private long alloc;
+
+    // The log recording the old bytes of every write, or null if steps are not recorded
+    private UndoLog undo;
+
+    // The ranges written since they were last taken, only recorded while someone listens for them. The
+    // list is only touched by the thread running the simulation; other threads only switch tracking
+    // and bump the generation, and the list is cleared when it is next used under a newer generation.
+    private volatile boolean trackWrites;
+    private volatile int trackGeneration;
+    private int writesGeneration;
+    private final List<SimulatorEvent.MemoryRange> writes = new ArrayList<>();
 
     /**
      * Constructs memory with the default parameters.
      */
     public Memory() {
-        this.WORD_SIZE = DEFAULT_WORD_SIZE;
-        this.MEMORY_SIZE = DEFAULT_MEMORY_WORDS * WORD_SIZE;
-        this.memory = new byte[MEMORY_SIZE];
-        this.alloc = 0;
+        this(DEFAULT_WORD_SIZE, DEFAULT_MEMORY_WORDS);
     }
 
     /**
@@ -48,28 +76,287 @@ public class Memory {
      *
      * @param wordSize   the word size in bytes.
      * @param memorySize the memory size in words.
+     * @throws IllegalArgumentException if the word size is not positive or the memory size is not
+     *                                  between one and {@link Memory#maxWords(int)}.
      */
-    public Memory(int wordSize, int memorySize) {
+    public Memory(int wordSize, long memorySize) {
+        this(wordSize, createBackend(wordSize, memorySize));
+    }
+
+    /**
+     * Constructs memory stored in the given backend.
+     *
+     * @param wordSize the word size in bytes.
+     * @param backend  the storage of the memory, whose size is the size of the memory.
+     */
+    public Memory(int wordSize, IMemoryBackend backend) {
         this.WORD_SIZE = wordSize;
-        this.MEMORY_SIZE = memorySize * this.WORD_SIZE;
-        this.memory = new byte[this.MEMORY_SIZE];
-        this.alloc = 0;
+        this.MEMORY_SIZE = backend.size();
+        this.backend = backend;
+        this.alloc = backend.getInitialAllocation();
+    }
+
+    /**
+     * Constructs memory mapped from a file, which is created if it does not exist and grown if it is
+     * too short. The memory starts with the contents and heap pointer stored in the file. A reset
+     * returns to that heap pointer and, as for other memory, zeroes the pages written since, leaving
+     * the rest of the file in place. Writes and the heap pointer are made durable by
+     * {@link Memory#force()} and on close.
+     *
+     * @param file       the file to map.
+     * @param wordSize   the word size in bytes.
+     * @param memorySize the memory size in words.
+     * @return the mapped memory.
+     * @throws IOException              if the file could not be opened or mapped.
+     * @throws IllegalArgumentException if the word size is not positive or the memory size is not
+     *                                  between one and {@link Memory#maxWords(int)}.
+     */
+    public static Memory mapFile(Path file, int wordSize, long memorySize) throws IOException {
+        checkSize(wordSize, memorySize);
+        return new Memory(wordSize, new MappedMemoryBackend(file, memorySize * wordSize));
+    }
+
+    /**
+     * Gets the greatest number of words a memory can hold.
+     *
+     * @param wordSize the word size in bytes.
+     * @return the greatest memory size in words.
+     */
+    public static long maxWords(int wordSize) {
+        return DirectMemoryBackend.MAX_SIZE / wordSize;
+    }
+
+    private static IMemoryBackend createBackend(int wordSize, long memorySize) {
+        checkSize(wordSize, memorySize);
+        long bytes = memorySize * wordSize;
+        return bytes > DIRECT_THRESHOLD ? new DirectMemoryBackend(bytes) : new HeapMemoryBackend(bytes);
+    }
+
+    private static void checkSize(int wordSize, long memorySize) {
+        if (wordSize <= 0) {
+            throw new IllegalArgumentException("Word size must be larger than 0");
+        }
+        if (memorySize <= 0 || memorySize > maxWords(wordSize)) {
+            throw new IllegalArgumentException(
+                    "Memory size must be between 1 and " + maxWords(wordSize) + " words of " + wordSize + " bytes");
+        }
     }
 
     /**
      * Resets the memory by setting all values to zero and returning the allocation pointer to zero.
+     * Only the parts of memory written since the previous reset are cleared. Memory mapped from a
+     * file returns to the heap pointer the file was opened with instead, and keeps the contents of
+     * the pages which were not written.
      */
     public void reset() {
-        Arrays.fill(memory, (byte) 0);
-        alloc = 0;
+        backend.clear((start, end) -> recordWrite(start, end - start));
+        alloc = backend.getInitialAllocation();
     }
 
     /**
-     * Gets the size of the memory as a number of words.
+     * Gets the storage of the memory.
      *
-     * @return the size of the memory as a number of words.
+     * @return the backend of the memory.
      */
-    public int size() {
+    IMemoryBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Gets the number of bytes allocated on the heap.
+     *
+     * @return the number of bytes allocated.
+     */
+    long getAllocated() {
+        return alloc;
+    }
+
+    /**
+     * Sets the number of bytes allocated on the heap.
+     *
+     * @param bytes the number of bytes allocated.
+     */
+    void setAllocated(long bytes) {
+        alloc = bytes;
+    }
+
+    /**
+     * Writes bytes at an index of the memory, as restored from a checkpoint.
+     *
+     * @param index  the index of the first byte to write.
+     * @param source the array to copy from.
+     * @param count  the number of bytes to copy.
+     */
+    void load(long index, byte[] source, int count) {
+        beforeWrite(index, count);
+        backend.write(index, source, 0, count);
+        recordWrite(index, count);
+    }
+
+    /**
+     * Replaces the contents and heap pointer of the memory with those of another memory of the same
+     * size, which is left unchanged. Only the ranges either memory allocated are copied, as the rest
+     * of both is zero.
+     *
+     * @param source the memory to copy.
+     */
+    void copyFrom(Memory source) {
+        List<long[]> ranges = new ArrayList<>();
+        backend.forEachAllocated((start, end) -> ranges.add(new long[] { start, end }));
+        source.backend.forEachAllocated((start, end) -> ranges.add(new long[] { start, end }));
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+        byte[] buffer = new byte[COPY_CHUNK];
+        // The end of the ranges copied so far, which the ranges of the two memories may overlap
+        long copied = 0;
+        for (long[] range : ranges) {
+            for (long index = Math.max(range[0], copied); index < range[1]; index += buffer.length) {
+                int length = (int) Math.min(buffer.length, range[1] - index);
+                source.backend.read(index, buffer, 0, length);
+                beforeWrite(index, length);
+                backend.write(index, buffer, 0, length);
+                recordWrite(index, length);
+            }
+            copied = Math.max(copied, range[1]);
+        }
+        alloc = source.alloc;
+    }
+
+    /**
+     * Determines whether the memory can be forked, which memory stored in a custom backend may not.
+     *
+     * @return true if {@link Memory#fork()} is supported, false otherwise.
+     */
+    public boolean canFork() {
+        return backend.canFork();
+    }
+
+    /**
+     * Creates a copy of the memory which shares its storage copy-on-write, so forking is cheap and each
+     * copy only allocates the pages it later writes. Neither memory sees the other's later writes. A
+     * copy of memory mapped from a file is kept on the heap and is not written to the file.
+     *
+     * @return the copy.
+     * @throws UnsupportedOperationException if the memory cannot be forked; see
+     *                                       {@link Memory#canFork()}.
+     */
+    public Memory fork() {
+        Memory copy = new Memory(WORD_SIZE, backend.fork());
+        copy.alloc = alloc;
+        return copy;
+    }
+
+    /**
+     * Writes the memory and its heap pointer to the file it is mapped from, if any. Mapped memory is
+     * not written through on every write, so this is called at the points its contents must survive a
+     * crash.
+     */
+    public void force() {
+        backend.force(alloc);
+    }
+
+    /**
+     * Releases the storage of the memory, first writing memory mapped from a file to it. The memory
+     * must not be used afterwards, and nothing may be reading it meanwhile; see
+     * {@link Simulator#close()}.
+     */
+    @Override
+    public void close() {
+        force();
+        backend.close();
+    }
+
+    /**
+     * Starts or stops recording the ranges of memory written. Either discards the recorded ranges. May
+     * be called from any thread.
+     *
+     * @param track true to record writes, false otherwise.
+     */
+    synchronized void setTrackWrites(boolean track) {
+        // The generation is bumped first, so a thread seeing the new state also sees the new generation
+        trackGeneration = trackGeneration + 1;
+        trackWrites = track;
+    }
+
+    /**
+     * Clears the recorded ranges if tracking was switched since they were recorded.
+     */
+    private void discardStaleWrites() {
+        int generation = trackGeneration;
+        if (generation != writesGeneration) {
+            writes.clear();
+            writesGeneration = generation;
+        }
+    }
+
+    /**
+     * Sets the log recording the old bytes of every write.
+     *
+     * @param undo the log, or null to stop recording.
+     */
+    void setUndoLog(UndoLog undo) {
+        this.undo = undo;
+    }
+
+    /**
+     * Records the old bytes of a range about to be written if an undo log is set.
+     *
+     * @param index the index of the first byte to be written.
+     * @param count the number of bytes to be written.
+     */
+    private void beforeWrite(long index, long count) {
+        if (undo != null) {
+            undo.recordMemory(backend, index, (int) Math.min(count, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Records a write if writes are tracked. A write which extends the previous one joins it.
+     *
+     * @param start  the index of the first byte written.
+     * @param length the number of bytes written.
+     */
+    private void recordWrite(long start, long length) {
+        if (!trackWrites || length <= 0)
+            return;
+        discardStaleWrites();
+        SimulatorEvent.MemoryRange range = new SimulatorEvent.MemoryRange(start + OFFSET, start + OFFSET + length);
+        if (!writes.isEmpty()) {
+            SimulatorEvent.MemoryRange last = writes.get(writes.size() - 1);
+            if (range.start() <= last.end() && range.end() >= last.start()) {
+                writes.set(writes.size() - 1, new SimulatorEvent.MemoryRange(Math.min(last.start(), range.start()),
+                        Math.max(last.end(), range.end())));
+                return;
+            }
+        }
+        writes.add(range);
+        if (writes.size() > SimulatorEvent.MAX_MEMORY_RANGES) {
+            List<SimulatorEvent.MemoryRange> normalized = SimulatorEvent.normalize(writes);
+            writes.clear();
+            writes.addAll(normalized);
+        }
+    }
+
+    /**
+     * Gets the ranges of memory written since they were last taken, and clears them. Must be called on
+     * the thread running the simulation.
+     *
+     * @return the normalized ranges written.
+     */
+    List<SimulatorEvent.MemoryRange> takeWrites() {
+        discardStaleWrites();
+        if (writes.isEmpty())
+            return List.of();
+        List<SimulatorEvent.MemoryRange> taken = SimulatorEvent.normalize(new ArrayList<>(writes));
+        writes.clear();
+        return taken;
+    }
+
+    /**
+     * Gets the size of the memory in bytes.
+     *
+     * @return the size of the memory in bytes.
+     */
+    public long size() {
         return MEMORY_SIZE;
     }
 
@@ -78,7 +365,7 @@ public class Memory {
      *
      * @return the initial stack pointer of the memory.
      */
-    public int initialStackPointer() {
+    public long initialStackPointer() {
         return MEMORY_SIZE + OFFSET;
     }
 
@@ -87,7 +374,7 @@ public class Memory {
      *
      * @return the initial heap pointer of the memory.
      */
-    public int initialHeapPointer() {
+    public long initialHeapPointer() {
         return 0 + OFFSET;
     }
 
@@ -96,7 +383,7 @@ public class Memory {
      *
      * @return the current heap pointer of the memory.
      */
-    public int currentHeapPointer() {
+    public long currentHeapPointer() {
         return alloc + OFFSET;
     }
 
@@ -108,13 +395,13 @@ public class Memory {
      * @param sp    the current stack pointer of the program.
      * @return the allocated memory starting point
      */
-    public int allocate(int bytes, int sp) {
+    public long allocate(long bytes, long sp) {
         if (alloc + bytes + OFFSET > sp) {
             // Error: Attempted to allocate onto the stack
             System.out.println("Error allocating");
             return 0;
         }
-        int addr = alloc;
+        long addr = alloc;
         alloc = alloc + bytes;
         return addr + OFFSET;
     }
@@ -125,8 +412,8 @@ public class Memory {
      * @param bytes the number of bytes to allocate.
      * @return the allocated memory starting point
      */
-    public int allocate(int bytes) {
-        int addr = alloc;
+    public long allocate(long bytes) {
+        long addr = alloc;
         alloc = alloc + bytes;
         return addr + OFFSET;
     }
@@ -138,7 +425,7 @@ public class Memory {
      * @param count   the number of bytes to read.
      * @return the information read from the memory at a certain address.
      */
-    public byte[] read(int address, int count) {
+    public byte[] read(long address, int count) {
         address = address - OFFSET;
         if (address < 0 || (address + count) >= this.MEMORY_SIZE) {
             // Error: address is out of bounds
@@ -146,7 +433,9 @@ public class Memory {
             return null;
         }
 
-        return Arrays.copyOfRange(memory, address, address + count);
+        byte[] bytes = new byte[count];
+        backend.read(address, bytes, 0, count);
+        return bytes;
     }
 
     /**
@@ -155,18 +444,144 @@ public class Memory {
      * @param address the address to begin to read from.
      * @return the long read from the memory at a certain address.
      */
-    public long readLong(int address) {
-        return Conversion.bytesToLong(read(address, WORD_SIZE));
+    public long readLong(long address) {
+        return getLong(address);
+    }
+
+    /**
+     * Determines whether a range of memory is out of bounds, printing an error if it is.
+     *
+     * @param index the index of the first byte of the range.
+     * @param count the number of bytes in the range.
+     * @return true if the range is out of bounds, false otherwise.
+     */
+    private boolean outOfBounds(long index, long count) {
+        if (index < 0 || (index + count) >= this.MEMORY_SIZE) {
+            System.out.println("Error: address is out of bounds with address " + (index + OFFSET));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the big-endian long at a certain address without allocating.
+     *
+     * @param address the address of the first byte of the long.
+     * @return the long read, or zero if the address is out of bounds.
+     */
+    public long getLong(long address) {
+        long index = address - OFFSET;
+        if (outOfBounds(index, Long.BYTES))
+            return 0;
+        return backend.getLong(index);
+    }
+
+    /**
+     * Writes a long in big-endian order at a certain address without allocating.
+     *
+     * @param address the address of the first byte of the long.
+     * @param value   the long to write.
+     */
+    public void putLong(long address, long value) {
+        long index = address - OFFSET;
+        if (outOfBounds(index, Long.BYTES))
+            return;
+        beforeWrite(index, Long.BYTES);
+        backend.putLong(index, value);
+        recordWrite(index, Long.BYTES);
+    }
+
+    /**
+     * Reads the big-endian int at a certain address without allocating.
+     *
+     * @param address the address of the first byte of the int.
+     * @return the int read, or zero if the address is out of bounds.
+     */
+    public int getInt(long address) {
+        long index = address - OFFSET;
+        if (outOfBounds(index, Integer.BYTES))
+            return 0;
+        return backend.getInt(index);
+    }
+
+    /**
+     * Writes an int in big-endian order at a certain address without allocating.
+     *
+     * @param address the address of the first byte of the int.
+     * @param value   the int to write.
+     */
+    public void putInt(long address, int value) {
+        long index = address - OFFSET;
+        if (outOfBounds(index, Integer.BYTES))
+            return;
+        beforeWrite(index, Integer.BYTES);
+        backend.putInt(index, value);
+        recordWrite(index, Integer.BYTES);
+    }
+
+    /**
+     * Reads the big-endian double at a certain address without allocating.
+     *
+     * @param address the address of the first byte of the double.
+     * @return the double read, or zero if the address is out of bounds.
+     */
+    public double getDouble(long address) {
+        return Double.longBitsToDouble(getLong(address));
     }
 
     /**
-     * Gets the information from the memory at a certain address interpreted as a String.
+     * Writes a double in big-endian order at a certain address without allocating.
+     *
+     * @param address the address of the first byte of the double.
+     * @param value   the double to write.
+     */
+    public void putDouble(long address, double value) {
+        putLong(address, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Reads consecutive big-endian longs starting at a certain address. Nothing is read if any of
+     * them is out of bounds.
+     *
+     * @param address     the address of the first byte of the first long.
+     * @param destination the array to read the longs into.
+     * @param offset      the index in the array of the first long.
+     * @param count       the number of longs to read.
+     */
+    public void readLongs(long address, long[] destination, int offset, int count) {
+        long index = address - OFFSET;
+        if (outOfBounds(index, (long) count * Long.BYTES))
+            return;
+        backend.getLongs(index, destination, offset, count);
+    }
+
+    /**
+     * Writes consecutive longs in big-endian order starting at a certain address. Nothing is written
+     * if any of them is out of bounds.
+     *
+     * @param address the address of the first byte of the first long.
+     * @param source  the array of the longs to write.
+     * @param offset  the index in the array of the first long.
+     * @param count   the number of longs to write.
+     */
+    public void writeLongs(long address, long[] source, int offset, int count) {
+        long index = address - OFFSET;
+        if (outOfBounds(index, (long) count * Long.BYTES))
+            return;
+        beforeWrite(index, (long) count * Long.BYTES);
+        backend.putLongs(index, source, offset, count);
+        recordWrite(index, (long) count * Long.BYTES);
+    }
+
+    /**
+     * Gets the information from the memory at a certain address interpreted as a String. The String
+     * ends before the first NUL byte, or after the maximum size.
      *
      * @param address the starting address to read from.
      * @param maxSize the maximum size of the String to be in bytes.
      * @return the String interpreted.
      */
-    public String readString(int address, int maxSize) {
+    public String readString(long address, int maxSize) {
         address = address - OFFSET;
         if (maxSize < 0) {
             System.out.println("Error: max string size cannot be less than zero");
@@ -177,14 +592,56 @@ public class Memory {
             return null;
         }
 
-        byte[] toString = new byte[maxSize];
+        byte[] toString = new byte[stringLength(address, maxSize)];
+        backend.read(address, toString, 0, toString.length);
+        return Conversion.bytesToString(toString);
+    }
+
+    /**
+     * Gets a live view of the NUL-terminated string at a certain address, without copying it. Each
+     * byte is one character; see {@link MemoryString}.
+     *
+     * @param address the starting address of the string.
+     * @param maxSize the maximum size of the string in bytes.
+     * @return a view of the string before the first NUL byte, or null if the address is out of bounds.
+     */
+    public CharSequence viewString(long address, int maxSize) {
+        long index = address - OFFSET;
+        if (maxSize < 0 || outOfBounds(index, maxSize))
+            return null;
+        return new MemoryString(backend, index, stringLength(index, maxSize));
+    }
+
+    /**
+     * Finds the length of a NUL-terminated string.
+     *
+     * @param index   the index of the first byte of the string.
+     * @param maxSize the maximum size of the string in bytes.
+     * @return the number of bytes before the first NUL byte, at most the maximum size.
+     */
+    private int stringLength(long index, int maxSize) {
         for (int i = 0; i < maxSize; ++i) {
-            toString[i] = memory[address + i];
-            if (memory[address + i] == '\0') {
-                break;
+            if (backend.getByte(index + i) == '\0') {
+                return i;
             }
         }
-        return Conversion.bytesToString(toString);
+        return maxSize;
+    }
+
+    /**
+     * Gets a read-only view of a range of memory. The view reads the memory in place when the range
+     * lies within one page of the backend, and is a copy otherwise. A view in place keeps seeing the
+     * memory's writes across forks and resets, and its storage is not freed while it is reachable.
+     *
+     * @param address the address to begin the view at.
+     * @param count   the number of bytes to view.
+     * @return a read-only buffer over the range, or null if the range is out of bounds.
+     */
+    public ByteBuffer view(long address, int count) {
+        long index = address - OFFSET;
+        if (count < 0 || outOfBounds(index, count))
+            return null;
+        return backend.view(index, count);
     }
 
     /**
@@ -193,14 +650,16 @@ public class Memory {
      * @param address the address to write at.
      * @param data    the data to write.
      */
-    public void write(int address, byte[] data) {
+    public void write(long address, byte[] data) {
         address = address - OFFSET;
         if (address < 0 || (address + data.length) >= this.MEMORY_SIZE) {
             // Error: address is out of bounds
             System.out.println("Error: address is out of bounds");
             return;
         }
-        System.arraycopy(data, 0, memory, address, data.length);
+        beforeWrite(address, data.length);
+        backend.write(address, data, 0, data.length);
+        recordWrite(address, data.length);
     }
 
     /**
@@ -209,8 +668,8 @@ public class Memory {
      * @param address the address to write at.
      * @param data    the long to write.
      */
-    public void writeLong(int address, long data) {
-        write(address, Conversion.longToBytes(data));
+    public void writeLong(long address, long data) {
+        putLong(address, data);
     }
 
     /**
@@ -220,25 +679,27 @@ public class Memory {
      * @param data    the String to write.
      * @param maxSize the maximum size of the String to be in bytes.
      */
-    public void writeString(int address, String data, int maxSize) {
+    public void writeString(long address, String data, int maxSize) {
         address = address - OFFSET;
         if (maxSize < 0) {
             System.out.println("Error: max string size cannot be less than zero");
             return;
         }
-        if (address < 0 || (address + data.getBytes().length) >= this.MEMORY_SIZE) {
+        byte[] bytes = Conversion.stringToBytes(data);
+        if (address < 0 || (address + bytes.length) >= this.MEMORY_SIZE) {
             // Error: address is out of bounds
             System.out.println("Error: address is out of bounds");
             return;
         }
 
-        for (int i = 0; i < data.getBytes().length && i < maxSize; ++i) {
-            memory[address + i] = data.getBytes()[i];
-        }
+        beforeWrite(address, Math.min(bytes.length, maxSize));
+        backend.write(address, bytes, 0, Math.min(bytes.length, maxSize));
 
-        if (maxSize <= data.getBytes().length) {
-            memory[address + maxSize] = '\0';
+        if (maxSize <= bytes.length) {
+            beforeWrite(address + maxSize, 1);
+            backend.write(address + maxSize, new byte[1], 0, 1);
         }
+        recordWrite(address, maxSize <= bytes.length ? maxSize + 1 : bytes.length);
     }
 
 }
@@ -0,0 +1,58 @@
+package com.ezasm.simulation;
+
+import com.ezasm.Conversion;
+
+/**
+ * A live view of a string in memory, reading each character from the memory's backend when it is
+ * asked for instead of copying the string out. Each byte is one character, as in every string the
+ * memory reads and writes; see {@link Conversion#bytesToString(byte[])}. The length of the view is
+ * fixed when it is created, so it does not follow a terminator written afterwards.
+ */
+final class MemoryString implements CharSequence {
+
+    private final IMemoryBackend backend;
+    private final long start;
+    private final int length;
+
+    /**
+     * Creates a view of a range of bytes.
+     *
+     * @param backend the backend holding the bytes.
+     * @param start   the index of the first byte.
+     * @param length  the number of bytes.
+     */
+    MemoryString(IMemoryBackend backend, long start, int length) {
+        this.backend = backend;
+        this.start = start;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+        return (char) (backend.getByte(start + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") out of bounds for length " + length);
+        }
+        return new MemoryString(backend, this.start + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length];
+        backend.read(start, bytes, 0, length);
+        return Conversion.bytesToString(bytes);
+    }
+
+}
@@ -12,6 +12,7 @@ public class Register {
 
     private final long number;
     private final byte[] data;
+    private final Registers owner;
 
     /**
      * Constructs a register given a reference number and the system word size.
@@ -20,8 +21,20 @@ public class Register {
      * @param wordSize the system word size in bytes.
      */
     public Register(long number, int wordSize) {
+        this(number, wordSize, null);
+    }
+
+    /**
+     * Constructs a register of a set of registers, which is told of every write to the register.
+     *
+     * @param number   the register's reference number.
+     * @param wordSize the system word size in bytes.
+     * @param owner    the registers the register belongs to, or null.
+     */
+    Register(long number, int wordSize, Registers owner) {
         this.number = number;
         this.data = new byte[wordSize];
+        this.owner = owner;
     }
 
     /**
@@ -66,8 +79,15 @@ public class Register {
      * @param data the new data to write.
      */
     public void setBytes(byte[] data) {
-        if (number != 0)
+        if (number != 0) {
+            if (owner != null) {
+                owner.beforeWrite((int) number, this.data);
+            }
             System.arraycopy(data, 0, this.data, 0, this.data.length);
+            if (owner != null) {
+                owner.markWritten((int) number);
+            }
+        }
     }
 
     /**
@@ -1,5 +1,7 @@
 package com.ezasm.simulation;
 
+import com.ezasm.parsing.NameTable;
+
 import java.util.*;
 
 /**
@@ -10,10 +12,16 @@ public class Registers {
 
     private static final int REGISTERS_COUNT = 32;
     private static final int FP_REGISTERS_COUNT = 22;
-    private static final int TOTAL_REGISTERS = REGISTERS_COUNT + FP_REGISTERS_COUNT;
+    public static final int TOTAL_REGISTERS = REGISTERS_COUNT + FP_REGISTERS_COUNT;
 
     private final Register[] registers;
 
+    // The mask of the registers written since the mask was last taken
+    private long written;
+
+    // The log recording the old value of every register written, or null if steps are not recorded
+    private UndoLog undo;
+
     // Base registers
     public static final String ZERO = "ZERO";
     public static final String PC = "PC";
@@ -77,17 +85,18 @@ public class Registers {
     public static final String FLO = "FLO";
     public static final String FHI = "FHI";
 
-    private static Map<String, Integer> registerByString;
-    private static Map<Integer, String> registerByInt;
+    /*
+     * The register mappings are only written while the class is initialized, so they never change
+     * afterwards and are safely published to every thread without locking.
+     */
+    private static final String[] registerByInt = new String[TOTAL_REGISTERS];
+    private static final NameTable registerByName;
     private static final int FLOAT_OFFSET = REGISTERS_COUNT;
 
     /**
-     * Initialization function for the registers. Creates both mapping of register number to String and
-     * vice-versa.
+     * Initialization function for the registers. Creates the mapping of register number to String.
      */
     private static void init() {
-        registerByString = new HashMap<>(TOTAL_REGISTERS);
-        registerByInt = new HashMap<>(TOTAL_REGISTERS);
         addRegister(ZERO, 0);
         addRegister(PC, 1);
         addRegister(SP, 2);
@@ -156,6 +165,13 @@ public class Registers {
      */
     static {
         init();
+        Map<String, Integer> registerByString = new HashMap<>(TOTAL_REGISTERS);
+        for (int number = 0; number < TOTAL_REGISTERS; ++number) {
+            if (registerByInt[number] != null) {
+                registerByString.put(registerByInt[number], number);
+            }
+        }
+        registerByName = new NameTable(registerByString);
     }
 
     /**
@@ -166,8 +182,7 @@ public class Registers {
      */
     private static void addRegister(String name, int number) {
         assert number < TOTAL_REGISTERS && number >= 0;
-        registerByString.put(name.toLowerCase(), number);
-        registerByInt.put(number, name.toLowerCase());
+        registerByInt[number] = name.toLowerCase();
     }
 
     /**
@@ -181,16 +196,8 @@ public class Registers {
     public static boolean isRegister(String register) {
         if (register == null || register.length() < 1)
             return false;
-        if (register.charAt(0) == '$')
-            register = register.substring(1);
-        if (registerByString.containsKey(register.toLowerCase()))
-            return true;
-        try {
-            int attempt = Integer.parseInt(register);
-            return isRegister(attempt);
-        } catch (Exception ignored) {
-        }
-        return false;
+        int start = register.charAt(0) == '$' ? 1 : 0;
+        return findRegister(register, start, register.length()) >= 0;
     }
 
     /**
@@ -200,7 +207,7 @@ public class Registers {
      * @return true if the register is valid, false otherwise.
      */
     public static boolean isRegister(int register) {
-        return registerByInt.containsKey(register);
+        return register >= 0 && register < TOTAL_REGISTERS && registerByInt[register] != null;
     }
 
     /**
@@ -210,24 +217,53 @@ public class Registers {
      * @return the register number found.
      */
     public static int getRegisterNumber(String register) {
-        if (register.charAt(0) == '$')
-            register = register.substring(1);
-        register = register.toLowerCase();
-        if (!isRegister(register)) {
+        int start = register.charAt(0) == '$' ? 1 : 0;
+        int number = findRegister(register, start, register.length());
+        if (number < 0) {
             // TODO add appropriate exception
             throw new RuntimeException();
         }
-        try {
-            int attempt = Integer.parseInt(register);
-            if (isRegister(attempt)) {
-                return attempt;
-            } else {
-                // TODO add appropriate exception
-                throw new RuntimeException();
-            }
-        } catch (Exception ignored) {
+        return number;
+    }
+
+    /**
+     * Gets the register number of a register token, which is a register name or number preceded by a
+     * '$'.
+     *
+     * @param token the token String in question.
+     * @return the register number, or -1 if the token is not a register.
+     */
+    public static int parseRegisterToken(String token) {
+        if (token.length() < 2 || token.charAt(0) != '$')
+            return -1;
+        return findRegister(token, 1, token.length());
+    }
+
+    /**
+     * Finds the register named by a span of text, which is either a register name in any case or a
+     * register number, without a leading '$'. The text is matched in place without allocating.
+     *
+     * @param text  the text containing the register.
+     * @param start the index of the first character of the register.
+     * @param end   the index after the last character of the register.
+     * @return the register number, or -1 if the span does not name a register.
+     */
+    public static int findRegister(CharSequence text, int start, int end) {
+        if (start >= end)
+            return -1;
+        int number = registerByName.get(text, start, end);
+        if (number >= 0)
+            return number;
+        number = 0;
+        for (int i = start; i < end; ++i) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            number = number * 10 + (c - '0');
+            if (number >= TOTAL_REGISTERS)
+                return -1;
         }
-        return registerByString.get(register);
+        return isRegister(number) ? number : -1;
     }
 
     /**
@@ -241,7 +277,7 @@ public class Registers {
             // TODO add appropriate exception
             throw new RuntimeException();
         }
-        return registerByInt.get(register);
+        return registerByInt[register];
     }
 
     /**
@@ -251,17 +287,75 @@ public class Registers {
      */
     public Registers(int wordSize) {
         registers = new Register[TOTAL_REGISTERS];
-        for (Integer i : registerByInt.keySet()) {
-            registers[i] = new Register(i, wordSize);
+        for (int i = 0; i < TOTAL_REGISTERS; ++i) {
+            if (isRegister(i)) {
+                registers[i] = new Register(i, wordSize, this);
+            }
         }
     }
 
+    /**
+     * Sets the log recording the old value of every register written.
+     *
+     * @param undo the log, or null to stop recording.
+     */
+    void setUndoLog(UndoLog undo) {
+        this.undo = undo;
+    }
+
+    /**
+     * Records the old value of a register about to be written if an undo log is set.
+     *
+     * @param register the register's reference number.
+     * @param old      the bytes of the register, which are copied.
+     */
+    void beforeWrite(int register, byte[] old) {
+        if (undo != null) {
+            undo.recordRegister(register, old);
+        }
+    }
+
+    /**
+     * Marks a register as written.
+     *
+     * @param register the register's reference number.
+     */
+    void markWritten(int register) {
+        written |= 1L << register;
+    }
+
+    /**
+     * Gets the mask of the registers written since the mask was last taken, and clears it.
+     *
+     * @return the mask of the registers written; bit i is set if register i was written.
+     */
+    long takeWritten() {
+        long mask = written;
+        written = 0;
+        return mask;
+    }
+
     /**
      * Sets the values of all bytes of all registers to zero.
      */
     public void reset() {
-        for (Integer i : registerByInt.keySet()) {
-            registers[i].setLong(0);
+        for (Register register : registers) {
+            if (register != null) {
+                register.setLong(0);
+            }
+        }
+    }
+
+    /**
+     * Sets the values of all registers to those of other registers of the same word size.
+     *
+     * @param source the registers to copy.
+     */
+    void copyFrom(Registers source) {
+        for (int i = 0; i < registers.length; ++i) {
+            if (registers[i] != null) {
+                registers[i].setBytes(source.registers[i].getBytes());
+            }
         }
     }
 
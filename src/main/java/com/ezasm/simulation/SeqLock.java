@@ -0,0 +1,92 @@
+package com.ezasm.simulation;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.Supplier;
+
+/**
+ * A sequence lock publishing state written by a single thread to any number of reading threads. The
+ * writer never waits: it makes the sequence odd before writing and even again afterwards. A reader
+ * copies the state and keeps the copy only if the sequence was even and unchanged throughout,
+ * retrying otherwise, so it never observes a partial write.
+ * <p>
+ * Readers may see the state while it is being written, so reading must not fail on inconsistent
+ * data; the inconsistent copy is then discarded. Before freeing storage that readers may be copying,
+ * the writer waits for them with {@link SeqLock#awaitReaders()}; this is the only time it waits.
+ */
+final class SeqLock {
+
+    private static final VarHandle SEQUENCE;
+    private static final VarHandle READERS;
+
+    static {
+        try {
+            SEQUENCE = MethodHandles.lookup().findVarHandle(SeqLock.class, "sequence", long.class);
+            READERS = MethodHandles.lookup().findVarHandle(SeqLock.class, "readers", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Odd while the writer is writing. Only the writer modifies it.
+    private long sequence;
+    // The number of readers copying the state
+    private int readers;
+
+    /**
+     * Marks the start of a write. Must only be called by the writing thread, and not again before
+     * {@link SeqLock#endWrite()}.
+     */
+    void beginWrite() {
+        SEQUENCE.setOpaque(this, sequence + 1);
+        // The odd sequence must be visible before any of the writes
+        VarHandle.storeStoreFence();
+    }
+
+    /**
+     * Marks the end of a write, publishing everything written since {@link SeqLock#beginWrite()}.
+     */
+    void endWrite() {
+        SEQUENCE.setRelease(this, sequence + 1);
+    }
+
+    /**
+     * Waits until no reader is copying the state. Must only be called by the writing thread between
+     * {@link SeqLock#beginWrite()} and {@link SeqLock#endWrite()}, before freeing storage which readers
+     * may be copying; readers starting afterwards wait for the write to end.
+     */
+    void awaitReaders() {
+        // Orders the odd sequence before the count, as each reader orders its count before the sequence
+        VarHandle.fullFence();
+        while ((int) READERS.getVolatile(this) != 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Reads a consistent copy of the state.
+     *
+     * @param reader copies the state; called again whenever a copy was inconsistent.
+     * @param <T>    the type of the copy.
+     * @return a copy made while nothing was written.
+     */
+    <T> T read(Supplier<T> reader) {
+        while (true) {
+            READERS.getAndAdd(this, 1);
+            try {
+                long before = (long) SEQUENCE.getVolatile(this);
+                if ((before & 1) == 0) {
+                    T copy = reader.get();
+                    // The copy must be complete before the sequence is checked again
+                    VarHandle.loadLoadFence();
+                    if ((long) SEQUENCE.getOpaque(this) == before)
+                        return copy;
+                }
+            } finally {
+                READERS.getAndAdd(this, -1);
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+}
@@ -24,6 +24,11 @@ public class SimulationThread {
      */
     public static final int SLEEP_INTERVAL = 20;
 
+    /**
+     * The command line interface command which undoes lines, optionally followed by how many.
+     */
+    public static final String STEP_BACK_COMMAND = ":back";
+
     /**
      * Constructs a simulation thread based on the given simulator.
      *
@@ -68,6 +73,16 @@ public class SimulationThread {
         paused.set(true);
     }
 
+    /**
+     * Determines whether the current thread's execution is paused, either by
+     * {@link SimulationThread#pause()} or by reaching a breakpoint.
+     *
+     * @return true if paused, false otherwise.
+     */
+    public boolean isPaused() {
+        return paused.get();
+    }
+
     /**
      * Resumes the current thread's execution.
      */
@@ -138,7 +153,12 @@ public class SimulationThread {
         System.out.print("> ");
         while (scanner.hasNextLine() && !Thread.interrupted()) {
             try {
-                simulator.executeLine(scanner.nextLine());
+                String line = scanner.nextLine();
+                if (line.strip().startsWith(STEP_BACK_COMMAND)) {
+                    stepBack(line.strip().substring(STEP_BACK_COMMAND.length()).strip());
+                } else {
+                    simulator.executeLine(line);
+                }
             } catch (ParseException e) {
                 System.err.println(e.getMessage());
                 System.err.flush();
@@ -152,6 +172,23 @@ public class SimulationThread {
         }
     }
 
+    /**
+     * Undoes lines executed from the command line interface.
+     *
+     * @param count the number of lines to undo, or an empty String to undo one.
+     */
+    private void stepBack(String count) {
+        long steps;
+        try {
+            steps = count.isEmpty() ? 1 : Long.parseLong(count);
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: " + STEP_BACK_COMMAND + " [lines]");
+            return;
+        }
+        long undone = simulator.stepBack(steps);
+        System.out.println("Undid " + undone + (undone == 1 ? " line" : " lines"));
+    }
+
     /**
      * Sets the callback function of the current thread to the given function. Only activates the
      * callback function on the termination of the next thread; no subsequent threads will use this
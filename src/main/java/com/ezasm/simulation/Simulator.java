@@ -1,39 +1,106 @@
 package com.ezasm.simulation;
 
-import com.ezasm.gui.Window;
+import com.ezasm.instructions.IInstructionVariant;
 import com.ezasm.instructions.InstructionDispatcher;
 import com.ezasm.instructions.exception.InstructionDispatchException;
+import com.ezasm.parsing.ArrayProgram;
+import com.ezasm.parsing.LexedChunk;
 import com.ezasm.parsing.Lexer;
 import com.ezasm.parsing.Line;
 import com.ezasm.parsing.ParseException;
+import com.ezasm.parsing.Program;
+import com.ezasm.parsing.ProgramCache;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * The main controller class. Manages the memory, registers, and lines.
+ * The main controller class. Manages the memory, registers, and lines. Changes to the simulator's
+ * state are reported to {@link ISimulatorListener}s after every step; nothing is collected while no
+ * listener is registered.
+ * <p>
+ * The simulator is written by one thread at a time. Other threads, such as viewers, read consistent
+ * copies of the registers and memory through {@link Simulator#readRegisters()} and
+ * {@link Simulator#readMemory(long, int)}, which never make the writing thread wait.
  */
-public class Simulator {
+public class Simulator implements AutoCloseable {
 
     private final Memory memory;
     private final Registers registers;
     private final InstructionDispatcher instructionDispatcher;
     private final Register pc;
 
-    private final List<Line> lines;
-    private final Map<String, Integer> labels;
+    // The loaded program. A shared program, such as one taken from the ProgramCache or mapped from a
+    // precompiled file, is copied before it is modified.
+    private ArrayProgram program = new ArrayProgram();
+    private boolean programShared;
+
+    // The log of the latest steps' side effects, or null if steps cannot be undone
+    private UndoLog undo;
+
+    // The condition of the breakpoint on each line number, and the breakpoints compiled against the
+    // program, which the run loop reads before every line
+    private final Map<Integer, IBreakpointCondition> breakpointLines = new ConcurrentHashMap<>();
+    private volatile Breakpoints breakpoints = Breakpoints.NONE;
 
     // The delay in ms before the next instruction is read
     private long delayMS = 50L;
 
+    // Published around every step so other threads can read consistent copies of the state
+    private final SeqLock stateLock = new SeqLock();
+
+    // The listeners of the simulator's state, and the run state reported to them
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private SimulatorEvent.RunState runState = SimulatorEvent.RunState.IDLE;
+    private boolean runStateChanged;
+
+    /**
+     * A listener along with the executor it is called on. Events published while the listener has not
+     * received the previous one are coalesced with it, and the listener is never called concurrently.
+     */
+    private static final class Subscription {
+
+        private final ISimulatorListener listener;
+        private final Executor executor;
+        private final AtomicReference<SimulatorEvent> pending = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Subscription(ISimulatorListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        private void deliver(SimulatorEvent event) {
+            pending.accumulateAndGet(event, (older, newer) -> older == null ? newer : older.merge(newer));
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                SimulatorEvent event = pending.getAndSet(null);
+                if (event != null) {
+                    listener.onChange(event);
+                }
+                scheduled.set(false);
+                // An event published after the last take must not wait for the next one
+            } while (pending.get() != null && scheduled.compareAndSet(false, true));
+        }
+    }
+
     /**
      * Constructs a Simulator with the default specifications.
      */
     public Simulator() {
         this.memory = new Memory();
         this.registers = new Registers(this.memory.WORD_SIZE);
-        this.lines = new ArrayList<>();
-        this.labels = new HashMap<>();
         pc = registers.getRegister(Registers.PC);
         instructionDispatcher = new InstructionDispatcher(this);
     }
@@ -44,11 +111,19 @@ public class Simulator {
      * @param wordSize   the size of words in bytes for the program.
      * @param memorySize the size of the memory in words for the program.
      */
-    public Simulator(int wordSize, int memorySize, long delay) {
-        this.memory = new Memory(wordSize, memorySize);
-        this.registers = new Registers(wordSize);
-        this.lines = new ArrayList<>();
-        this.labels = new HashMap<>();
+    public Simulator(int wordSize, long memorySize, long delay) {
+        this(new Memory(wordSize, memorySize), delay);
+    }
+
+    /**
+     * Constructs a Simulator over the given memory, such as memory mapped from a file.
+     *
+     * @param memory the memory for the program, whose word size the registers take.
+     * @param delay  amount of time in milliseconds to wait between instructions.
+     */
+    public Simulator(Memory memory, long delay) {
+        this.memory = memory;
+        this.registers = new Registers(memory.WORD_SIZE);
         this.delayMS = delay;
         pc = registers.getRegister(Registers.PC);
         instructionDispatcher = new InstructionDispatcher(this);
@@ -67,17 +142,107 @@ public class Simulator {
      * Resets the contents of memory and registers.
      */
     public void resetMemory() {
-        memory.reset();
-        registers.reset();
+        stateLock.beginWrite();
+        try {
+            memory.reset();
+            registers.reset();
+            if (undo != null) {
+                undo.clear();
+            }
+        } finally {
+            stateLock.endWrite();
+        }
+        setRunState(SimulatorEvent.RunState.IDLE);
+        publishChanges();
     }
 
     /**
      * Resets the contents of memory and registers as well as stored lines and labels.
      */
     public void resetAll() {
+        program = new ArrayProgram();
+        programShared = false;
         resetMemory();
-        lines.clear();
-        labels.clear();
+    }
+
+    /**
+     * Registers a listener of the simulator's state. The listener is called on the given executor
+     * with the changes made after it was registered, such as
+     * <code>SwingUtilities::invokeLater</code> for a Swing interface. Its first event may also report
+     * registers written before, with their current values. May be called from any thread.
+     *
+     * @param listener the listener to register.
+     * @param executor the executor to call the listener on.
+     */
+    public void addListener(ISimulatorListener listener, Executor executor) {
+        synchronized (subscriptions) {
+            if (subscriptions.isEmpty()) {
+                memory.setTrackWrites(true);
+            }
+            subscriptions.add(new Subscription(listener, executor));
+        }
+    }
+
+    /**
+     * Unregisters a listener of the simulator's state. Events already published may still be delivered
+     * to it. May be called from any thread.
+     *
+     * @param listener the listener to unregister.
+     */
+    public void removeListener(ISimulatorListener listener) {
+        synchronized (subscriptions) {
+            subscriptions.removeIf(subscription -> subscription.listener == listener);
+            if (subscriptions.isEmpty()) {
+                memory.setTrackWrites(false);
+            }
+        }
+    }
+
+    /**
+     * Sets the run state reported to listeners.
+     *
+     * @param state the new run state.
+     */
+    private void setRunState(SimulatorEvent.RunState state) {
+        if (state != runState) {
+            runState = state;
+            runStateChanged = true;
+        }
+    }
+
+    /**
+     * Gets the run state of a simulator which is not running.
+     *
+     * @return the run state according to the PC.
+     */
+    private SimulatorEvent.RunState stoppedState() {
+        if (isErrored())
+            return SimulatorEvent.RunState.ERRORED;
+        return isDone() ? SimulatorEvent.RunState.DONE : SimulatorEvent.RunState.IDLE;
+    }
+
+    /**
+     * Publishes the changes made since the previous call to every listener. The values of the written
+     * registers are copied into the event, so listeners never read registers while they are written.
+     */
+    private void publishChanges() {
+        if (subscriptions.isEmpty())
+            return;
+        long written = registers.takeWritten();
+        List<SimulatorEvent.MemoryRange> memoryWrites = memory.takeWrites();
+        if (written == 0 && memoryWrites.isEmpty() && !runStateChanged)
+            return;
+        long[] values = new long[Registers.TOTAL_REGISTERS];
+        for (int i = 0; i < values.length; ++i) {
+            if ((written & (1L << i)) != 0) {
+                values[i] = registers.getRegister(i).getLong();
+            }
+        }
+        SimulatorEvent event = new SimulatorEvent(written, values, memoryWrites, runState, runStateChanged);
+        runStateChanged = false;
+        for (Subscription subscription : subscriptions) {
+            subscription.deliver(event);
+        }
     }
 
     /**
@@ -88,7 +253,7 @@ public class Simulator {
      *         otherwise.
      */
     public boolean isDone() {
-        return pc.getLong() == lines.size();
+        return pc.getLong() == program.size();
     }
 
     /**
@@ -98,7 +263,7 @@ public class Simulator {
      */
     public boolean isErrored() {
         long line = pc.getLong();
-        return line > lines.size() || line < 0;
+        return line > program.size() || line < 0;
     }
 
     /**
@@ -109,19 +274,84 @@ public class Simulator {
      * @throws ParseException if there is an error parsing the line.
      */
     public Line readLine(String line) throws ParseException {
-        Line lexed = Lexer.parseLine(line, labels, lines.size());
-        lines.add(lexed);
+        ArrayProgram editable = editableProgram();
+        int number = editable.size();
+        Line lexed = Lexer.parseLine(line, editable.getLabels(), number);
+        editable.add(lexed, number);
         return lexed;
     }
 
     /**
-     * Parses the given text as a multi-line String. Then adds those lines to the program.
+     * Parses the given text as a multi-line String. Then adds those lines to the program. Programs
+     * which have been parsed before are taken from the shared {@link ProgramCache} without lexing.
      *
      * @param content the multi-line string to parse.
      * @throws ParseException if there was an error in parsing any line.
      */
     public void readMultiLineString(String content) throws ParseException {
-        lines.addAll(Lexer.parseLines(content, labels));
+        loadProgram(ProgramCache.getShared().parse(content));
+    }
+
+    /**
+     * Links already lexed chunks of text into the program in order. Labels are rebased onto the
+     * position of each chunk within the program.
+     *
+     * @param chunks the lexed chunks of the program text in order.
+     * @throws ParseException if any chunk contained an error or a label was declared twice.
+     */
+    public void readLexedChunks(List<LexedChunk> chunks) throws ParseException {
+        loadProgram(ArrayProgram.link(chunks));
+    }
+
+    /**
+     * Parses the file at the given path and adds its lines to the program. Files which have been
+     * parsed before are taken from the shared {@link ProgramCache} without lexing; others are streamed
+     * rather than read into memory as a whole.
+     *
+     * @param path the path of the file to parse.
+     * @throws ParseException if there was an error in parsing any line.
+     * @throws IOException    if the file could not be read.
+     */
+    public void readFile(Path path) throws ParseException, IOException {
+        loadProgram(ProgramCache.getShared().parseFile(path));
+    }
+
+    /**
+     * Adds the lines and labels of an already lexed program to the program. If no program is loaded
+     * yet, the given program is used as it is and is only copied once it needs to be modified.
+     *
+     * @param loaded the lexed program to add.
+     * @throws ParseException if one of the program's labels has already been declared.
+     */
+    public void loadProgram(Program loaded) throws ParseException {
+        if (program.isEmpty() && loaded instanceof ArrayProgram array) {
+            program = array;
+            programShared = true;
+        } else {
+            editableProgram().addAll(loaded);
+        }
+    }
+
+    /**
+     * Gets the loaded program.
+     *
+     * @return the loaded program, which must not be modified.
+     */
+    public Program getProgram() {
+        return program;
+    }
+
+    /**
+     * Gets the loaded program in a form which may be modified, copying it first if it is shared.
+     *
+     * @return the modifiable program.
+     */
+    private ArrayProgram editableProgram() {
+        if (programShared) {
+            program = ArrayProgram.copyOf(program);
+            programShared = false;
+        }
+        return program;
     }
 
     /**
@@ -131,16 +361,206 @@ public class Simulator {
      * @throws ParseException if there is an error executing the line.
      */
     public void executeLine(Line line) throws ParseException {
+        stateLock.beginWrite();
+        try {
+            beginStep();
+            dispatch(line);
+        } finally {
+            stateLock.endWrite();
+        }
+        publishChanges();
+    }
+
+    /**
+     * Marks the start of a step in the undo log, if steps are recorded.
+     */
+    private void beginStep() {
+        if (undo != null) {
+            undo.beginStep();
+        }
+    }
+
+    /**
+     * Enables or disables recording the side effects of each step so the steps can be undone with
+     * {@link Simulator#stepBack(long)}. While disabled nothing is recorded. Must be called between steps
+     * by the thread running the simulator.
+     *
+     * @param enabled true to record steps, false to stop recording them and forget those recorded.
+     */
+    public void setUndoEnabled(boolean enabled) {
+        if (enabled == (undo != null))
+            return;
+        if (undo != null) {
+            undo.clear();
+        }
+        undo = enabled ? new UndoLog(registers, memory, UndoLog.DEFAULT_ENTRIES, UndoLog.DEFAULT_BYTES) : null;
+        registers.setUndoLog(undo);
+        memory.setUndoLog(undo);
+    }
+
+    /**
+     * Determines whether the side effects of each step are recorded.
+     *
+     * @return true if steps can be undone, false otherwise.
+     */
+    public boolean isUndoEnabled() {
+        return undo != null;
+    }
+
+    /**
+     * Gets the number of the latest steps which can be undone.
+     *
+     * @return the number of steps which can be undone, zero if steps are not recorded.
+     */
+    public long getUndoableSteps() {
+        return undo == null ? 0 : undo.steps();
+    }
+
+    /**
+     * Undoes the latest steps, returning the registers and memory to their state before them. The log
+     * is bounded, so only the latest steps are held. Must be called between steps by the thread
+     * running the simulator.
+     *
+     * @param steps the number of steps to undo.
+     * @return the number of steps undone, fewer than asked if fewer are held.
+     */
+    public long stepBack(long steps) {
+        if (undo == null)
+            return 0;
+        long undone;
+        stateLock.beginWrite();
+        try {
+            undone = undo.undo(steps);
+        } finally {
+            stateLock.endWrite();
+        }
+        setRunState(stoppedState());
+        publishChanges();
+        return undone;
+    }
+
+    /**
+     * Compiles the text of a breakpoint condition against the simulator's registers. A condition
+     * compares two operands, each a register or a literal, with one of
+     * <code>== != &lt; &lt;= &gt; &gt;=</code>, such as <code>$t0 &gt; 100</code>.
+     *
+     * @param condition the text of the condition.
+     * @return the compiled condition.
+     * @throws ParseException if the condition cannot be parsed.
+     */
+    public IBreakpointCondition compileCondition(String condition) throws ParseException {
+        return Breakpoints.compileCondition(condition, registers);
+    }
+
+    /**
+     * Sets a breakpoint on a line number, replacing any breakpoint already on it. A running program
+     * pauses before executing a line of code lexed from the line number if the condition holds. May be
+     * called from any thread, including while the program runs.
+     *
+     * @param line      the line number of the statement to break on, as given by
+     *                  {@link Program#getLineNumber(int)}.
+     * @param condition the text of the condition, or null or blank to always break.
+     * @throws ParseException if the condition cannot be parsed.
+     */
+    public void setBreakpoint(int line, String condition) throws ParseException {
+        setBreakpoint(line, condition == null || condition.isBlank() ? IBreakpointCondition.ALWAYS
+                : compileCondition(condition));
+    }
+
+    /**
+     * Sets a breakpoint with a compiled condition on a line number, replacing any breakpoint already
+     * on it. May be called from any thread, including while the program runs.
+     *
+     * @param line      the line number of the statement to break on.
+     * @param condition the condition, tested on the thread running the program.
+     */
+    public void setBreakpoint(int line, IBreakpointCondition condition) {
+        breakpointLines.put(line, Objects.requireNonNull(condition));
+        compileBreakpoints(true);
+    }
+
+    /**
+     * Clears the breakpoint on a line number, if there is one.
+     *
+     * @param line the line number of the breakpoint.
+     */
+    public void clearBreakpoint(int line) {
+        if (breakpointLines.remove(line) != null) {
+            compileBreakpoints(true);
+        }
+    }
+
+    /**
+     * Clears every breakpoint.
+     */
+    public void clearBreakpoints() {
+        breakpointLines.clear();
+        compileBreakpoints(true);
+    }
+
+    /**
+     * Determines whether a line number has a breakpoint.
+     *
+     * @param line the line number.
+     * @return true if the line number has a breakpoint, false otherwise.
+     */
+    public boolean hasBreakpoint(int line) {
+        return breakpointLines.containsKey(line);
+    }
+
+    /**
+     * Gets the line numbers which have breakpoints.
+     *
+     * @return the line numbers with breakpoints, in order.
+     */
+    public SortedSet<Integer> getBreakpointLines() {
+        return new TreeSet<>(breakpointLines.keySet());
+    }
+
+    /**
+     * Compiles the breakpoints against the loaded program.
+     *
+     * @param changed whether the breakpoints changed, so they are compiled even if the program did
+     *                not.
+     */
+    private synchronized void compileBreakpoints(boolean changed) {
+        if (changed || !breakpoints.isCompiledAgainst(program)) {
+            breakpoints = Breakpoints.compile(breakpointLines, program);
+        }
+    }
+
+    /**
+     * Executes the given line on the simulator without publishing the changes.
+     *
+     * @param line the line to execute.
+     * @throws ParseException if there is an error executing the line.
+     */
+    private void dispatch(Line line) throws ParseException {
         if (line == null)
             return;
         try {
             instructionDispatcher.execute(line);
-            Window.updateAll();
         } catch (InstructionDispatchException e) {
             throw new ParseException(e.getMessage());
         }
     }
 
+    /**
+     * Executes a line of code of the loaded program directly from the program's arrays. Lines bound to
+     * a specialized variant of their instruction are executed by the variant, and others by invoking
+     * their instruction on the operand targets the program stores; neither creates a {@link Line}.
+     *
+     * @param index the index of the line of code.
+     */
+    private void executeProgramLine(int index) {
+        IInstructionVariant variant = program.getVariant(index);
+        if (variant != null) {
+            variant.execute(this);
+        } else {
+            instructionDispatcher.execute(program, index);
+        }
+    }
+
     /**
      * Executes the given line on the simulator.
      *
@@ -153,46 +573,82 @@ public class Simulator {
 
     /**
      * Runs the program to completion or error state from the current state of the PC. Allows for
-     * pausing of execution with the paused variable.
+     * pausing of execution with the paused variable. Reaching a line with a breakpoint whose condition
+     * holds sets paused; the line the run starts or resumes on is executed even if it has one.
      *
      * @param paused an AtomicBoolean which allows for control over whether the execution of this is
      *               paused.
      * @throws ParseException if there is an error executing any line.
      */
     public void runLinesFromPC(AtomicBoolean paused) throws ParseException {
-        for (int i = (int) pc.getLong(); i < lines.size() && !Thread.interrupted(); ++i) {
-            while (paused.get()) {
+        setRunState(SimulatorEvent.RunState.RUNNING);
+        compileBreakpoints(false);
+        boolean resumed = true;
+        try {
+            for (int i = (int) pc.getLong(); i < program.size() && !Thread.interrupted(); ++i) {
+                while (paused.get()) {
+                    resumed = true;
+                    if (runState != SimulatorEvent.RunState.PAUSED) {
+                        setRunState(SimulatorEvent.RunState.PAUSED);
+                        publishChanges();
+                    }
+                    try {
+                        Thread.sleep(SimulationThread.SLEEP_INTERVAL);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                setRunState(SimulatorEvent.RunState.RUNNING);
+                i = validatePC();
+                if (isDone())
+                    return;
+                Breakpoints active = breakpoints;
+                if (!resumed && !active.isEmpty() && active.shouldBreak(i)) {
+                    paused.set(true);
+                    --i;
+                    continue;
+                }
+                resumed = false;
+                i = executeLineInLoop(i);
                 try {
-                    Thread.sleep(SimulationThread.SLEEP_INTERVAL);
+                    Thread.sleep(delayMS);
                 } catch (InterruptedException e) {
                     return;
                 }
             }
-            i = validatePC();
-            if (isDone())
-                return;
-            i = executeLineInLoop(i);
-            try {
-                Thread.sleep(delayMS);
-            } catch (InterruptedException e) {
-                return;
-            }
+        } finally {
+            setRunState(stoppedState());
+            publishChanges();
         }
     }
 
     /**
-     * Runs the program to completion or error state from the current state of the PC.
+     * Runs the program to completion or error state from the current state of the PC. Returns early
+     * on reaching a line with a breakpoint whose condition holds, other than the line it starts on,
+     * leaving the PC on that line.
      *
      * @throws ParseException if there is an error executing any line.
      */
     public void runLinesFromPC() throws ParseException {
-        for (int i = (int) pc.getLong(); i < lines.size() && !Thread.interrupted(); ++i) {
-            i = executeLineInLoop(i);
-            try {
-                Thread.sleep(delayMS);
-            } catch (InterruptedException e) {
-                break;
+        setRunState(SimulatorEvent.RunState.RUNNING);
+        compileBreakpoints(false);
+        boolean first = true;
+        try {
+            for (int i = (int) pc.getLong(); i < program.size() && !Thread.interrupted(); ++i) {
+                Breakpoints active = breakpoints;
+                if (!first && !active.isEmpty() && active.shouldBreak(i))
+                    break;
+                first = false;
+                i = executeLineInLoop(i);
+                try {
+                    Thread.sleep(delayMS);
+                } catch (InterruptedException e) {
+                    break;
+                }
             }
+        } finally {
+            setRunState(stoppedState());
+            publishChanges();
         }
     }
 
@@ -202,14 +658,21 @@ public class Simulator {
      * @throws ParseException if there is an error executing the line.
      */
     public void runOneLine() throws ParseException {
-        int lineNumber = validatePC();
-        executeLine(lines.get(lineNumber));
-        int currentSP = validatePC();
-        if (currentSP == lineNumber) {
-            pc.setLong(currentSP + 1);
-        } // otherwise the PC was set by the program to a certain line and should be read
-          // as such
-        Window.updateAll();
+        stateLock.beginWrite();
+        try {
+            int lineNumber = validatePC();
+            beginStep();
+            executeProgramLine(lineNumber);
+            int currentSP = validatePC();
+            if (currentSP == lineNumber) {
+                pc.setLong(currentSP + 1);
+            } // otherwise the PC was set by the program to a certain line and should be read
+              // as such
+        } finally {
+            stateLock.endWrite();
+        }
+        setRunState(stoppedState());
+        publishChanges();
     }
 
     /**
@@ -220,14 +683,20 @@ public class Simulator {
      * @throws ParseException if an error occurred within execution.
      */
     private int executeLineInLoop(int i) throws ParseException {
-        executeLine(lines.get(i));
-        int currentPC = validatePC();
-        if (currentPC == i) {
-            pc.setLong(currentPC + 1);
-        } else {
-            i = currentPC;
+        stateLock.beginWrite();
+        try {
+            beginStep();
+            executeProgramLine(i);
+            int currentPC = validatePC();
+            if (currentPC == i) {
+                pc.setLong(currentPC + 1);
+            } else {
+                i = currentPC;
+            }
+        } finally {
+            stateLock.endWrite();
         }
-        Window.updateAll();
+        publishChanges();
         return i;
     }
 
@@ -238,7 +707,7 @@ public class Simulator {
      */
     private int validatePC() {
         long number = pc.getLong();
-        if (number < 0 || number > lines.size()) {
+        if (number < 0 || number > program.size()) {
             // Guaranteed invalid SP
             // TODO handle better
             throw new RuntimeException();
@@ -246,6 +715,37 @@ public class Simulator {
         return (int) number;
     }
 
+    /**
+     * Reads a consistent copy of every register, including the PC, from any thread. The copy is made
+     * between steps, without making the simulating thread wait.
+     *
+     * @return the value of each register indexed by its reference number.
+     */
+    public long[] readRegisters() {
+        return stateLock.read(() -> {
+            long[] values = new long[Registers.TOTAL_REGISTERS];
+            for (int i = 0; i < values.length; ++i) {
+                Register register = registers.getRegister(i);
+                if (register != null) {
+                    values[i] = register.getLong();
+                }
+            }
+            return values;
+        });
+    }
+
+    /**
+     * Reads a consistent copy of a range of memory from any thread. The copy is made between steps,
+     * without making the simulating thread wait.
+     *
+     * @param address the address to begin to read from.
+     * @param count   the number of bytes to read.
+     * @return the bytes read, or null if the range is out of bounds.
+     */
+    public byte[] readMemory(long address, int count) {
+        return stateLock.read(() -> memory.read(address, count));
+    }
+
     /**
      * Gets the register of the given register reference.
      *
@@ -284,4 +784,89 @@ public class Simulator {
         return memory;
     }
 
+    /**
+     * Saves the registers, memory and heap pointer of the simulator to a file, along with a digest of
+     * the loaded program. Memory mapped from a file is forced to it as well. Must be called between
+     * steps by the thread running the simulator.
+     *
+     * @param path the path of the checkpoint to write.
+     * @throws IOException if an error occurred writing the checkpoint.
+     */
+    public void checkpoint(Path path) throws IOException {
+        memory.force();
+        Checkpoint.save(this, path);
+    }
+
+    /**
+     * Restores the registers, memory and heap pointer of the simulator from a file written by
+     * {@link Simulator#checkpoint(Path)}. The program the checkpoint was taken of must be loaded, and
+     * the memory must have the same word size and size. Must be called between steps by the thread
+     * running the simulator.
+     *
+     * @param path the path of the checkpoint to read.
+     * @throws IOException if an error occurred reading the checkpoint or it does not match the
+     *                     simulator, in which case the state is left unchanged.
+     */
+    public void restore(Path path) throws IOException {
+        // The checkpoint is read before the state is touched, so readers are not held up by the file
+        try (Checkpoint checkpoint = Checkpoint.read(this, path)) {
+            stateLock.beginWrite();
+            // The restored state is not recorded, as the steps before it are forgotten
+            registers.setUndoLog(null);
+            memory.setUndoLog(null);
+            try {
+                checkpoint.apply(this);
+            } finally {
+                if (undo != null) {
+                    undo.clear();
+                }
+                registers.setUndoLog(undo);
+                memory.setUndoLog(undo);
+                stateLock.endWrite();
+                publishChanges();
+            }
+        }
+    }
+
+    /**
+     * Creates a copy of the simulator at its current state, to continue from the same point in several
+     * ways. The registers are copied, the memory is shared copy-on-write and the program is shared
+     * until either simulator modifies it. Listeners and breakpoints are not copied. Must be called
+     * between steps by the thread running the simulator. The copy of memory mapped from a file is not
+     * written to the file.
+     *
+     * @return the copy.
+     * @throws UnsupportedOperationException if the memory cannot be forked; see
+     *                                       {@link Memory#canFork()}.
+     */
+    public Simulator fork() {
+        Simulator copy = new Simulator(memory.fork(), delayMS);
+        copy.registers.copyFrom(registers);
+        copy.registers.takeWritten();
+        copy.program = program;
+        copy.programShared = true;
+        programShared = true;
+        copy.runState = runState;
+        return copy;
+    }
+
+    /**
+     * Releases the memory of the simulator. Reads from other threads in progress are finished before
+     * the memory is freed, and later ones see zeros. Must be called once the thread running the
+     * simulator has stopped; the simulator must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        stateLock.beginWrite();
+        try {
+            stateLock.awaitReaders();
+            if (undo != null) {
+                undo.clear();
+            }
+            memory.close();
+        } finally {
+            stateLock.endWrite();
+        }
+    }
+
 }
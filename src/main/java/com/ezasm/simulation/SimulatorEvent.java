@@ -0,0 +1,209 @@
+package com.ezasm.simulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A batch of changes to a simulator's state: the registers written along with their new values, the
+ * ranges of memory written and the run state. Events are immutable and are delivered to
+ * {@link ISimulatorListener}s; the events of several steps are coalesced by
+ * {@link SimulatorEvent#merge(SimulatorEvent)}.
+ */
+public final class SimulatorEvent {
+
+    /**
+     * The state of a simulator's execution.
+     */
+    public enum RunState {
+        /**
+         * Not running, and the program is neither finished nor in error.
+         */
+        IDLE,
+        /**
+         * Running the program.
+         */
+        RUNNING,
+        /**
+         * Running the program but paused.
+         */
+        PAUSED,
+        /**
+         * Ran off the end of the program.
+         */
+        DONE,
+        /**
+         * Stopped with the PC out of the program.
+         */
+        ERRORED
+    }
+
+    /**
+     * A range of memory addresses.
+     *
+     * @param start the first address of the range.
+     * @param end   the address after the last address of the range.
+     */
+    public record MemoryRange(long start, long end) {
+    }
+
+    /**
+     * The greatest number of separate memory ranges an event holds before they are collapsed into one
+     * range spanning all of them.
+     */
+    static final int MAX_MEMORY_RANGES = 32;
+
+    private final long registers;
+    private final long[] values;
+    private final List<MemoryRange> memory;
+    private final RunState runState;
+    private final boolean runStateChanged;
+
+    /**
+     * Creates an event.
+     *
+     * @param registers       the mask of the registers written; bit i is set if register i was
+     *                        written.
+     * @param values          the values of all registers, of which only the written ones are read.
+     * @param memory          the normalized ranges of memory written.
+     * @param runState        the run state of the simulator.
+     * @param runStateChanged whether the run state changed.
+     */
+    SimulatorEvent(long registers, long[] values, List<MemoryRange> memory, RunState runState,
+            boolean runStateChanged) {
+        this.registers = registers;
+        this.values = values;
+        this.memory = memory;
+        this.runState = runState;
+        this.runStateChanged = runStateChanged;
+    }
+
+    /**
+     * Gets the mask of the registers written.
+     *
+     * @return the mask of the registers written; bit i is set if register i was written.
+     */
+    public long getWrittenRegisters() {
+        return registers;
+    }
+
+    /**
+     * Determines whether a register was written.
+     *
+     * @param register the register's reference number.
+     * @return true if the register was written, false otherwise.
+     */
+    public boolean isRegisterWritten(int register) {
+        return (registers & (1L << register)) != 0;
+    }
+
+    /**
+     * Gets the value of a written register after the changes.
+     *
+     * @param register the reference number of a written register.
+     * @return the value of the register.
+     * @throws IllegalArgumentException if the register was not written.
+     */
+    public long getRegisterValue(int register) {
+        if (!isRegisterWritten(register)) {
+            throw new IllegalArgumentException("Register " + register + " was not written");
+        }
+        return values[register];
+    }
+
+    /**
+     * Determines whether the PC was written.
+     *
+     * @return true if the PC was written, false otherwise.
+     */
+    public boolean isPcChanged() {
+        return isRegisterWritten(Registers.getRegisterNumber(Registers.PC));
+    }
+
+    /**
+     * Gets the ranges of memory written, in order of address. Ranges never overlap or touch; when
+     * there are too many, they are collapsed into one range spanning all of them.
+     *
+     * @return the ranges of memory written.
+     */
+    public List<MemoryRange> getMemoryWrites() {
+        return memory;
+    }
+
+    /**
+     * Gets the run state of the simulator after the changes.
+     *
+     * @return the run state.
+     */
+    public RunState getRunState() {
+        return runState;
+    }
+
+    /**
+     * Determines whether the run state changed.
+     *
+     * @return true if the run state changed, false otherwise.
+     */
+    public boolean isRunStateChanged() {
+        return runStateChanged;
+    }
+
+    /**
+     * Determines whether the event holds no change.
+     *
+     * @return true if nothing changed, false otherwise.
+     */
+    public boolean isEmpty() {
+        return registers == 0 && memory.isEmpty() && !runStateChanged;
+    }
+
+    /**
+     * Coalesces this event with the event which followed it.
+     *
+     * @param next the following event.
+     * @return an event holding the changes of both events.
+     */
+    public SimulatorEvent merge(SimulatorEvent next) {
+        long[] values = next.values.clone();
+        long older = registers & ~next.registers;
+        for (int i = 0; i < values.length; ++i) {
+            if ((older & (1L << i)) != 0) {
+                values[i] = this.values[i];
+            }
+        }
+        List<MemoryRange> memory = new ArrayList<>(this.memory);
+        memory.addAll(next.memory);
+        return new SimulatorEvent(registers | next.registers, values, normalize(memory), next.runState,
+                runStateChanged || next.runStateChanged);
+    }
+
+    /**
+     * Sorts ranges of memory and joins those which overlap or touch. If more than
+     * {@link SimulatorEvent#MAX_MEMORY_RANGES} remain, they are collapsed into one range.
+     *
+     * @param ranges the ranges to normalize, which may be modified.
+     * @return the normalized ranges.
+     */
+    static List<MemoryRange> normalize(List<MemoryRange> ranges) {
+        if (ranges.isEmpty())
+            return List.of();
+        ranges.sort(Comparator.comparingLong(MemoryRange::start));
+        List<MemoryRange> joined = new ArrayList<>();
+        MemoryRange current = ranges.get(0);
+        for (MemoryRange range : ranges) {
+            if (range.start() <= current.end()) {
+                current = new MemoryRange(current.start(), Math.max(current.end(), range.end()));
+            } else {
+                joined.add(current);
+                current = range;
+            }
+        }
+        joined.add(current);
+        if (joined.size() > MAX_MEMORY_RANGES) {
+            return List.of(new MemoryRange(joined.get(0).start(), joined.get(joined.size() - 1).end()));
+        }
+        return Collections.unmodifiableList(joined);
+    }
+
+}
@@ -0,0 +1,398 @@
+package com.ezasm.simulation;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A bounded log of the side effects of the latest steps of a simulator, kept so the steps can be
+ * undone. Before a register or range of memory is written, its old bytes are recorded in preallocated
+ * rings of primitives: each entry takes two longs in the entry ring and its old bytes take space in
+ * the byte ring. When either ring is full, the oldest steps are dropped whole.
+ * <p>
+ * Every {@link UndoLog#SNAPSHOT_INTERVAL} steps a snapshot of the registers and memory is taken.
+ * Memory is not copied when the snapshot is taken: before a page of 4 KiB is first written after the
+ * latest snapshot, its bytes are saved in that snapshot. The memory at a snapshot is therefore the
+ * pages saved in it and the snapshots after it, earliest first, with the rest as it is now. Stepping
+ * back across a snapshot writes those pages back instead of undoing every step after it, so long
+ * rewinds only undo the steps before the nearest snapshot, and the memory's own storage is never
+ * copied or replaced.
+ */
+final class UndoLog {
+
+    /**
+     * The default number of entries the log holds.
+     */
+    static final int DEFAULT_ENTRIES = 1 << 16;
+
+    /**
+     * The default number of old bytes the log holds.
+     */
+    static final int DEFAULT_BYTES = 1 << 20;
+
+    /**
+     * The number of steps between snapshots.
+     */
+    static final int SNAPSHOT_INTERVAL = 1 << 12;
+
+    private static final int MAX_SNAPSHOTS = 8;
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    // The kinds of entry, stored in the top bits of an entry's first long
+    private static final long STEP = 0;
+    private static final long REGISTER = 1;
+    private static final long MEMORY = 2;
+    private static final int KIND_SHIFT = 62;
+    private static final long LENGTH_MASK = 0xFFFF_FFFFL;
+
+    /**
+     * The registers and heap pointer after a number of steps, and the bytes the pages of memory first
+     * written after them had then, up to the next snapshot. Pages numbered past the range of an int
+     * are only found in the map.
+     */
+    private record Snapshot(long step, long entryEnd, long byteEnd, byte[][] registers, long allocated,
+            Map<Long, byte[]> pages, BitSet saved) {
+
+        private boolean isSaved(long page) {
+            return page <= Integer.MAX_VALUE ? saved.get((int) page) : pages.containsKey(page);
+        }
+
+        private void save(long page, byte[] bytes) {
+            if (pages.putIfAbsent(page, bytes) == null && page <= Integer.MAX_VALUE) {
+                saved.set((int) page);
+            }
+        }
+    }
+
+    private final Memory memory;
+    private final Registers registers;
+
+    // Entry i is stored at entries[2 * (i % capacity)]: the kind and length of the old bytes, then the
+    // register number or memory index. Positions only grow; entryStart and byteStart are the oldest
+    // ones still held.
+    private final long[] entries;
+    private final byte[] bytes;
+    private long entryStart;
+    private long entryEnd;
+    private long byteStart;
+    private long byteEnd;
+
+    // The number of steps recorded since the log was cleared, and the first of them still held
+    private long step;
+    private long firstStep;
+    // Set while the current step is not fully recorded, so it cannot be undone
+    private boolean broken;
+    // Set while undoing, so the writes made to undo are not recorded
+    private boolean undoing;
+
+    private final Deque<Snapshot> snapshots = new ArrayDeque<>();
+
+    /**
+     * Creates a log of the side effects on the given registers and memory.
+     *
+     * @param registers the registers.
+     * @param memory    the memory.
+     * @param entries   the number of entries to hold.
+     * @param bytes     the number of old bytes to hold.
+     */
+    UndoLog(Registers registers, Memory memory, int entries, int bytes) {
+        this.registers = registers;
+        this.memory = memory;
+        this.entries = new long[2 * entries];
+        this.bytes = new byte[bytes];
+    }
+
+    /**
+     * Gets the number of steps which can be undone.
+     *
+     * @return the number of steps held.
+     */
+    long steps() {
+        return step - firstStep;
+    }
+
+    /**
+     * Forgets every step.
+     */
+    void clear() {
+        entryStart = entryEnd = 0;
+        byteStart = byteEnd = 0;
+        step = firstStep = 0;
+        broken = false;
+        dropSnapshots();
+    }
+
+    /**
+     * Marks the start of a step, taking a snapshot first if one is due.
+     */
+    void beginStep() {
+        if (!broken && step % SNAPSHOT_INTERVAL == 0 && step > firstStep
+                && (snapshots.isEmpty() || snapshots.peekLast().step() != step)) {
+            takeSnapshot();
+        }
+        broken = false;
+        append(STEP, 0, 0);
+        ++step;
+    }
+
+    /**
+     * Records the old bytes of a register about to be written.
+     *
+     * @param register the register's reference number.
+     * @param old      the bytes of the register.
+     */
+    void recordRegister(int register, byte[] old) {
+        if (undoing || broken)
+            return;
+        if (append(REGISTER, register, old.length)) {
+            copyIn(old, byteEnd - old.length);
+        }
+    }
+
+    /**
+     * Records the old bytes of a range of memory about to be written, and saves the pages of the range
+     * not yet written since the latest snapshot in it. Writes made while undoing are not saved: they
+     * only touch pages written since the latest snapshot left, which it has already saved.
+     *
+     * @param backend the backend holding the memory.
+     * @param index   the index of the first byte of the range.
+     * @param count   the number of bytes in the range.
+     */
+    void recordMemory(IMemoryBackend backend, long index, int count) {
+        if (undoing)
+            return;
+        if (!snapshots.isEmpty() && count > 0) {
+            savePages(backend, index, count);
+        }
+        if (broken)
+            return;
+        if (append(MEMORY, index, count)) {
+            long position = byteEnd - count;
+            int offset = (int) (position % bytes.length);
+            int first = Math.min(count, bytes.length - offset);
+            backend.read(index, bytes, offset, first);
+            backend.read(index + first, bytes, 0, count - first);
+        }
+    }
+
+    /**
+     * Appends an entry, dropping the oldest steps to make room for it. If the current step cannot fit,
+     * it is dropped as well and no more of it is recorded.
+     *
+     * @param kind   the kind of the entry.
+     * @param target the register number or memory index of the entry.
+     * @param length the number of old bytes the entry holds.
+     * @return true if the entry was appended and its bytes are to be copied to the end of the byte
+     *         ring, false otherwise.
+     */
+    private boolean append(long kind, long target, int length) {
+        if (length > bytes.length) {
+            dropAll();
+            return false;
+        }
+        int capacity = entries.length / 2;
+        while (entryEnd - entryStart >= capacity || byteEnd + length - byteStart > bytes.length) {
+            dropOldestStep(kind == STEP);
+            if (broken)
+                return false;
+        }
+        int slot = (int) (2 * (entryEnd % capacity));
+        entries[slot] = (kind << KIND_SHIFT) | length;
+        entries[slot + 1] = target;
+        ++entryEnd;
+        byteEnd += length;
+        return true;
+    }
+
+    /**
+     * Drops the oldest step held. If it is a step still being recorded, every step is dropped.
+     *
+     * @param stepping whether a new step is being started, so no step is being recorded.
+     */
+    private void dropOldestStep(boolean stepping) {
+        int capacity = entries.length / 2;
+        do {
+            byteStart += entries[(int) (2 * (entryStart % capacity))] & LENGTH_MASK;
+            ++entryStart;
+        } while (entryStart < entryEnd && kind(entryStart) != STEP);
+        if (entryStart == entryEnd && !stepping) {
+            dropAll();
+            return;
+        }
+        ++firstStep;
+        while (!snapshots.isEmpty() && snapshots.peekFirst().entryEnd() < entryStart) {
+            snapshots.removeFirst();
+        }
+    }
+
+    /**
+     * Drops every step, including the current one, whose remaining side effects are not recorded.
+     */
+    private void dropAll() {
+        entryStart = entryEnd;
+        byteStart = byteEnd;
+        firstStep = step;
+        broken = true;
+        dropSnapshots();
+    }
+
+    private void dropSnapshots() {
+        snapshots.clear();
+    }
+
+    private long kind(long entry) {
+        return entries[(int) (2 * (entry % (entries.length / 2)))] >>> KIND_SHIFT;
+    }
+
+    private void copyIn(byte[] source, long position) {
+        int offset = (int) (position % bytes.length);
+        int first = Math.min(source.length, bytes.length - offset);
+        System.arraycopy(source, 0, bytes, offset, first);
+        System.arraycopy(source, first, bytes, 0, source.length - first);
+    }
+
+    private byte[] copyOut(long position, int length) {
+        byte[] copy = new byte[length];
+        int offset = (int) (position % bytes.length);
+        int first = Math.min(length, bytes.length - offset);
+        System.arraycopy(bytes, offset, copy, 0, first);
+        System.arraycopy(bytes, 0, copy, first, length - first);
+        return copy;
+    }
+
+    /**
+     * Saves the bytes of the pages of a range which were not written since the latest snapshot in it.
+     *
+     * @param backend the backend holding the memory.
+     * @param index   the index of the first byte of the range.
+     * @param count   the number of bytes in the range.
+     */
+    private void savePages(IMemoryBackend backend, long index, int count) {
+        Snapshot latest = snapshots.peekLast();
+        long last = (index + count - 1) >>> PAGE_BITS;
+        for (long page = index >>> PAGE_BITS; page <= last; ++page) {
+            if (latest.isSaved(page))
+                continue;
+            long start = page << PAGE_BITS;
+            byte[] bytes = new byte[(int) Math.min(PAGE_SIZE, backend.size() - start)];
+            backend.read(start, bytes, 0, bytes.length);
+            latest.save(page, bytes);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the registers before the current step. The memory is saved as it is written.
+     */
+    private void takeSnapshot() {
+        Register[] all = registers.getRegisters();
+        byte[][] values = new byte[all.length][];
+        for (int i = 0; i < all.length; ++i) {
+            if (all[i] != null) {
+                values[i] = all[i].getBytes();
+            }
+        }
+        if (snapshots.size() == MAX_SNAPSHOTS) {
+            // The pages of the oldest snapshot are only needed to return to it
+            snapshots.removeFirst();
+        }
+        snapshots.addLast(new Snapshot(step, entryEnd, byteEnd, values, memory.getAllocated(), new HashMap<>(),
+                new BitSet()));
+    }
+
+    /**
+     * Undoes the latest steps, starting from the nearest snapshot which is not before the target.
+     *
+     * @param count the number of steps to undo.
+     * @return the number of steps undone, fewer than asked if fewer are held.
+     */
+    long undo(long count) {
+        long target = Math.max(firstStep, step - Math.max(0, count));
+        long undone = step - target;
+        undoing = true;
+        try {
+            for (Snapshot snapshot : snapshots) {
+                if (snapshot.step() >= target && snapshot.step() < step) {
+                    restore(snapshot);
+                    break;
+                }
+            }
+            while (step > target) {
+                undoStep();
+            }
+        } finally {
+            undoing = false;
+        }
+        // Snapshots of the undone steps no longer match what will be executed
+        while (!snapshots.isEmpty() && snapshots.peekLast().step() > step) {
+            snapshots.removeLast();
+        }
+        broken = false;
+        return undone;
+    }
+
+    /**
+     * Returns the registers and memory to a snapshot, forgetting the steps and snapshots after it. The
+     * pages written since the snapshot are written back in place.
+     *
+     * @param snapshot the snapshot to return to.
+     */
+    private void restore(Snapshot snapshot) {
+        // Each page is written back as saved by the earliest snapshot holding it
+        Map<Long, byte[]> pages = new HashMap<>();
+        for (Iterator<Snapshot> newer = snapshots.descendingIterator(); newer.hasNext();) {
+            Snapshot next = newer.next();
+            pages.putAll(next.pages());
+            if (next == snapshot)
+                break;
+        }
+        for (Map.Entry<Long, byte[]> page : pages.entrySet()) {
+            memory.load(page.getKey() << PAGE_BITS, page.getValue(), page.getValue().length);
+        }
+        while (snapshots.peekLast() != snapshot) {
+            snapshots.removeLast();
+        }
+        // Nothing has been written since the snapshot any more
+        snapshot.pages().clear();
+        snapshot.saved().clear();
+        memory.setAllocated(snapshot.allocated());
+
+        Register[] all = registers.getRegisters();
+        for (int i = 0; i < all.length; ++i) {
+            if (all[i] != null) {
+                all[i].setBytes(snapshot.registers()[i]);
+            }
+        }
+        step = snapshot.step();
+        entryEnd = snapshot.entryEnd();
+        byteEnd = snapshot.byteEnd();
+    }
+
+    /**
+     * Undoes the latest step by writing back the old bytes of its entries, newest first.
+     */
+    private void undoStep() {
+        int capacity = entries.length / 2;
+        while (entryEnd > entryStart) {
+            --entryEnd;
+            int slot = (int) (2 * (entryEnd % capacity));
+            long kind = entries[slot] >>> KIND_SHIFT;
+            int length = (int) (entries[slot] & LENGTH_MASK);
+            long target = entries[slot + 1];
+            byteEnd -= length;
+            if (kind == STEP)
+                break;
+            byte[] old = copyOut(byteEnd, length);
+            if (kind == REGISTER) {
+                registers.getRegister((int) target).setBytes(old);
+            } else {
+                memory.load(target, old, length);
+            }
+        }
+        --step;
+    }
+
+}
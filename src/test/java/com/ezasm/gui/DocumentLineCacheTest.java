@@ -0,0 +1,95 @@
+package com.ezasm.gui;
+
+import com.ezasm.parsing.ArrayProgram;
+import com.ezasm.parsing.LexedChunk;
+import com.ezasm.parsing.Lexer;
+import com.ezasm.parsing.ParseException;
+import com.ezasm.parsing.Program;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.PlainDocument;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentLineCacheTest {
+
+    private static final String PROGRAM = "add $t0 0 1\nloop:\nadd $t0 $t0 $t0\nsub $t1 $t1 1\n";
+
+    private static Document document(String text) throws BadLocationException {
+        Document document = new PlainDocument();
+        document.insertString(0, text, null);
+        return document;
+    }
+
+    /**
+     * Asserts that the cached lines link into the same program as lexing the whole text does.
+     */
+    private static void assertMatchesText(Document document, DocumentLineCache cache)
+            throws BadLocationException, ParseException {
+        Program linked = ArrayProgram.link(cache.getLexedLines());
+        Program lexed = Lexer.parseProgram(document.getText(0, document.getLength()));
+        assertEquals(lexed.size(), linked.size());
+        for (int i = 0; i < lexed.size(); ++i) {
+            assertEquals(lexed.getLineNumber(i), linked.getLineNumber(i));
+        }
+        assertEquals(lexed.getLabels(), linked.getLabels());
+    }
+
+    @Test
+    void editWithinLine() throws BadLocationException, ParseException {
+        Document document = document(PROGRAM);
+        DocumentLineCache cache = new DocumentLineCache(document);
+        List<LexedChunk> before = List.copyOf(cache.getLexedLines());
+        assertEquals(5, before.size());
+
+        // Only the edited line is lexed again
+        document.insertString(PROGRAM.indexOf("$t1"), "  ", null);
+        List<LexedChunk> after = cache.getLexedLines();
+        assertSame(before.get(0), after.get(0));
+        assertSame(before.get(2), after.get(2));
+        assertNotSame(before.get(3), after.get(3));
+        assertMatchesText(document, cache);
+    }
+
+    @Test
+    void insertLines() throws BadLocationException, ParseException {
+        Document document = document(PROGRAM);
+        DocumentLineCache cache = new DocumentLineCache(document);
+        List<LexedChunk> before = List.copyOf(cache.getLexedLines());
+
+        // A paste of several lines replaces the line it is pasted into
+        document.insertString(PROGRAM.indexOf("\nsub"), "\nend:\nadd $t2 $t2 1", null);
+        List<LexedChunk> after = cache.getLexedLines();
+        assertEquals(7, after.size());
+        assertSame(before.get(0), after.get(0));
+        assertSame(before.get(1), after.get(1));
+        assertSame(before.get(3), after.get(5));
+        assertMatchesText(document, cache);
+        assertEquals(3, Lexer.parseProgram(document.getText(0, document.getLength())).getLabels().get("end:"));
+    }
+
+    @Test
+    void removeLines() throws BadLocationException, ParseException {
+        Document document = document(PROGRAM);
+        DocumentLineCache cache = new DocumentLineCache(document);
+        List<LexedChunk> before = List.copyOf(cache.getLexedLines());
+
+        // A removal across a line break joins what remains of both lines
+        int start = PROGRAM.indexOf("\nloop:");
+        document.remove(start, "\nloop:".length());
+        List<LexedChunk> after = cache.getLexedLines();
+        assertEquals(4, after.size());
+        assertNotSame(before.get(0), after.get(0));
+        assertSame(before.get(2), after.get(1));
+        assertSame(before.get(3), after.get(2));
+        assertMatchesText(document, cache);
+
+        document.remove(0, document.getLength());
+        assertEquals(1, cache.getLexedLines().size());
+        assertMatchesText(document, cache);
+    }
+
+}
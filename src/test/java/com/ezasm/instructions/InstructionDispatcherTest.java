@@ -0,0 +1,305 @@
+package com.ezasm.instructions;
+
+import com.ezasm.Conversion;
+import com.ezasm.instructions.exception.InstructionLoadException;
+import com.ezasm.instructions.impl.ArithmeticInstructions;
+import com.ezasm.instructions.impl.ArithmeticInstructionsTable;
+import com.ezasm.instructions.impl.CoreInstructionSet;
+import com.ezasm.instructions.targets.IAbstractTarget;
+import com.ezasm.instructions.targets.input.IAbstractInput;
+import com.ezasm.instructions.targets.inputoutput.IAbstractInputOutput;
+import com.ezasm.instructions.targets.output.IAbstractOutput;
+import com.ezasm.instructions.targets.inputoutput.RegisterInputOutput;
+import com.ezasm.parsing.Lexer;
+import com.ezasm.parsing.Line;
+import com.ezasm.parsing.ArrayProgram;
+import com.ezasm.parsing.ParseException;
+import com.ezasm.simulation.Memory;
+import com.ezasm.simulation.Simulator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstructionDispatcherTest {
+
+    @Test
+    void overloads() throws ParseException {
+        assertEquals(2, InstructionDispatcher.findInstructions("inc").length);
+
+        Line single = Lexer.parseLine("inc $t0", new HashMap<>(), 0);
+        Line pair = Lexer.parseLine("inc $t1 $t0", new HashMap<>(), 1);
+        assertNotSame(single.getDispatchInstruction(), pair.getDispatchInstruction());
+        assertSame(single.getDispatchInstruction(),
+                InstructionDispatcher.getInstruction(single.getDispatchInstruction().getOpcode()));
+
+        Simulator simulator = new Simulator();
+        simulator.executeLine(single);
+        simulator.executeLine(pair);
+        assertEquals(1, simulator.getRegister("t0").getLong());
+        assertEquals(2, simulator.getRegister("t1").getLong());
+    }
+
+    public static class PickInput {
+        public PickInput(Simulator simulator) {
+        }
+
+        @Instruction
+        public void pick(IAbstractInput input) {
+            picked = "input";
+        }
+    }
+
+    public static class PickOutput {
+        public PickOutput(Simulator simulator) {
+        }
+
+        @Instruction
+        public void pick(IAbstractOutput output) {
+            picked = "output";
+        }
+    }
+
+    public static class PickRegister {
+        public PickRegister(Simulator simulator) {
+        }
+
+        @Instruction
+        public void pick(IAbstractInputOutput register) {
+            picked = "register";
+        }
+    }
+
+    private static String picked;
+
+    @Test
+    void overloadSelection() throws ParseException {
+        InstructionRegistry before = InstructionDispatcher.getRegistry();
+        try {
+            InstructionDispatcher.registerInstructions(PickInput.class);
+            InstructionDispatcher.registerInstructions(PickOutput.class);
+            Simulator simulator = new Simulator();
+
+            // Both overloads accept a register and neither is more specific, so the first registered wins
+            simulator.executeLine("pick $t0");
+            assertEquals("input", picked);
+            simulator.executeLine("pick 1");
+            assertEquals("input", picked);
+
+            // An overload taking exactly registers is more specific than both
+            InstructionDispatcher.registerInstructions(PickRegister.class);
+            simulator.executeLine("pick $t0");
+            assertEquals("register", picked);
+            simulator.executeLine("pick 1");
+            assertEquals("input", picked);
+        } finally {
+            InstructionDispatcher.restoreRegistry(before);
+        }
+        assertNull(InstructionDispatcher.findInstructions("pick"));
+    }
+
+    @Test
+    void overloadErrors() {
+        assertThrows(ParseException.class, () -> Lexer.parseLine("inc", new HashMap<>(), 0));
+        assertThrows(ParseException.class, () -> Lexer.parseLine("inc $t0 $t1 $t2", new HashMap<>(), 0));
+        assertThrows(ParseException.class, () -> Lexer.parseLine("inc 1", new HashMap<>(), 0));
+    }
+
+    @Test
+    void variants() throws ParseException {
+        StringBuilder program = new StringBuilder("add $t0 0 -13\nadd $t1 0 5\n");
+        for (String instruction : new String[] { "add", "sub", "mul", "div", "and", "or", "sll", "srl" }) {
+            program.append(instruction).append(" $t2 $t0 $t1\n");
+            program.append(instruction).append(" $t3 $t0 3\n");
+            program.append(instruction).append(" $t4 7 $t1\n");
+            program.append(instruction).append(" $t5 -7 2\n");
+        }
+        program.append("not $t2 $t0\nnot $t3 -6\ninc $t4\ninc $t5 $t1\ninc $t5 9\n");
+
+        Simulator specialized = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS, 0);
+        specialized.readMultiLineString(program.toString());
+        ArrayProgram bound = (ArrayProgram) specialized.getProgram();
+        for (int i = 0; i < bound.size(); ++i) {
+            assertNotNull(bound.getVariant(i));
+        }
+
+        Simulator generic = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS, 0);
+        for (String line : program.toString().split("\n")) {
+            generic.executeLine(line);
+            specialized.runOneLine();
+            for (String register : new String[] { "t0", "t1", "t2", "t3", "t4", "t5" }) {
+                assertEquals(generic.getRegister(register).getLong(), specialized.getRegister(register).getLong());
+            }
+        }
+
+        // Identical statements share one variant, and statements differing in an operand do not
+        ArrayProgram repeated = Lexer.parseProgram("add $t0 $t1 5\nadd $t0 $t1 5\nadd $t0 $t1 6\n");
+        assertSame(repeated.getVariant(0), repeated.getVariant(1));
+        assertNotSame(repeated.getVariant(0), repeated.getVariant(2));
+
+        // Dividing by an immediate zero is not bound, so the instruction reports it when executed
+        for (String division : new String[] { "div $t0 $t1 0", "div $t0 $t1 $t2" }) {
+            ArrayProgram lines = Lexer.parseProgram(division);
+            assertEquals(division.endsWith("0"), lines.getVariant(0) == null);
+            Simulator simulator = new Simulator();
+            simulator.loadProgram(lines);
+            assertThrows(IllegalArgumentException.class, simulator::runOneLine);
+        }
+    }
+
+    @Test
+    void generatedTables() {
+        IInstructionTable generated = InstructionDispatcher.loadTable(ArithmeticInstructions.class);
+        assertFalse(generated instanceof ReflectiveInstructionTable);
+        IInstructionTable reflective = new ReflectiveInstructionTable(ArithmeticInstructions.class);
+        assertEquals(reflective.size(), generated.size());
+        for (int i = 0; i < generated.size(); ++i) {
+            DispatchInstruction instruction = InstructionDispatcher.findInstructions(generated.getName(i))[0];
+            assertNotNull(instruction.getInvocationTarget());
+        }
+        Simulator simulator = new Simulator();
+        generated.invoke(generated.createHandler(simulator), ArithmeticInstructionsTable.INC,
+                new IAbstractTarget[] { RegisterInputOutput.of("t0") }, 0);
+        assertEquals(1, simulator.getRegister("t0").getLong());
+    }
+
+    public static class NoConstructor {
+        @Instruction
+        public void nothing() {
+        }
+    }
+
+    @Test
+    void reflectiveTables() {
+        assertThrows(InstructionLoadException.class, () -> new ReflectiveInstructionTable(NoConstructor.class));
+
+        // What an instruction throws reaches the caller as it is, as with generated tables
+        IInstructionTable reflective = new ReflectiveInstructionTable(ArithmeticInstructions.class);
+        int div = 0;
+        while (!reflective.getName(div).equals("div"))
+            ++div;
+        Object handler = reflective.createHandler(new Simulator());
+        IAbstractTarget[] arguments = { RegisterInputOutput.of("t0"), RegisterInputOutput.of("t1"),
+                RegisterInputOutput.of("t2") };
+        int index = div;
+        assertThrows(IllegalArgumentException.class, () -> reflective.invoke(handler, index, arguments, 0));
+    }
+
+    private static volatile boolean lazyLoaded;
+
+    public static class LazyInstructions {
+
+        static {
+            lazyLoaded = true;
+        }
+
+        private final Simulator simulator;
+
+        public LazyInstructions(Simulator simulator) {
+            this.simulator = simulator;
+        }
+
+        @Instruction
+        public void settwo(IAbstractInputOutput output) {
+            output.set(simulator, Conversion.longToBytes(2));
+        }
+    }
+
+    @Test
+    void instructionSets() throws ParseException {
+        assertTrue(InstructionDispatcher.getMnemonics().containsAll(new CoreInstructionSet().getIndex().keySet()));
+
+        InstructionRegistry before = InstructionDispatcher.getRegistry();
+        try {
+            InstructionDispatcher.registerInstructionSet(() -> Map.of("setTwo", LazyInstructions.class.getName()));
+            long version = InstructionDispatcher.getInstructionSetVersion();
+            assertTrue(InstructionDispatcher.getMnemonics().contains("settwo"));
+            assertFalse(InstructionDispatcher.getInstructions().containsKey("settwo"));
+            Simulator simulator = new Simulator();
+            assertFalse(lazyLoaded);
+
+            simulator.executeLine("SETTWO $t0");
+            assertTrue(lazyLoaded);
+            assertEquals(2, simulator.getRegister("t0").getLong());
+            assertEquals(version, InstructionDispatcher.getInstructionSetVersion());
+        } finally {
+            InstructionDispatcher.restoreRegistry(before);
+        }
+    }
+
+    @Test
+    void generatedIndex() {
+        IInstructionSet core = new CoreInstructionSet();
+        String handler = ArithmeticInstructions.class.getName();
+        List<String> signatures = core.getSignatures(handler);
+        assertEquals(core.getIndex().keySet(),
+                signatures.stream().map(signature -> signature.substring(0, signature.indexOf('('))).collect(
+                        Collectors.toSet()));
+        assertNotNull(InstructionDispatcher.findInstructions("add"));
+        for (List<DispatchInstruction> overloads : InstructionDispatcher.getInstructions().values()) {
+            for (DispatchInstruction overload : overloads) {
+                if (overload.getParent() == ArithmeticInstructions.class)
+                    assertTrue(signatures.contains(overload.getSignature()));
+            }
+        }
+
+        // Overloads of one name are told apart by their parameters
+        IInstructionSet overloaded = new IInstructionSet() {
+            @Override
+            public Map<String, String> getIndex() {
+                return core.getIndex();
+            }
+
+            @Override
+            public List<String> getSignatures(String handler) {
+                List<String> more = new ArrayList<>(core.getSignatures(handler));
+                more.add("inc(com.ezasm.instructions.targets.input.IAbstractInput)");
+                return more;
+            }
+        };
+        assertNotEquals(InstructionRegistry.EMPTY.withSet(core).getVersion(),
+                InstructionRegistry.EMPTY.withSet(overloaded).getVersion());
+    }
+
+    @Test
+    void concurrentRegistration() throws Exception {
+        // Loaded first, so restoring the registry afterwards keeps the core instructions loaded
+        assertNotNull(InstructionDispatcher.findInstructions("add"));
+        InstructionRegistry before = InstructionDispatcher.getRegistry();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int thread = 0; thread < 4; ++thread) {
+                results.add(pool.submit(() -> {
+                    Simulator simulator = new Simulator();
+                    for (int i = 0; i < 1000; ++i) {
+                        simulator.executeLine("add $t0 $t0 1");
+                    }
+                    return simulator.getRegister("t0").getLong();
+                }));
+            }
+            for (int i = 0; i < 50; ++i) {
+                String mnemonic = "concurrent" + i;
+                InstructionDispatcher.registerInstructionSet(() -> Map.of(mnemonic, "com.ezasm.NeverLoaded"));
+            }
+            for (Future<Long> result : results) {
+                assertEquals(1000, result.get());
+            }
+
+            assertFalse(before.getMnemonics().contains("concurrent0"));
+            assertTrue(InstructionDispatcher.getRegistry().getMnemonics().contains("concurrent49"));
+        } finally {
+            pool.shutdown();
+            InstructionDispatcher.restoreRegistry(before);
+        }
+        assertFalse(InstructionDispatcher.getMnemonics().contains("concurrent0"));
+    }
+}
@@ -0,0 +1,43 @@
+package com.ezasm.parsing;
+
+import com.ezasm.instructions.targets.input.ImmediateInput;
+import com.ezasm.instructions.targets.inputoutput.RegisterInputOutput;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArrayProgramTest {
+
+    @Test
+    void storeLines() throws ParseException {
+        ArrayProgram program = Lexer.parseProgram("add $t0 $t1 -7\n\nsub $t2 $t0 $t1");
+        assertEquals(2, program.size());
+        assertEquals(1, program.getLineNumber(1));
+        assertNotEquals(program.getOpcode(0), program.getOpcode(1));
+        assertEquals(3, program.getOperandCount(0));
+        assertFalse(program.isImmediate(0, 1));
+        assertTrue(program.isImmediate(0, 2));
+        assertEquals(-7, program.getOperand(0, 2));
+
+        Line line = program.getLine(0);
+        assertEquals("add", line.getInstruction().text());
+        assertEquals(program.getOperand(0, 0), ((RegisterInputOutput) line.getArguments()[0]).getRegisterNumber());
+        assertEquals(-7, ((ImmediateInput) line.getArguments()[2]).getLong());
+        assertSame(line.getArguments()[0], program.getOperandTargets()[program.getOperandStart(0)]);
+        assertSame(program.getOperandTargets()[program.getOperandStart(1) + 2], RegisterInputOutput.of("t1"));
+    }
+
+    @Test
+    void appendPrograms() throws ParseException {
+        ArrayProgram program = ArrayProgram.copyOf(Lexer.parseProgram("a:\nadd $t0 $t0 1"));
+        program.add(null, 2);
+        program.addAll(Lexer.parseProgram("sub $t0 $t0 1\nb:"));
+        assertEquals(3, program.size());
+        assertNull(program.getLine(1));
+        assertEquals(ArrayProgram.NO_OPCODE, program.getOpcode(1));
+        assertEquals("sub", program.getLine(2).getInstruction().text());
+        assertEquals(1, program.getLabels().get("b:"));
+        assertThrows(ParseException.class, () -> program.addAll(Lexer.parseProgram("a:")));
+    }
+
+}
@@ -4,7 +4,10 @@ import com.ezasm.instructions.InstructionDispatcher;
 import com.ezasm.simulation.Registers;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -49,10 +52,19 @@ class LexerTest {
         assertTrue(Lexer.isImmediate("123"));
         assertTrue(Lexer.isImmediate("-123"));
         assertTrue(Lexer.isImmediate("1234567890123456789"));
-        // Future functionality of issue #29
-        // assertTrue(Lexer.isImmediate("0x1000"));
-        // assertTrue(Lexer.isImmediate("0xABCDEF"));
-        // assertTrue(Lexer.isImmediate("0b100101"));
+        assertTrue(Lexer.isImmediate("-9223372036854775808"));
+        assertTrue(Lexer.isImmediate("0x1000"));
+        assertTrue(Lexer.isImmediate("0xABCDEF"));
+        assertTrue(Lexer.isImmediate("0xFFFFFFFFFFFFFFFF"));
+        assertTrue(Lexer.isImmediate("0b100101"));
+        assertTrue(Lexer.isImmediate("'a'"));
+        assertTrue(Lexer.isImmediate("'\\n'"));
+        assertFalse(Lexer.isImmediate("9223372036854775808"));
+        assertFalse(Lexer.isImmediate("0x1FFFFFFFFFFFFFFFF"));
+        assertFalse(Lexer.isImmediate("0x"));
+        assertFalse(Lexer.isImmediate("0b102"));
+        assertFalse(Lexer.isImmediate("'ab'"));
+        assertFalse(Lexer.isImmediate("-"));
         assertFalse(Lexer.isImmediate("123.456"));
         assertFalse(Lexer.isImmediate("ABC"));
         assertFalse(Lexer.isImmediate(""));
@@ -60,7 +72,7 @@ class LexerTest {
 
     @Test
     void isInstruction() {
-        for (String instruction : InstructionDispatcher.getInstructions().keySet()) {
+        for (String instruction : InstructionDispatcher.getMnemonics()) {
             assertTrue(Lexer.isInstruction(instruction));
         }
         assertFalse(Lexer.isInstruction("add0"));
@@ -129,7 +141,59 @@ class LexerTest {
     }
 
     @Test
-    void parseLines() {
-        // TODO
+    void parseLines() throws ParseException {
+        Map<String, Integer> labels = new HashMap<>();
+        List<Line> lines = Lexer.parseLines("# start\nadd $t0 0 1\nloop:\nadd $t0 $t0 $t0; sub $t1 $t1 1\n\nend:", labels);
+        assertEquals(3, lines.size());
+        assertEquals(2, labels.get("loop:"));
+        assertEquals(5, labels.get("end:"));
+
+        StringBuilder program = new StringBuilder();
+        Map<String, Integer> expected = new HashMap<>();
+        int statements = 0;
+        for (int i = 0; i < 100_000; ++i) {
+            if (i % 1000 == 0) {
+                program.append("label").append(i).append(":\n");
+                expected.put("label" + i + ":", statements++);
+            }
+            program.append("add $t0 $t1 ").append(i).append(i % 2 == 0 ? ";" : "\n");
+            ++statements;
+        }
+        labels.clear();
+        assertEquals(100_000, Lexer.parseLines(program.toString(), labels).size());
+        assertEquals(expected, labels);
+    }
+
+    @Test
+    void parseLinesReader() throws ParseException, IOException {
+        String program = "# start\nadd $t0 0 1\nloop:\nadd $t0 $t0 $t0; sub $t1 $t1 1\n\nend:";
+        Map<String, Integer> expected = new HashMap<>();
+        int size = Lexer.parseLines(program, expected).size();
+
+        Map<String, Integer> labels = new HashMap<>();
+        assertEquals(size, Lexer.parseLines(new StringReader(program), labels).size());
+        assertEquals(expected, labels);
+    }
+
+    @Test
+    void parseLinesException() {
+        assertThrows(ParseException.class, () -> {
+            Lexer.parseLines("label:\nadd $t0 0 1\nlabel:", new HashMap<>());
+        });
+        assertThrows(ParseException.class, () -> {
+            Lexer.parseLines("add $t0 0 1\nadd $t0 $abc 1", new HashMap<>());
+        });
+    }
+
+    @Test
+    void sharedOperands() throws ParseException {
+        Line first = Lexer.parseLine("add $t0 $T0 5", new HashMap<>(), 0);
+        Line second = Lexer.parseLine("add $20 $t1 5", new HashMap<>(), 1);
+        assertSame(first.getArguments()[0], first.getArguments()[1]);
+        assertSame(first.getArguments()[0], second.getArguments()[0]);
+        assertSame(first.getArguments()[2], second.getArguments()[2]);
+        assertEquals(Registers.getRegisterNumber("$t0"), Registers.parseRegisterToken("$T0"));
+        assertEquals(-1, Registers.parseRegisterToken("$abc"));
+        assertEquals(-1, Registers.parseRegisterToken("t0"));
     }
 }
@@ -0,0 +1,35 @@
+package com.ezasm.parsing;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiteralsTest {
+
+    private static long parse(String token) {
+        long[] value = new long[1];
+        assertTrue(Literals.parse(token, value));
+        return value[0];
+    }
+
+    @Test
+    void parse() {
+        assertEquals(123, parse("123"));
+        assertEquals(-123, parse("-123"));
+        assertEquals(Long.MAX_VALUE, parse("9223372036854775807"));
+        assertEquals(Long.MIN_VALUE, parse("-9223372036854775808"));
+        assertEquals(0x1000, parse("0x1000"));
+        assertEquals(-0x10, parse("-0x10"));
+        assertEquals(-1, parse("0xFFFFFFFFFFFFFFFF"));
+        assertEquals(0b100101, parse("0b100101"));
+        assertEquals('a', parse("'a'"));
+        assertEquals('\n', parse("'\\n'"));
+        assertEquals('\'', parse("'\\''"));
+    }
+
+    @Test
+    void parseImmediate() {
+        assertSame(Literals.parseImmediate("16"), Literals.parseImmediate("0x10"));
+        assertNull(Literals.parseImmediate("ABC"));
+    }
+}
@@ -0,0 +1,44 @@
+package com.ezasm.parsing;
+
+import com.ezasm.instructions.InstructionDispatcher;
+import com.ezasm.simulation.Registers;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NameTableTest {
+
+    @Test
+    void get() {
+        Map<String, Integer> names = new HashMap<>();
+        for (int i = 0; i < 100; ++i) {
+            names.put("name" + i, i);
+        }
+        NameTable table = new NameTable(names);
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(i, table.get("NAME" + i));
+            assertEquals(i, table.get("($name" + i + ")", 2, 6 + String.valueOf(i).length()));
+        }
+        assertEquals(-1, table.get("name100"));
+        assertEquals(-1, table.get("nam"));
+        assertEquals(-1, table.get(""));
+    }
+
+    @Test
+    void duplicateNames() {
+        assertThrows(IllegalArgumentException.class, () -> new NameTable(Map.of("abc", 0, "ABC", 1)));
+    }
+
+    @Test
+    void registersAndInstructions() {
+        assertEquals(Registers.getRegisterNumber("t0"), Registers.findRegister("add $T0", 5, 7));
+        assertEquals(5, Registers.findRegister("$5", 1, 2));
+        assertEquals(-1, Registers.findRegister("$99", 1, 3));
+        assertNotNull(InstructionDispatcher.findInstructions("ADD"));
+        assertNull(InstructionDispatcher.findInstructions("add0"));
+    }
+
+}
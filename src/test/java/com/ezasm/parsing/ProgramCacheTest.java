@@ -0,0 +1,72 @@
+package com.ezasm.parsing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgramCacheTest {
+
+    private static final String PROGRAM = "add $t0 0 1\nloop:\nadd $t0 $t0 $t0; sub $t1 $t1 0x1\n# done";
+
+    @Test
+    void parse() throws ParseException {
+        ProgramCache cache = new ProgramCache(ProgramCache.DEFAULT_MAX_LINES, null);
+        Program program = cache.parse(PROGRAM);
+        assertEquals(3, program.size());
+        assertEquals(1, program.getLabels().get("loop:"));
+        assertEquals(3, program.getLineNumber(2));
+        assertSame(program, cache.parse(PROGRAM));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void evict() throws ParseException {
+        ProgramCache cache = new ProgramCache(4, null);
+        cache.parse(PROGRAM);
+        cache.parse("add $t0 0 2\nadd $t0 0 3");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void persist() throws ParseException, IOException {
+        Path directory = Files.createTempDirectory("ezasm-cache");
+        Program program = new ProgramCache(ProgramCache.DEFAULT_MAX_LINES, directory).parse(PROGRAM);
+
+        ProgramCache cache = new ProgramCache(ProgramCache.DEFAULT_MAX_LINES, directory);
+        Program read = cache.parse(PROGRAM);
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(0, cache.getMisses());
+        assertEquals(program.size(), read.size());
+        assertEquals(program.getLabels(), read.getLabels());
+        for (int i = 0; i < program.size(); ++i) {
+            assertEquals(program.getLine(i).toString(), read.getLine(i).toString());
+            assertEquals(program.getLineNumber(i), read.getLineNumber(i));
+        }
+    }
+
+    @Test
+    void parseFile() throws ParseException, IOException {
+        Path directory = Files.createTempDirectory("ezasm-cache");
+        Path file = directory.resolve("program.ez");
+        Files.writeString(file, PROGRAM);
+        ProgramCache cache = new ProgramCache(ProgramCache.DEFAULT_MAX_LINES, directory);
+        Program program = cache.parseFile(file);
+        assertEquals(3, program.size());
+        assertEquals(1, program.getLabels().get("loop:"));
+        assertSame(program, cache.parseFile(file));
+        assertEquals(1, cache.getHits());
+
+        // A file has the key of its text, so it shares the entry persisted for the text
+        assertEquals(ProgramCache.key(PROGRAM), ProgramCache.key(file));
+        assertEquals(1, new ProgramCache(ProgramCache.DEFAULT_MAX_LINES, directory).parse(PROGRAM).getLabels()
+                .get("loop:"));
+        Files.writeString(file, PROGRAM + "\nadd $t0 $t0 1");
+        assertEquals(4, cache.parseFile(file).size());
+        assertEquals(2, cache.getMisses());
+    }
+}
@@ -0,0 +1,72 @@
+package com.ezasm.parsing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgramFileTest {
+
+    @Test
+    void roundTrip() throws ParseException, IOException {
+        Program program = Lexer.parseProgram("start:\nadd $t0 0 -5\n\nsub $t1 $t0 'a'; mul $t2 $t1 0b101\nend:");
+        Path file = Files.createTempFile("ezasm", ProgramFile.EXTENSION);
+        ProgramFile.write(program, file);
+
+        // Copied once into the arrays, so running the program never reads a record
+        ArrayProgram array = (ArrayProgram) program;
+        ArrayProgram mapped = assertInstanceOf(ArrayProgram.class, ProgramFile.map(file));
+        assertEquals(program.size(), mapped.size());
+        assertEquals(program.getLabels(), mapped.getLabels());
+        for (int i = 0; i < program.size(); ++i) {
+            assertEquals(array.getOpcode(i), mapped.getOpcode(i));
+            assertEquals(array.getOperandCount(i), mapped.getOperandCount(i));
+            assertSame(array.getVariant(i), mapped.getVariant(i));
+            for (int j = 0; j < array.getOperandCount(i); ++j) {
+                assertEquals(array.isImmediate(i, j), mapped.isImmediate(i, j));
+                assertEquals(array.getOperand(i, j), mapped.getOperand(i, j));
+            }
+            assertEquals(program.getLineNumber(i), mapped.getLineNumber(i));
+        }
+    }
+
+    @Test
+    void rejectsCorruptRecord() throws ParseException, IOException {
+        Path file = Files.createTempFile("ezasm", ProgramFile.EXTENSION);
+        ProgramFile.write(Lexer.parseProgram("add $t0 0 -5\nsub $t1 $t0 1"), file);
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int second = (int) buffer.getLong(ProgramFile.LINES) + ProgramFile.recordSize(buffer.getInt(ProgramFile.MAX_ARITY));
+
+        // An operand past the end of the constant pool
+        buffer.putInt(second + 4 + 4 * 2, 1000);
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> ProgramFile.map(file));
+
+        // An opcode past the end of the opcode table
+        buffer.putInt(second + 4 + 4 * 2, 0);
+        buffer.putShort(second, (short) 7);
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> ProgramFile.map(file));
+
+        // More immediates than operands
+        buffer.putShort(second, (short) 0);
+        buffer.put(second + 3, (byte) 0xFF);
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> ProgramFile.map(file));
+    }
+
+    @Test
+    void rejectsInvalidFile() throws IOException {
+        Path file = Files.createTempFile("ezasm", ProgramFile.EXTENSION);
+        Files.writeString(file, "add $t0 0 1");
+        assertThrows(IOException.class, () -> ProgramFile.map(file));
+        assertTrue(ProgramFile.isProgramFile(file));
+        assertFalse(ProgramFile.isProgramFile(Path.of("program.ez")));
+    }
+
+}
@@ -0,0 +1,236 @@
+package com.ezasm.simulation;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryTest {
+
+    @Test
+    void pages() {
+        Memory memory = new Memory();
+        long base = memory.initialHeapPointer();
+        assertArrayEquals(new byte[16], memory.read(base + 100_000, 16));
+
+        // Straddles the boundary between the first two pages
+        memory.writeLong(base + 4092, 0x0102030405060708L);
+        assertEquals(0x0102030405060708L, memory.readLong(base + 4092));
+        memory.writeString(base + 8190, "hello", 16);
+        assertEquals("hello", memory.readString(base + 8190, 16));
+
+        memory.reset();
+        assertEquals(0, memory.readLong(base + 4092));
+        assertArrayEquals(new byte[16], memory.read(base + 8190, 16));
+        memory.writeLong(base, 5);
+        assertEquals(5, memory.readLong(base));
+    }
+
+    @Test
+    void trackWrites() throws Exception {
+        Memory memory = new Memory();
+        long base = memory.initialHeapPointer();
+        memory.setTrackWrites(true);
+        memory.writeLong(base, 1);
+
+        // Switched from another thread, which leaves the ranges to be discarded by the simulating thread
+        Thread other = new Thread(() -> {
+            memory.setTrackWrites(false);
+            memory.setTrackWrites(true);
+        });
+        other.start();
+        other.join();
+        assertTrue(memory.takeWrites().isEmpty());
+        memory.writeLong(base + 64, 2);
+        List<SimulatorEvent.MemoryRange> writes = memory.takeWrites();
+        assertEquals(1, writes.size());
+        assertEquals(Long.BYTES, writes.get(0).end() - writes.get(0).start());
+    }
+
+    @Test
+    void hugeMemory() {
+        // A gibibyte of memory, of which only the pages written are allocated
+        Memory memory = new Memory(Memory.DEFAULT_WORD_SIZE, 1 << 27);
+        long top = memory.initialStackPointer() - 2 * Memory.DEFAULT_WORD_SIZE;
+        memory.writeLong(top, -1);
+        assertEquals(-1, memory.readLong(top));
+        assertEquals(0, memory.readLong(memory.initialHeapPointer()));
+    }
+
+    @Test
+    void words() {
+        Memory memory = new Memory();
+        long base = memory.initialHeapPointer();
+        memory.putLong(base + 8, 0x0102030405060708L);
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }, memory.read(base + 8, 8));
+        assertEquals(0x05060708, memory.getInt(base + 12));
+
+        // Words straddling a page boundary take the byte-wise path
+        memory.putInt(base + 4094, 0xCAFEBABE);
+        assertEquals(0xCAFEBABE, memory.getInt(base + 4094));
+        memory.putDouble(base + 4092, Math.PI);
+        assertEquals(Math.PI, memory.getDouble(base + 4092));
+
+        long[] words = { 1, -2, 3, Long.MIN_VALUE, 5 };
+        memory.writeLongs(base + 4072, words, 0, words.length);
+        long[] read = new long[words.length + 1];
+        memory.readLongs(base + 4072, read, 1, words.length);
+        assertArrayEquals(new long[] { 0, 1, -2, 3, Long.MIN_VALUE, 5 }, read);
+
+        assertEquals(0, memory.getLong(memory.initialStackPointer()));
+    }
+
+    @Test
+    void views() {
+        Memory memory = new Memory();
+        long base = memory.initialHeapPointer();
+        ByteBuffer view = memory.view(base + 16, 8);
+        assertTrue(view.isReadOnly());
+        // The view reads the memory in place, so it sees later writes
+        memory.writeLong(base + 16, 42);
+        assertEquals(42, view.getLong(0));
+
+        memory.writeString(base + 100, "ezasm", 32);
+        CharSequence string = memory.viewString(base + 100, 32);
+        assertEquals(5, string.length());
+        assertEquals('z', string.charAt(1));
+        assertEquals("asm", string.subSequence(2, 5).toString());
+        assertEquals("ez", memory.viewString(base + 100, 2).toString());
+        assertNull(memory.view(memory.initialStackPointer(), 8));
+
+        // Strings are read one byte per character whether copied or viewed
+        memory.writeString(base + 200, "caf\u00e9", 32);
+        assertEquals("caf\u00e9", memory.readString(base + 200, 32));
+        assertEquals("caf\u00e9", memory.viewString(base + 200, 32).toString());
+    }
+
+    @Test
+    void viewsAcrossForks() {
+        // On the heap and outside it
+        for (long words : new long[] { Memory.DEFAULT_MEMORY_WORDS, Memory.DIRECT_THRESHOLD }) {
+            Memory memory = new Memory(Memory.DEFAULT_WORD_SIZE, words);
+            long base = memory.initialHeapPointer();
+            memory.writeLong(base, 1);
+            ByteBuffer view = memory.view(base, 8);
+
+            // The fork copies the viewed page, so the view keeps following this memory
+            Memory fork = memory.fork();
+            memory.writeLong(base, 2);
+            fork.writeLong(base, 3);
+            assertEquals(2, view.getLong(0));
+            assertEquals(3, fork.readLong(base));
+            memory.reset();
+            assertEquals(0, view.getLong(0));
+
+            // Closing leaves the viewed storage to be freed once the view is unreachable
+            memory.writeLong(base, 4);
+            memory.close();
+            assertEquals(4, view.getLong(0));
+            fork.close();
+        }
+    }
+
+    @Test
+    void mappedFile() throws IOException {
+        Path file = Files.createTempFile("ezasm", ".mem");
+        try (Memory memory = Memory.mapFile(file, Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS)) {
+            assertEquals(memory.initialHeapPointer(), memory.currentHeapPointer());
+            memory.putLong(memory.allocate(72) + 64, 1234);
+        }
+        // The memory is followed by the heap pointer
+        assertEquals(Memory.DEFAULT_MEMORY_WORDS * Memory.DEFAULT_WORD_SIZE + Long.BYTES, Files.size(file));
+
+        // The contents and heap pointer survive the memory and are not cleared by a reset of the next one
+        try (Memory memory = Memory.mapFile(file, Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS)) {
+            long base = memory.initialHeapPointer();
+            memory.reset();
+            assertEquals(1234, memory.getLong(base + 64));
+            assertEquals(base + 72, memory.currentHeapPointer());
+            // Only the pages written are zeroed
+            memory.putLong(base + 8192, 5);
+            memory.allocate(8);
+            memory.reset();
+            assertEquals(0, memory.getLong(base + 8192));
+            assertEquals(1234, memory.getLong(base + 64));
+            assertEquals(base + 72, memory.currentHeapPointer());
+            memory.putLong(base, 6);
+            memory.reset();
+            assertEquals(0, memory.getLong(base + 64));
+        }
+        Files.delete(file);
+    }
+
+    @Test
+    void mappedFork() throws IOException {
+        Path file = Files.createTempFile("ezasm", ".mem");
+        try (Memory memory = Memory.mapFile(file, Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS)) {
+            memory.putLong(memory.initialHeapPointer() + 8192, 1);
+        }
+        Memory memory = Memory.mapFile(file, Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS);
+        long base = memory.initialHeapPointer();
+        memory.putLong(base, 2);
+        assertTrue(memory.canFork());
+
+        // Writes to the file after the fork are not seen by it, nor are the fork's by the file
+        Memory fork = memory.fork();
+        memory.putLong(base, 3);
+        memory.putLong(base + 8192, 4);
+        fork.putLong(base + 16, 5);
+        assertEquals(2, fork.getLong(base));
+        assertEquals(1, fork.getLong(base + 8192));
+        assertEquals(5, fork.getLong(base + 16));
+        assertEquals(0, memory.getLong(base + 16));
+
+        Memory second = fork.fork();
+        fork.putLong(base + 16, 6);
+        assertEquals(5, second.getLong(base + 16));
+        second.close();
+
+        // A reset of the fork zeroes the pages written since the file was opened, as they were before
+        memory.close();
+        fork.reset();
+        assertEquals(0, fork.getLong(base));
+        assertEquals(1, fork.getLong(base + 8192));
+        assertEquals(0, fork.getLong(base + 16));
+        fork.putLong(base + 16, 7);
+        assertEquals(7, fork.getLong(base + 16));
+        fork.close();
+
+        try (Memory reopened = Memory.mapFile(file, Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS)) {
+            assertEquals(3, reopened.getLong(base));
+            assertEquals(0, reopened.getLong(base + 16));
+        }
+        Files.delete(file);
+    }
+
+    @Test
+    void wideAddresses() {
+        // Sixteen gibibytes, past what an int can address, stored outside the heap
+        try (Memory memory = new Memory(Memory.DEFAULT_WORD_SIZE, 1L << 31)) {
+            assertEquals(16L << 30, memory.size());
+            long top = memory.initialStackPointer() - 2 * Memory.DEFAULT_WORD_SIZE;
+            memory.writeLong(top, 0x1122334455667788L);
+            assertEquals(0x1122334455667788L, memory.readLong(top));
+            assertEquals(0x55667788, memory.getInt(top + 4));
+            // Straddles the boundary between two segments
+            long boundary = memory.initialHeapPointer() + (1 << 20) - 4;
+            memory.putLong(boundary, -3);
+            assertEquals(-3, memory.getLong(boundary));
+            long middle = memory.initialHeapPointer() + (5L << 30);
+            memory.writeString(middle, "far", 8);
+            assertEquals("far", memory.readString(middle, 8));
+
+            memory.reset();
+            assertEquals(0, memory.readLong(top));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new Memory(Memory.DEFAULT_WORD_SIZE, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> new Memory(Memory.DEFAULT_WORD_SIZE, Memory.maxWords(Memory.DEFAULT_WORD_SIZE) + 1));
+    }
+
+}
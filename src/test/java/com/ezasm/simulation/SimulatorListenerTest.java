@@ -0,0 +1,69 @@
+package com.ezasm.simulation;
+
+import com.ezasm.parsing.ParseException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulatorListenerTest {
+
+    private static final int T0 = Registers.getRegisterNumber("t0");
+    private static final int T1 = Registers.getRegisterNumber("t1");
+
+    @Test
+    void events() throws ParseException {
+        Simulator simulator = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS, 0);
+        List<SimulatorEvent> events = new ArrayList<>();
+        simulator.addListener(events::add, Runnable::run);
+
+        simulator.executeLine("add $t0 0 5");
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).isRegisterWritten(T0));
+        assertFalse(events.get(0).isRegisterWritten(T1));
+        assertEquals(5, events.get(0).getRegisterValue(T0));
+
+        long address = simulator.getMemory().initialHeapPointer();
+        simulator.getMemory().writeLong(address, 7);
+        simulator.getMemory().writeLong(address + 8, 7);
+        simulator.executeLine("add $t1 0 1");
+        assertEquals(List.of(new SimulatorEvent.MemoryRange(address, address + 16)),
+                events.get(1).getMemoryWrites());
+
+        simulator.resetAll();
+        simulator.readMultiLineString("add $t0 0 1\nadd $t0 $t0 1\n");
+        events.clear();
+        simulator.runLinesFromPC();
+        SimulatorEvent last = events.get(events.size() - 1);
+        assertEquals(SimulatorEvent.RunState.DONE, last.getRunState());
+        assertTrue(events.stream().anyMatch(SimulatorEvent::isPcChanged));
+    }
+
+    @Test
+    void coalescing() throws ParseException {
+        Simulator simulator = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS, 0);
+        List<SimulatorEvent> events = new ArrayList<>();
+        List<Runnable> queued = new ArrayList<>();
+        ISimulatorListener listener = events::add;
+        simulator.addListener(listener, queued::add);
+
+        simulator.executeLine("add $t0 0 1");
+        simulator.executeLine("add $t1 0 2");
+        simulator.executeLine("add $t0 0 3");
+        assertEquals(1, queued.size());
+        queued.get(0).run();
+
+        assertEquals(1, events.size());
+        SimulatorEvent event = events.get(0);
+        assertEquals(3, event.getRegisterValue(T0));
+        assertEquals(2, event.getRegisterValue(T1));
+        assertThrows(IllegalArgumentException.class, () -> event.getRegisterValue(0));
+
+        simulator.removeListener(listener);
+        simulator.executeLine("add $t0 0 4");
+        assertEquals(1, queued.size());
+    }
+
+}
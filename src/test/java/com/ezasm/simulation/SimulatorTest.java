@@ -0,0 +1,326 @@
+package com.ezasm.simulation;
+
+import com.ezasm.parsing.ParseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulatorTest {
+
+    @Test
+    void consistentReads() throws Exception {
+        Simulator simulator = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS, 0);
+        simulator.readMultiLineString("add $t0 $t0 1\n".repeat(20_000));
+        int t0 = Registers.getRegisterNumber("t0");
+        int pc = Registers.getRegisterNumber("pc");
+
+        // Each step writes $t0 before the PC, so a torn read would see them differ
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> torn = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                long[] values = simulator.readRegisters();
+                if (values[t0] != values[pc]) {
+                    torn.set(values[t0] + " != " + values[pc]);
+                }
+            }
+        });
+        reader.start();
+        try {
+            simulator.runLinesFromPC();
+        } finally {
+            running.set(false);
+            reader.join();
+        }
+        assertNull(torn.get());
+        assertEquals(20_000, simulator.readRegisters()[t0]);
+    }
+
+    @Test
+    void closeWhileReading() throws Exception {
+        // Large enough to be stored outside the heap, where closing frees the segments
+        Simulator simulator = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DIRECT_THRESHOLD, 0);
+        long address = simulator.getMemory().initialHeapPointer();
+        simulator.getMemory().writeLong(address, 7);
+
+        // Reads in progress finish before the memory is freed, and later ones see zeros
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failed = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (running.get()) {
+                    byte[] bytes = simulator.readMemory(address, Long.BYTES);
+                    if (bytes[Long.BYTES - 1] != 7 && bytes[Long.BYTES - 1] != 0) {
+                        failed.set(new AssertionError("read " + bytes[Long.BYTES - 1]));
+                    }
+                }
+            } catch (Throwable e) {
+                failed.set(e);
+            }
+        });
+        reader.start();
+        Thread.sleep(20);
+        simulator.close();
+        running.set(false);
+        reader.join();
+        assertNull(failed.get());
+        assertArrayEquals(new byte[Long.BYTES], simulator.readMemory(address, Long.BYTES));
+    }
+
+    @Test
+    void instructionsWithoutVariants() throws Exception {
+        Simulator simulator = new Simulator();
+        simulator.readMultiLineString("add $t0 $t0 12\ndiv $t1 $t0 4\nnot $t2 $t1\ninc $t2\ninc $t3 $t2\n");
+        simulator.runLinesFromPC();
+        assertEquals(3, simulator.getRegister("t1").getLong());
+        assertEquals(-3, simulator.getRegister("t2").getLong());
+        assertEquals(-2, simulator.getRegister("t3").getLong());
+    }
+
+    @Test
+    void fork() throws Exception {
+        Simulator simulator = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS, 0);
+        simulator.readMultiLineString("add $t0 $t0 1\nadd $t0 $t0 1\nadd $t0 $t0 1\n");
+        simulator.runOneLine();
+        long address = simulator.getMemory().initialHeapPointer();
+        simulator.getMemory().writeLong(address, 7);
+
+        Simulator fork = simulator.fork();
+        assertEquals(1, fork.getRegister("t0").getLong());
+        assertEquals(1, fork.getRegister("pc").getLong());
+        assertSame(simulator.getProgram(), fork.getProgram());
+
+        // The continuations are independent of each other
+        fork.runLinesFromPC();
+        fork.getMemory().writeLong(address, 9);
+        assertEquals(3, fork.getRegister("t0").getLong());
+        assertEquals(1, simulator.getRegister("t0").getLong());
+        assertEquals(7, simulator.getMemory().readLong(address));
+        simulator.getMemory().writeLong(address + 8, 4);
+        assertEquals(0, fork.getMemory().readLong(address + 8));
+
+        simulator.resetMemory();
+        assertEquals(0, simulator.getMemory().readLong(address));
+        assertEquals(9, fork.getMemory().readLong(address));
+    }
+
+    @Test
+    void checkpoint() throws Exception {
+        String program = "add $t0 $t0 1\nadd $t0 $t0 1\nadd $t0 $t0 1\n";
+        Simulator simulator = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS, 0);
+        simulator.readMultiLineString(program);
+        simulator.runOneLine();
+        simulator.runOneLine();
+        Memory memory = simulator.getMemory();
+        long address = memory.allocate(64);
+        memory.writeLong(address, 7);
+        memory.writeString(address + 8, "saved", 16);
+        memory.writeLong(memory.initialStackPointer() - 16, -1);
+
+        Path file = Files.createTempFile("ezasm", ".ezc");
+        simulator.checkpoint(file);
+        // Only the two written chunks are stored, and they compress
+        assertTrue(Files.size(file) < 2048, "checkpoint of " + Files.size(file) + " bytes");
+
+        Simulator restored = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS, 0);
+        restored.readMultiLineString(program);
+        restored.getMemory().writeLong(address + 32, 5);
+        restored.restore(file);
+        assertEquals(2, restored.getRegister("t0").getLong());
+        assertEquals(2, restored.getRegister("pc").getLong());
+        assertEquals(7, restored.getMemory().readLong(address));
+        assertEquals("saved", restored.getMemory().readString(address + 8, 16));
+        assertEquals(0, restored.getMemory().readLong(address + 32));
+        assertEquals(-1, restored.getMemory().readLong(memory.initialStackPointer() - 16));
+        assertEquals(memory.currentHeapPointer(), restored.getMemory().currentHeapPointer());
+        restored.runLinesFromPC();
+        assertEquals(3, restored.getRegister("t0").getLong());
+
+        Simulator other = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS, 0);
+        other.readMultiLineString("add $t1 $t1 1\n");
+        assertThrows(IOException.class, () -> other.restore(file));
+
+        // Programs differing only in their operands are different programs
+        Simulator operands = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS, 0);
+        operands.readMultiLineString(program.replace("1\n", "2\n"));
+        assertThrows(IOException.class, () -> operands.restore(file));
+
+        // A checkpoint which cannot be read leaves the state as it was
+        Path truncated = Files.createTempFile("ezasm", ".ezc");
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 16));
+        assertThrows(IOException.class, () -> restored.restore(truncated));
+        assertEquals(3, restored.getRegister("t0").getLong());
+        assertEquals(0, restored.getMemory().readLong(address + 32));
+
+        // A negative length in the first chunk record is reported like any other corruption
+        int record = 64 + Registers.TOTAL_REGISTERS * Memory.DEFAULT_WORD_SIZE;
+        for (int field : new int[] { record + 8, record + 12 }) {
+            byte[] corrupt = bytes.clone();
+            ByteBuffer.wrap(corrupt).putInt(field, -1);
+            Files.write(truncated, corrupt);
+            assertThrows(IOException.class, () -> restored.restore(truncated));
+        }
+        assertEquals(3, restored.getRegister("t0").getLong());
+        Files.delete(truncated);
+        Files.delete(file);
+    }
+
+    @Test
+    void stepBack() throws Exception {
+        Simulator simulator = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS, 0);
+        simulator.readMultiLineString("add $t0 $t0 1\n".repeat(30_000));
+        simulator.setUndoEnabled(true);
+        Memory memory = simulator.getMemory();
+        long address = memory.initialHeapPointer();
+        memory.writeLong(address, 1);
+        simulator.runOneLine();
+        simulator.runOneLine();
+        // A write between steps belongs to the step before it
+        memory.writeLong(address, 2);
+
+        assertEquals(1, simulator.stepBack(1));
+        assertEquals(1, simulator.getRegister("t0").getLong());
+        assertEquals(1, simulator.getRegister("pc").getLong());
+        assertEquals(1, memory.readLong(address));
+
+        // Crosses several snapshots, from which the rewind starts
+        simulator.runLinesFromPC();
+        assertEquals(20_000, simulator.stepBack(20_000));
+        assertEquals(10_000, simulator.getRegister("t0").getLong());
+        assertEquals(10_000, simulator.getRegister("pc").getLong());
+        simulator.runOneLine();
+        assertEquals(10_001, simulator.getRegister("t0").getLong());
+        assertEquals(1, simulator.stepBack(1));
+
+        simulator.resetMemory();
+        assertEquals(0, simulator.getUndoableSteps());
+        assertEquals(0, simulator.stepBack(1));
+        simulator.setUndoEnabled(false);
+    }
+
+    @Test
+    void stepBackMemory() throws Exception {
+        Simulator simulator = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS, 0);
+        simulator.readMultiLineString("add $t0 $t0 1\n".repeat(12_001));
+        simulator.setUndoEnabled(true);
+        Memory memory = simulator.getMemory();
+        long often = memory.initialHeapPointer();
+        long rarely = often + 8192;
+        long late = rarely + 8192;
+        simulator.runOneLine();
+        for (int i = 1; i <= 12_000; ++i) {
+            memory.writeLong(often, i);
+            if (i % 3000 == 0) {
+                memory.writeLong(rarely, i);
+            }
+            if (i == 8500) {
+                memory.writeLong(late, i);
+            }
+            simulator.runOneLine();
+        }
+
+        // Returning to a snapshot writes back the pages saved in it and the snapshots after it
+        for (long steps : new long[] { 9000, 3000, 1 }) {
+            simulator.stepBack(simulator.getRegister("t0").getLong() - steps);
+            assertEquals(steps, simulator.getRegister("t0").getLong());
+            assertEquals(steps, memory.readLong(often));
+            assertEquals(steps / 3000 * 3000, memory.readLong(rarely));
+            assertEquals(steps >= 8500 ? 8500 : 0, memory.readLong(late));
+        }
+    }
+
+    @Test
+    void boundedUndo() throws Exception {
+        Simulator simulator = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS, 0);
+        simulator.readMultiLineString("add $t0 $t0 1\n".repeat(30_000));
+        simulator.setUndoEnabled(true);
+        simulator.runLinesFromPC();
+
+        // Only the latest steps are held, and the oldest are dropped whole
+        long held = simulator.getUndoableSteps();
+        assertTrue(held > 0 && held < 30_000, held + " steps held");
+        assertEquals(held, simulator.stepBack(30_000));
+        assertEquals(30_000 - held, simulator.getRegister("t0").getLong());
+        assertEquals(30_000 - held, simulator.getRegister("pc").getLong());
+        assertEquals(0, simulator.stepBack(1));
+    }
+
+    @Test
+    void breakpoints() throws Exception {
+        Simulator simulator = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS, 0);
+        simulator.readMultiLineString("add $t0 $t0 1\n".repeat(10));
+        simulator.setBreakpoint(3, (String) null);
+        assertTrue(simulator.hasBreakpoint(3));
+        simulator.runLinesFromPC();
+        assertEquals(3, simulator.getRegister("pc").getLong());
+        assertEquals(3, simulator.getRegister("t0").getLong());
+        // The line a run starts on never breaks
+        simulator.runLinesFromPC();
+        assertEquals(10, simulator.getRegister("t0").getLong());
+
+        simulator.resetMemory();
+        simulator.clearBreakpoints();
+        simulator.setBreakpoint(2, "$t0 >= 5");
+        simulator.setBreakpoint(6, "$t0>=5");
+        simulator.setBreakpoint(8, "$t0 == 0x8");
+        assertEquals(List.of(2, 6, 8), List.copyOf(simulator.getBreakpointLines()));
+        simulator.runLinesFromPC();
+        assertEquals(6, simulator.getRegister("t0").getLong());
+
+        // A breakpoint pauses a run, which then resumes past it
+        AtomicBoolean paused = new AtomicBoolean();
+        AtomicReference<ParseException> error = new AtomicReference<>();
+        Thread runner = new Thread(() -> {
+            try {
+                simulator.runLinesFromPC(paused);
+            } catch (ParseException e) {
+                error.set(e);
+            }
+        });
+        runner.start();
+        int t0 = Registers.getRegisterNumber("t0");
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!paused.get() && runner.isAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(paused.get());
+        assertEquals(8, simulator.readRegisters()[t0]);
+        paused.set(false);
+        runner.join(10_000);
+        assertFalse(runner.isAlive());
+        assertNull(error.get());
+        assertEquals(10, simulator.getRegister("t0").getLong());
+
+        simulator.clearBreakpoint(8);
+        assertFalse(simulator.hasBreakpoint(8));
+        assertThrows(ParseException.class, () -> simulator.setBreakpoint(0, "$t0 >"));
+        assertThrows(ParseException.class, () -> simulator.setBreakpoint(0, "$nope == 1"));
+        assertFalse(simulator.hasBreakpoint(0));
+
+        // Lines appended to the program after a run still break
+        Simulator growing = new Simulator(Memory.DEFAULT_WORD_SIZE, Memory.DEFAULT_MEMORY_WORDS, 0);
+        for (int i = 0; i < 3; ++i) {
+            growing.readLine("add $t0 $t0 1");
+        }
+        growing.setBreakpoint(4, (String) null);
+        growing.runLinesFromPC();
+        assertEquals(3, growing.getRegister("t0").getLong());
+        for (int i = 0; i < 3; ++i) {
+            growing.readLine("add $t0 $t0 1");
+        }
+        growing.runLinesFromPC();
+        assertEquals(4, growing.getRegister("pc").getLong());
+    }
+
+}